@@ -0,0 +1,121 @@
+package com.rag.backend.ai;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * HTTP transport for the embeddings API.
+ *
+ * Backed by the JDK HttpClient: it keeps connections alive in its own pool, negotiates HTTP/2 over
+ * TLS (one multiplexed connection instead of one socket per concurrent request) and falls back to
+ * HTTP/1.1 otherwise. Connect and read timeouts are explicit, so a hung provider surfaces as a
+ * retryable ResourceAccessException instead of pinning the calling thread.
+ *
+ * Concurrency is capped by max-concurrent-requests. The in-flight, waiting and limit gauges plus the
+ * acquire timer (rag.embedding.http.*) show how close the transport is to saturation. Point base-url at
+ * any OpenAI-compatible server to use a local stand-in.
+ */
+@Component
+public class EmbeddingHttpTransport implements MeterBinder, DisposableBean {
+
+    private final String baseUrl;
+    private final RestTemplate restTemplate;
+    private final ExecutorService executor;
+    private final int maxConcurrentRequests;
+    private final Semaphore permits;
+    private final Duration acquireTimeout;
+    private final AtomicReference<Timer> acquireTimer = new AtomicReference<>();
+
+    public EmbeddingHttpTransport(
+            @Value("${rag.embedding.http.base-url:https://api.openai.com/v1}") String baseUrl,
+            @Value("${rag.embedding.http.version:HTTP_2}") HttpClient.Version version,
+            @Value("${rag.embedding.http.connect-timeout:PT5S}") Duration connectTimeout,
+            @Value("${rag.embedding.http.read-timeout:PT60S}") Duration readTimeout,
+            @Value("${rag.embedding.http.max-concurrent-requests:16}") int maxConcurrentRequests,
+            @Value("${rag.embedding.http.acquire-timeout:PT30S}") Duration acquireTimeout) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(connectTimeout)
+                .executor(executor)
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(client);
+        requestFactory.setReadTimeout(readTimeout);
+        this.restTemplate = new RestTemplate(requestFactory);
+
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.permits = new Semaphore(this.maxConcurrentRequests, true);
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    /**
+     * POSTs {@code entity} to {@code path} (relative to the base URL) and hands the streamed response
+     * to {@code extractor}. Error statuses throw the usual RestTemplate exceptions.
+     */
+    public <T> T post(String path, HttpEntity<?> entity, ResponseExtractor<T> extractor) {
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ResourceAccessException("Timed out after " + acquireTimeout
+                        + " waiting for one of " + maxConcurrentRequests + " embedding connections");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an embedding connection", e);
+        } finally {
+            Timer timer = acquireTimer.get();
+            if (timer != null) timer.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+        }
+
+        try {
+            return restTemplate.execute(baseUrl + path, HttpMethod.POST, restTemplate.httpEntityCallback(entity), extractor);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rag.embedding.http.in-flight", this, t -> t.maxConcurrentRequests - t.permits.availablePermits())
+                .description("Embedding requests currently holding a connection slot")
+                .register(registry);
+        Gauge.builder("rag.embedding.http.waiting", permits, Semaphore::getQueueLength)
+                .description("Embedding requests queued for a connection slot")
+                .register(registry);
+        Gauge.builder("rag.embedding.http.max-concurrent", this, t -> t.maxConcurrentRequests)
+                .register(registry);
+        acquireTimer.set(Timer.builder("rag.embedding.http.acquire")
+                .description("Time spent waiting for a connection slot")
+                .register(registry));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package com.rag.backend.ai;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Streams a /v1/embeddings response straight into primitive float arrays.
+ *
+ * Each {@code data[].embedding} is either a JSON array of numbers (encoding_format=float) or a
+ * base64 string of little-endian float32s (encoding_format=base64). Either way the only per-vector
+ * allocation that survives is the final float[]; nothing is boxed and no tree is built. Fields other
+ * than data[].index and data[].embedding are skipped. A vector of any length other than the configured
+ * dimensions is rejected here, before it can reach the VECTOR(n) column or the in-process indexes.
+ */
+public final class EmbeddingResponseParser {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private EmbeddingResponseParser() {}
+
+    /**
+     * Returns the vectors ordered by their {@code index}.
+     *
+     * @param expected   number of inputs in the request
+     * @param dimensions required length of every vector; also sizes float arrays up front
+     * @throws IllegalStateException if the response does not hold exactly one vector per input, each
+     *                               of {@code dimensions} floats
+     */
+    public static float[][] parse(InputStream body, int expected, int dimensions) throws IOException {
+        float[][] vectors = new float[expected][];
+        int received = 0;
+        try (JsonParser p = JSON.createParser(body)) {
+            expect(p.nextToken(), JsonToken.START_OBJECT);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("data".equals(field) && p.currentToken() == JsonToken.START_ARRAY) {
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        readItem(p, vectors, dimensions);
+                        received++;
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+
+        if (received != expected) {
+            throw new IllegalStateException("Expected " + expected + " embeddings from OpenAI, got " + received);
+        }
+        for (int i = 0; i < vectors.length; i++) {
+            if (vectors[i] == null) throw new IllegalStateException("No embedding returned for input " + i);
+        }
+        return vectors;
+    }
+
+    private static void readItem(JsonParser p, float[][] vectors, int dimensions) throws IOException {
+        int index = -1;
+        float[] embedding = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if ("index".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                index = p.getIntValue();
+            } else if ("embedding".equals(field) && value == JsonToken.START_ARRAY) {
+                embedding = readFloatArray(p, dimensions);
+            } else if ("embedding".equals(field) && value == JsonToken.VALUE_STRING) {
+                embedding = decodeBase64(p);
+            } else {
+                p.skipChildren();
+            }
+        }
+        // Results carry the index of their input; don't rely on response order
+        if (index < 0 || index >= vectors.length || embedding == null) {
+            throw new IllegalStateException("Malformed embedding in OpenAI response at index " + index);
+        }
+        if (embedding.length != dimensions) {
+            throw new IllegalStateException("Expected a " + dimensions + "-dimension embedding from OpenAI, got "
+                    + embedding.length + " at index " + index + "; check rag.embedding.model and rag.embedding.dimensions");
+        }
+        vectors[index] = embedding;
+    }
+
+    private static float[] readFloatArray(JsonParser p, int dimensionHint) throws IOException {
+        float[] v = new float[Math.max(1, dimensionHint)];
+        int n = 0;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t != JsonToken.VALUE_NUMBER_FLOAT && t != JsonToken.VALUE_NUMBER_INT) {
+                throw new IllegalStateException("Unexpected " + t + " in embedding array");
+            }
+            if (n == v.length) v = Arrays.copyOf(v, v.length * 2);
+            v[n++] = p.getFloatValue();
+        }
+        return n == v.length ? v : Arrays.copyOf(v, n);
+    }
+
+    private static float[] decodeBase64(JsonParser p) throws IOException {
+        byte[] bytes = p.getBinaryValue(Base64Variants.MIME_NO_LINEFEEDS);
+        if (bytes.length % Float.BYTES != 0) {
+            throw new IllegalStateException("base64 embedding is " + bytes.length + " bytes, not a whole number of floats");
+        }
+        float[] v = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(v);
+        return v;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) {
+        if (actual != expected) {
+            throw new IllegalStateException("Malformed OpenAI embeddings response: expected " + expected + ", got " + actual);
+        }
+    }
+}
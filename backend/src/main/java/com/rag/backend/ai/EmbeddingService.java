@@ -1,57 +1,263 @@
 package com.rag.backend.ai;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class EmbeddingService {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingService.class);
 
-    @Value("${OPENAI_API_KEY:}")
-    private String apiKey;
+    private final EmbeddingHttpTransport transport;
+
+    private final String apiKey;
+    private final String model;
+    private final int dimensions;
+    // text-embedding-3 models shorten their vectors to the requested size; older ones reject the field
+    private final boolean sendDimensions;
+    // "base64" (default) or "float"; base64 skips decimal parsing entirely
+    private final String encodingFormat;
+
+    // Caps per /v1/embeddings request; the API allows 2048 inputs and ~300k tokens
+    private final int maxInputsPerRequest;
+    private final int maxTokensPerRequest;
+    // The model's limit for one input; longer inputs are split and their pieces' vectors averaged
+    private final int maxInputTokens;
+    private final TokenCounter tokenCounter;
+
+    private final RateLimiter rateLimiter;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public EmbeddingService(
+            EmbeddingHttpTransport transport,
+            @Value("${OPENAI_API_KEY:}") String apiKey,
+            @Value("${rag.embedding.model:text-embedding-3-small}") String model,
+            @Value("${rag.embedding.dimensions:1536}") int dimensions,
+            @Value("${rag.embedding.encoding-format:base64}") String encodingFormat,
+            @Value("${rag.embedding.batch.max-inputs:256}") int maxInputsPerRequest,
+            @Value("${rag.embedding.batch.max-tokens:100000}") int maxTokensPerRequest,
+            @Value("${rag.embedding.max-input-tokens:8191}") int maxInputTokens,
+            @Value("${rag.embedding.rate-limit.requests-per-minute:3000}") long requestsPerMinute,
+            @Value("${rag.embedding.rate-limit.tokens-per-minute:1000000}") long tokensPerMinute,
+            @Value("${rag.embedding.retry.max-attempts:6}") int maxAttempts,
+            @Value("${rag.embedding.retry.initial-backoff-ms:500}") long initialBackoffMs,
+            @Value("${rag.embedding.retry.max-backoff-ms:30000}") long maxBackoffMs) {
+        this.transport = transport;
+        this.apiKey = apiKey;
+        this.model = model;
+        this.dimensions = dimensions;
+        this.sendDimensions = model.startsWith("text-embedding-3");
+        this.encodingFormat = encodingFormat;
+        this.maxInputsPerRequest = Math.max(1, maxInputsPerRequest);
+        this.maxTokensPerRequest = Math.max(1, maxTokensPerRequest);
+        this.maxInputTokens = Math.max(1, maxInputTokens);
+        this.tokenCounter = TokenCounter.forModel(model);
+        this.rateLimiter = new RateLimiter(requestsPerMinute, tokensPerMinute);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
 
     public float[] embed(String text) {
+        return embedAll(List.of(text)).get(0);
+    }
+
+    /**
+     * Embeds all inputs, packing them into as few requests as the count and token caps allow.
+     * The returned list is in the same order as {@code texts}.
+     *
+     * A text longer than the model's input limit (minified JSON, generated code) is split into pieces
+     * that fit, and its vector is the token-weighted mean of theirs, so one oversized chunk no longer
+     * fails the whole batch.
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        // Input pieces in order; pieces of texts.get(i) are inputs first[i] until first[i + 1]
+        int[] first = new int[texts.size() + 1];
+        List<String> inputs = new ArrayList<>(texts.size());
+        int[] inputTokens = new int[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            first[i] = inputs.size();
+            String text = texts.get(i);
+            int tokens = tokenCounter.count(text);
+            List<String> pieces = tokens <= maxInputTokens
+                    ? Collections.singletonList(text)
+                    : tokenCounter.split(text, maxInputTokens);
+            if (pieces.size() > 1) {
+                log.debug("Splitting a {}-token embedding input into {} pieces", tokens, pieces.size());
+            }
+            for (String piece : pieces) {
+                if (inputs.size() == inputTokens.length) inputTokens = Arrays.copyOf(inputTokens, inputTokens.length * 2 + 1);
+                inputTokens[inputs.size()] = pieces.size() == 1 ? tokens : tokenCounter.count(piece);
+                inputs.add(piece);
+            }
+        }
+        first[texts.size()] = inputs.size();
+
+        List<float[]> vectors = new ArrayList<>(inputs.size());
+        int start = 0;
+        while (start < inputs.size()) {
+            int end = start;
+            int tokens = 0;
+            while (end < inputs.size() && end - start < maxInputsPerRequest) {
+                int t = inputTokens[end];
+                // Always take at least one input, even if it alone exceeds the budget
+                if (end > start && tokens + t > maxTokensPerRequest) break;
+                tokens += t;
+                end++;
+            }
+            vectors.addAll(requestWithRetry(inputs.subList(start, end), tokens));
+            start = end;
+        }
+        if (inputs.size() == texts.size()) return vectors;
+
+        List<float[]> out = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            out.add(first[i + 1] - first[i] == 1
+                    ? vectors.get(first[i])
+                    : weightedMean(vectors, inputTokens, first[i], first[i + 1]));
+        }
+        return out;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    /** Vector size produced by the configured model; must match chunks.embedding. */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /** Mean of vectors[from, to) weighted by their token counts, scaled to unit length like the API's vectors. */
+    private static float[] weightedMean(List<float[]> vectors, int[] tokens, int from, int to) {
+        float[] mean = new float[vectors.get(from).length];
+        for (int i = from; i < to; i++) {
+            float[] v = vectors.get(i);
+            for (int d = 0; d < mean.length; d++) mean[d] += tokens[i] * v[d];
+        }
+        double norm = 0;
+        for (float x : mean) norm += (double) x * x;
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int d = 0; d < mean.length; d++) mean[d] *= scale;
+        }
+        return mean;
+    }
+
+    /**
+     * Sends one request through the rate limiter, retrying 429s, 5xx responses and I/O errors with
+     * jittered exponential backoff. A Retry-After header from the provider overrides the backoff.
+     */
+    private List<float[]> requestWithRetry(List<String> inputs, int tokens) {
+        log.debug("Embedding request: {} inputs, {} tokens", inputs.size(), tokens);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                rateLimiter.acquire(tokens);
+                return requestEmbeddings(inputs);
+            } catch (HttpClientErrorException.TooManyRequests | HttpServerErrorException | ResourceAccessException e) {
+                if (attempt >= maxAttempts || isQuotaExhausted(e)) throw e;
+
+                long delayMs = retryAfterMs(e);
+                if (delayMs < 0) {
+                    long cap = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+                    delayMs = ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+                }
+                log.warn("Embedding request failed (attempt {}/{}): {}; retrying in {} ms",
+                        attempt, maxAttempts, e.getMessage(), delayMs);
+                sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the embedding rate limiter", e);
+            }
+        }
+    }
+
+    /** A 429 for an exhausted quota (as opposed to a rate limit) won't succeed on retry. */
+    private static boolean isQuotaExhausted(Exception e) {
+        return e instanceof HttpClientErrorException.TooManyRequests tooMany
+                && tooMany.getResponseBodyAsString().contains("insufficient_quota");
+    }
+
+    /** Delay requested by the provider in ms, or -1 if it did not send one. */
+    private static long retryAfterMs(Exception e) {
+        if (!(e instanceof HttpStatusCodeException http) || http.getResponseHeaders() == null) return -1;
+        HttpHeaders headers = http.getResponseHeaders();
+        try {
+            String ms = headers.getFirst("retry-after-ms");
+            if (ms != null) return Math.max(0, (long) Double.parseDouble(ms.trim()));
+
+            String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+            if (retryAfter == null) return -1;
+            retryAfter = retryAfter.trim();
+            if (retryAfter.chars().allMatch(Character::isDigit)) {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter));
+            }
+            ZonedDateTime at = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (RuntimeException ignored) {
+            return -1;
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off an embedding request", ie);
+        }
+    }
+
+    private List<float[]> requestEmbeddings(List<String> inputs) {
         if (apiKey == null || apiKey.isBlank()) {
             throw new IllegalStateException("OPENAI_API_KEY is not set");
         }
 
-        String url = "https://api.openai.com/v1/embeddings";
         String key = Objects.requireNonNull(apiKey, "API key must not be null");
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         headers.setBearerAuth(key);
 
-        EmbeddingRequest payload = new EmbeddingRequest("text-embedding-3-small", text);
+        EmbeddingRequest payload = new EmbeddingRequest(model, inputs, encodingFormat, sendDimensions ? dimensions : null);
 
         HttpEntity<EmbeddingRequest> entity = new HttpEntity<>(payload, headers);
 
-        HttpMethod method = Objects.requireNonNull(HttpMethod.POST, "HTTP method must not be null");
-        ResponseEntity<EmbeddingResponse> resp =
-                restTemplate.exchange(url, method, entity, EmbeddingResponse.class);
-
-        EmbeddingResponse body = resp.getBody();
-        if (body == null || body.data() == null || body.data().isEmpty()) {
-            throw new IllegalStateException("No embedding returned from OpenAI");
-        }
-
-        List<Double> vector = body.data().get(0).embedding();
-        float[] out = new float[vector.size()];
-        for (int i = 0; i < vector.size(); i++) out[i] = vector.get(i).floatValue();
-        return out;
+        // Parse the body as it streams in rather than binding it to DTOs (no boxed Doubles)
+        float[][] vectors = transport.post("/embeddings", entity,
+                response -> EmbeddingResponseParser.parse(response.getBody(), inputs.size(), dimensions));
+        return List.of(Objects.requireNonNull(vectors, "Empty OpenAI embeddings response"));
     }
 
     // --- DTOs for JSON mapping ---
 
-    public record EmbeddingRequest(String model, String input) {}
-
-    public record EmbeddingResponse(List<EmbeddingData> data) {}
-
-    public record EmbeddingData(List<Double> embedding) {}
+    public record EmbeddingRequest(
+            String model,
+            List<String> input,
+            @JsonProperty("encoding_format") String encodingFormat,
+            // Omitted for models that do not accept it
+            @JsonInclude(JsonInclude.Include.NON_NULL) Integer dimensions
+    ) {}
 }
@@ -2,32 +2,32 @@ package com.rag.backend.ai;
 
 import com.openai.client.OpenAIClient;
 import com.openai.client.okhttp.OpenAIOkHttpClient;
-import com.openai.models.ChatModel;
+import com.openai.core.http.StreamResponse;
 import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionChunk;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.function.Consumer;
+
 @Component
 public class OpenAIChatClient {
 
     private final OpenAIClient client;
+    private final String model;
 
-    public OpenAIChatClient(@Value("${OPENAI_API_KEY}") String apiKey) {
+    public OpenAIChatClient(
+            @Value("${OPENAI_API_KEY}") String apiKey,
+            @Value("${rag.chat.model:gpt-4o}") String model) {
         this.client = OpenAIOkHttpClient.builder()
                 .apiKey(apiKey)
                 .build();
+        this.model = model;
     }
 
     public String chat(String system, String user) {
-        ChatCompletionCreateParams params = ChatCompletionCreateParams.builder()
-                // Use a model enum that definitely exists in the SDK README
-                .model(ChatModel.GPT_4O)
-                .addSystemMessage(system)
-                .addUserMessage(user)
-                .build();
-
-        ChatCompletion completion = client.chat().completions().create(params);
+        ChatCompletion completion = client.chat().completions().create(params(system, user));
 
         return completion.choices()
                 .get(0)
@@ -35,4 +35,34 @@ public class OpenAIChatClient {
                 .content()
                 .orElse("");
     }
+
+    /**
+     * Streams the completion, passing each content delta to {@code onDelta} as it arrives. If
+     * onDelta throws (e.g. the client went away), the stream is closed and generation stops.
+     */
+    public void chatStream(String system, String user, Consumer<String> onDelta) {
+        chatStream(system, user, onDelta, new StreamCancellation());
+    }
+
+    /**
+     * As {@link #chatStream(String, String, Consumer)}; {@code cancellation} can stop it from another
+     * thread, even while it waits for the next delta. A cancelled stream ends with a runtime
+     * exception, or returns early if it was cancelled before it started.
+     */
+    public void chatStream(String system, String user, Consumer<String> onDelta, StreamCancellation cancellation) {
+        if (cancellation.isCancelled()) return;
+        try (StreamResponse<ChatCompletionChunk> stream = client.chat().completions().createStreaming(params(system, user))) {
+            if (!cancellation.attach(stream)) return;
+            stream.stream().forEach(chunk -> chunk.choices().forEach(choice ->
+                    choice.delta().content().filter(s -> !s.isEmpty()).ifPresent(onDelta)));
+        }
+    }
+
+    private ChatCompletionCreateParams params(String system, String user) {
+        return ChatCompletionCreateParams.builder()
+                .model(model)
+                .addSystemMessage(system)
+                .addUserMessage(user)
+                .build();
+    }
 }
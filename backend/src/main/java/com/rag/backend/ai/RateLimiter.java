@@ -0,0 +1,69 @@
+package com.rag.backend.ai;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token-bucket limiter for a provider quota expressed as requests/min and tokens/min.
+ *
+ * Callers reserve capacity up front and sleep for the returned delay. A bucket may go into debt,
+ * so concurrent callers queue up behind each other instead of all retrying at once, and a single
+ * request larger than the bucket is still admitted once the debt is paid off. A limit of 0 disables
+ * that bucket.
+ */
+public class RateLimiter {
+
+    private final Bucket requests;
+    private final Bucket tokens;
+    private final LongSupplier nanoClock;
+
+    public RateLimiter(long requestsPerMinute, long tokensPerMinute) {
+        this(requestsPerMinute, tokensPerMinute, System::nanoTime);
+    }
+
+    public RateLimiter(long requestsPerMinute, long tokensPerMinute, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        long now = nanoClock.getAsLong();
+        this.requests = requestsPerMinute > 0 ? new Bucket(requestsPerMinute, now) : null;
+        this.tokens = tokensPerMinute > 0 ? new Bucket(tokensPerMinute, now) : null;
+    }
+
+    /** Blocks until one request carrying {@code tokenCount} tokens may be sent. */
+    public void acquire(int tokenCount) throws InterruptedException {
+        long waitNanos = reserve(tokenCount);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /** Reserves capacity and returns how long the caller must wait before using it. */
+    public synchronized long reserve(int tokenCount) {
+        long now = nanoClock.getAsLong();
+        long wait = 0;
+        if (requests != null) wait = Math.max(wait, requests.take(1, now));
+        if (tokens != null) wait = Math.max(wait, tokens.take(tokenCount, now));
+        return wait;
+    }
+
+    private static final class Bucket {
+        private final double capacity;
+        private final double perNano;
+        private double available;
+        private long lastRefill;
+
+        Bucket(long perMinute, long now) {
+            this.capacity = perMinute;
+            this.perNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.available = perMinute;
+            this.lastRefill = now;
+        }
+
+        /** Takes {@code amount} and returns the nanos until the bucket is out of debt again. */
+        long take(long amount, long now) {
+            available = Math.min(capacity, available + (now - lastRefill) * perNano);
+            lastRefill = now;
+            available -= amount;
+            return available >= 0 ? 0 : (long) Math.ceil(-available / perNano);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.rag.backend.ai;
+
+/**
+ * Stops a streaming completion from another thread. Cancelling closes the upstream response, which
+ * also unblocks a read waiting for the next delta; a stream attached after cancellation is closed
+ * at once.
+ */
+public final class StreamCancellation {
+
+    private AutoCloseable stream;
+    private boolean cancelled;
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        AutoCloseable toClose;
+        synchronized (this) {
+            if (cancelled) return;
+            cancelled = true;
+            toClose = stream;
+        }
+        if (toClose != null) close(toClose);
+    }
+
+    /** Registers the open stream; returns false, having closed it, if cancellation came first. */
+    public boolean attach(AutoCloseable stream) {
+        synchronized (this) {
+            if (!cancelled) {
+                this.stream = stream;
+                return true;
+            }
+        }
+        close(stream);
+        return false;
+    }
+
+    private static void close(AutoCloseable stream) {
+        try {
+            stream.close();
+        } catch (Exception ignored) {
+            // Already closed or broken; either way it is no longer read
+        }
+    }
+}
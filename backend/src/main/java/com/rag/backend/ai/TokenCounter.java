@@ -0,0 +1,87 @@
+package com.rag.backend.ai;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts and cuts text in the BPE tokens of an OpenAI model, locally.
+ *
+ * Encodings are loaded once per JVM and shared, and a counter is thread-safe, so one instance serves
+ * every request. Special tokens such as {@code <|endoftext|>} are counted as plain text, as the API
+ * does for user input. Unknown models fall back to o200k_base, the encoding of current chat models.
+ */
+public final class TokenCounter {
+
+    private static final EncodingRegistry REGISTRY = Encodings.newLazyEncodingRegistry();
+    private static final Map<String, TokenCounter> BY_MODEL = new ConcurrentHashMap<>();
+
+    // Newer than jtokkit's model table, which maps "gpt-4.1" to cl100k_base by its "gpt-4" prefix
+    private static final List<String> O200K_PREFIXES = List.of("gpt-4o", "gpt-4.1", "gpt-4.5", "gpt-5", "o1", "o3", "o4");
+
+    private final Encoding encoding;
+
+    private TokenCounter(Encoding encoding) {
+        this.encoding = encoding;
+    }
+
+    public static TokenCounter forModel(String model) {
+        return BY_MODEL.computeIfAbsent(model, TokenCounter::load);
+    }
+
+    private static TokenCounter load(String model) {
+        for (String prefix : O200K_PREFIXES) {
+            if (model.startsWith(prefix)) return new TokenCounter(REGISTRY.getEncoding(EncodingType.O200K_BASE));
+        }
+        return new TokenCounter(REGISTRY.getEncodingForModel(model)
+                .orElseGet(() -> REGISTRY.getEncoding(EncodingType.O200K_BASE)));
+    }
+
+    public String encodingName() {
+        return encoding.getName();
+    }
+
+    public int count(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokensOrdinary(text);
+    }
+
+    /** The longest prefix of {@code text} that is at most {@code maxTokens} tokens. */
+    public String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty()) return text;
+        if (maxTokens <= 0) return "";
+        EncodingResult result = encoding.encodeOrdinary(text, maxTokens);
+        if (!result.isTruncated()) return text;
+        // Cut the original string rather than decoding, so a character split across tokens is dropped whole
+        return text.substring(0, result.getLastProcessedCharacterIndex() + 1);
+    }
+
+    /**
+     * Consecutive pieces of {@code text} of at most {@code maxTokens} tokens each, which concatenate
+     * back to {@code text}. Pieces end after a newline where one falls in their second half.
+     */
+    public List<String> split(String text, int maxTokens) {
+        if (maxTokens <= 0) throw new IllegalArgumentException("maxTokens must be positive: " + maxTokens);
+        List<String> pieces = new ArrayList<>();
+        String rest = text == null ? "" : text;
+        while (!rest.isEmpty()) {
+            String piece = truncate(rest, maxTokens);
+            if (piece.isEmpty()) {
+                // A single character wider than maxTokens; emit it anyway rather than loop forever
+                piece = rest.substring(0, Character.charCount(rest.codePointAt(0)));
+            } else if (piece.length() < rest.length()) {
+                int newline = piece.lastIndexOf('\n');
+                if (newline >= piece.length() / 2) piece = piece.substring(0, newline + 1);
+            }
+            pieces.add(piece);
+            rest = rest.substring(piece.length());
+        }
+        return pieces;
+    }
+}
@@ -1,35 +1,62 @@
 package com.rag.backend.controller;
 
-import com.rag.backend.ai.EmbeddingService;
+import com.rag.backend.ai.StreamCancellation;
 import com.rag.backend.dto.ChatRequest;
 import com.rag.backend.dto.ChunkSnippet;
 import com.rag.backend.dto.RagAnswer;
+import com.rag.backend.dto.TokenUsage;
 import com.rag.backend.rag.RagChatService;
-import com.rag.backend.repo.ChunkRepo;
+import com.rag.backend.retrieval.ChunkRetriever;
+import com.rag.backend.retrieval.QueryEmbeddingCache;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api")
 @CrossOrigin(origins = "*")
 public class ChatController {
 
-    private final EmbeddingService embeddingService;
-    private final ChunkRepo chunkRepo;
+    private static final Logger log = LoggerFactory.getLogger(ChatController.class);
+
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final ChunkRetriever chunkRetriever;
     private final RagChatService ragChatService;
+    private final Duration streamTimeout;
+    // Streamed generations run here, off the request thread
+    private final ExecutorService streamExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<StreamCancellation> liveStreams = ConcurrentHashMap.newKeySet();
 
-    public ChatController(EmbeddingService embeddingService, ChunkRepo chunkRepo, RagChatService ragChatService) {
-        this.embeddingService = embeddingService;
-        this.chunkRepo = chunkRepo;
+    public ChatController(
+            QueryEmbeddingCache queryEmbeddingCache,
+            ChunkRetriever chunkRetriever,
+            RagChatService ragChatService,
+            @Value("${rag.chat.stream-timeout:PT5M}") Duration streamTimeout) {
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.chunkRetriever = chunkRetriever;
         this.ragChatService = ragChatService;
+        this.streamTimeout = streamTimeout;
     }
 
     @PostMapping("/chat")
     public RagAnswer chat(@RequestBody ChatRequest request) {
-        return ragChatService.answerQuestion(request.getMessage());
+        return ragChatService.answerQuestion(request.getMessage(), request.getRepoName());
     }
 
     @PostMapping("/retrieve")
@@ -40,16 +67,22 @@ public class ChatController {
             throw new IllegalArgumentException("question is required");
         }
 
-        float[] questionEmbedding = embeddingService.embed(question);
-        String vectorLiteral = toPgVectorLiteral(questionEmbedding);
+        // Optional: scope to one repository, and a per-request hnsw.ef_search for trading recall against latency
+        String repoName = body.get("repoName");
+        String efSearch = body.get("efSearch");
+
+        float[] questionEmbedding = queryEmbeddingCache.embed(question);
+        Integer ef = efSearch == null || efSearch.isBlank() ? null : parsePositiveInt("efSearch", efSearch);
+        var chunks = chunkRetriever.search(question, questionEmbedding, 5, repoName, ef);
 
-        return chunkRepo.searchTopK(vectorLiteral, 5).stream()
+        return chunks.stream()
                 .map(c -> new ChunkSnippet(
-                        c.getId(),
-                        c.getDocument().getFilePath(),
-                        c.getStartLine(),
-                        c.getEndLine(),
-                        c.getContent()
+                        c.id(),
+                        c.filePath(),
+                        c.startLine(),
+                        c.endLine(),
+                        c.content(),
+                        c.distance()
                 ))
                 .toList();
     }
@@ -58,7 +91,8 @@ public class ChatController {
     public RagAnswer explainArchitecture(@RequestBody ChatRequest request) {
         return ragChatService.answerWithMode(
                 request.getMessage(),
-                RagChatService.Mode.EXPLAIN_ARCHITECTURE
+                RagChatService.Mode.EXPLAIN_ARCHITECTURE,
+                request.getRepoName()
         );
     }
 
@@ -66,18 +100,99 @@ public class ChatController {
     public RagAnswer codeReview(@RequestBody ChatRequest request) {
         return ragChatService.answerWithMode(
                 request.getMessage(),
-                RagChatService.Mode.CODE_REVIEW
+                RagChatService.Mode.CODE_REVIEW,
+                request.getRepoName()
         );
     }
 
-    private static String toPgVectorLiteral(float[] v) {
-        StringBuilder sb = new StringBuilder();
-        sb.append('[');
-        for (int i = 0; i < v.length; i++) {
-            if (i > 0) sb.append(',');
-            sb.append(v[i]);
+    // --- Streaming (SSE) variants: "citations" once retrieval is done, then "delta" events with
+    // generated text, then "done" with the token usage (or "error" if generation fails midway).
+
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody ChatRequest request) {
+        return stream(request, RagChatService.Mode.DEFAULT);
+    }
+
+    @PostMapping(value = "/chat/explain-architecture/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter explainArchitectureStream(@RequestBody ChatRequest request) {
+        return stream(request, RagChatService.Mode.EXPLAIN_ARCHITECTURE);
+    }
+
+    @PostMapping(value = "/chat/code-review/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter codeReviewStream(@RequestBody ChatRequest request) {
+        return stream(request, RagChatService.Mode.CODE_REVIEW);
+    }
+
+    private SseEmitter stream(ChatRequest request, RagChatService.Mode mode) {
+        // Retrieval runs on the request thread, so its failures still map to regular error responses
+        RagChatService.PreparedAnswer prepared =
+                ragChatService.prepare(request.getMessage(), mode, request.getRepoName());
+
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        // A timeout or a dropped connection stops the upstream completion instead of reading it to the
+        // end for nobody; after a normal completion cancelling is a no-op
+        StreamCancellation cancellation = new StreamCancellation();
+        emitter.onTimeout(() -> {
+            cancellation.cancel();
+            emitter.complete();
+        });
+        emitter.onError(e -> cancellation.cancel());
+        emitter.onCompletion(cancellation::cancel);
+        send(emitter, "citations", prepared.citations());
+
+        liveStreams.add(cancellation);
+        streamExecutor.execute(() -> {
+            try {
+                TokenUsage usage = ragChatService.streamAnswer(
+                        prepared, delta -> send(emitter, "delta", Map.of("content", delta)), cancellation);
+                if (cancellation.isCancelled()) return;
+                send(emitter, "done", usage != null ? Map.of("usage", usage) : Map.of());
+                emitter.complete();
+            } catch (UncheckedIOException e) {
+                // The client disconnected; the completion stream has been closed
+                log.debug("Chat stream aborted: {}", e.getMessage());
+                emitter.completeWithError(e);
+            } catch (RuntimeException e) {
+                if (cancellation.isCancelled()) {
+                    log.debug("Chat stream cancelled: {}", e.getMessage());
+                    return;
+                }
+                log.warn("Chat stream failed", e);
+                try {
+                    send(emitter, "error", Map.of("error", String.valueOf(e.getMessage())));
+                    emitter.complete();
+                } catch (UncheckedIOException ignored) {
+                    emitter.completeWithError(e);
+                }
+            } finally {
+                liveStreams.remove(cancellation);
+            }
+        });
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Open streams are cut off rather than holding up shutdown until they time out
+        liveStreams.forEach(StreamCancellation::cancel);
+        streamExecutor.shutdownNow();
+    }
+
+    private static void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int parsePositiveInt(String name, String value) {
+        try {
+            int n = Integer.parseInt(value.trim());
+            if (n > 0) return n;
+        } catch (NumberFormatException ignored) {
+            // fall through
         }
-        sb.append(']');
-        return sb.toString();
+        throw new IllegalArgumentException(name + " must be a positive integer");
     }
 }
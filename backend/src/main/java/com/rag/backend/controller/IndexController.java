@@ -1,6 +1,8 @@
 package com.rag.backend.controller;
 
 import com.rag.backend.config.RagRepoConfig;
+import com.rag.backend.indexing.IndexJob;
+import com.rag.backend.indexing.IndexJobService;
 import com.rag.backend.indexing.IndexingService;
 import com.rag.backend.retrieval.ChunkEmbeddingService;
 import com.rag.backend.repo.RepositoryRepo;
@@ -10,13 +12,15 @@ import com.rag.backend.repo.ChunkRepo;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
 public class IndexController {
 
-    private final IndexingService indexingService;
+    private final IndexJobService indexJobService;
     private final ChunkEmbeddingService chunkEmbeddingService;
     private final RagRepoConfig ragRepoConfig;
     private final RepositoryRepo repositoryRepo;
@@ -24,13 +28,13 @@ public class IndexController {
     private final ChunkRepo chunkRepo;
 
     public IndexController(
-            IndexingService indexingService,
+            IndexJobService indexJobService,
             ChunkEmbeddingService chunkEmbeddingService,
             RagRepoConfig ragRepoConfig,
             RepositoryRepo repositoryRepo,
             DocumentRepo documentRepo,
             ChunkRepo chunkRepo) {
-        this.indexingService = indexingService;
+        this.indexJobService = indexJobService;
         this.chunkEmbeddingService = chunkEmbeddingService;
         this.ragRepoConfig = ragRepoConfig;
         this.repositoryRepo = repositoryRepo;
@@ -38,18 +42,68 @@ public class IndexController {
         this.chunkRepo = chunkRepo;
     }
 
-    public record IndexRequest(String repoName, String rootPath) {}
-    public record IndexResponse(
-            long repositoryId,
+    /** incremental defaults to true; pass false to rebuild the repository from scratch. */
+    public record IndexRequest(String repoName, String rootPath, Boolean incremental) {}
+    /**
+     * A job's state. Counters are live while it runs; the rates are averaged over the indexing and
+     * embedding phases so far. elapsedMsTotal runs from start to finish.
+     */
+    public record IndexJobResponse(
+            long id,
+            String repoName,
+            IndexJob.Status status,
+            IndexJob.Phase phase,
+            Long repositoryId,
             int filesScanned,
             int filesIndexed,
             int filesSkipped,
+            int filesUnchanged,
             int documentsUpserted,
+            int documentsDeleted,
             int chunksCreated,
+            int chunksReused,
             int chunksEmbedded,
+            int chunksFromCache,
+            double filesPerSecond,
+            double chunksEmbeddedPerSecond,
             long elapsedMsTotal,
-            String embeddingError
-    ) {}
+            String error,
+            String embeddingError,
+            IndexingService.StageTimings stageTimings,
+            Map<String, IndexingService.ChunkingStats> chunking,
+            Instant createdAt,
+            Instant startedAt,
+            Instant finishedAt
+    ) {
+        static IndexJobResponse of(IndexJob job, Instant now) {
+            return new IndexJobResponse(
+                    job.id(),
+                    job.repoName(),
+                    job.status(),
+                    job.phase(),
+                    job.repositoryId(),
+                    job.count(IndexJob.Counter.FILES_SCANNED),
+                    job.count(IndexJob.Counter.FILES_INDEXED),
+                    job.count(IndexJob.Counter.FILES_SKIPPED),
+                    job.count(IndexJob.Counter.FILES_UNCHANGED),
+                    job.count(IndexJob.Counter.DOCUMENTS_UPSERTED),
+                    job.count(IndexJob.Counter.DOCUMENTS_DELETED),
+                    job.count(IndexJob.Counter.CHUNKS_CREATED),
+                    job.count(IndexJob.Counter.CHUNKS_REUSED),
+                    job.count(IndexJob.Counter.CHUNKS_EMBEDDED),
+                    job.count(IndexJob.Counter.CHUNKS_FROM_CACHE),
+                    job.filesPerSecond(now),
+                    job.chunksEmbeddedPerSecond(now),
+                    job.elapsedMs(now),
+                    job.error(),
+                    job.embeddingError(),
+                    job.stageTimings(),
+                    job.chunkingStats(),
+                    job.createdAt(),
+                    job.startedAt(),
+                    job.finishedAt());
+        }
+    }
     public record StatusResponse(
             long repositoryCount,
             long documentCount,
@@ -58,8 +112,13 @@ public class IndexController {
             long chunksMissingEmbedding
     ) {}
 
+    /**
+     * Queues an indexing job and returns it at once (202, with its URL in Location); poll
+     * GET /api/index/jobs/{id} for progress. A repository that already has an unfinished job gets
+     * that job back.
+     */
     @PostMapping("/index")
-    public ResponseEntity<?> index(@RequestBody IndexRequest req) throws IOException {
+    public ResponseEntity<?> index(@RequestBody IndexRequest req) {
         if (req.repoName() == null || req.repoName().isBlank()) {
             return ResponseEntity.badRequest().body("repoName is required");
         }
@@ -80,56 +139,31 @@ public class IndexController {
             }
         }
 
-        long totalStartTime = System.currentTimeMillis();
-        
         try {
-            IndexingService.IndexResult result = indexingService.indexFolder(req.repoName(), rootPath);
-            
-            // Embed chunks for the newly indexed repo
-            int chunksEmbedded = 0;
-            String embeddingError = null;
-            
-            try {
-                int batchSize = 1000;
-                int maxIterations = 50;
-                int iterations = 0;
-                
-                while (iterations < maxIterations) {
-                    ChunkEmbeddingService.BackfillResult backfillResult = 
-                            chunkEmbeddingService.backfillMissingEmbeddingsForRepo(req.repoName(), batchSize);
-                    chunksEmbedded += backfillResult.chunksEmbedded();
-                    
-                    if (backfillResult.chunksRemaining() == 0) {
-                        break;
-                    }
-                    
-                    iterations++;
-                }
-            } catch (Exception e) {
-                embeddingError = "Embedding failed: " + e.getMessage();
-                // Log error but don't fail the entire indexing operation
-                System.err.println("Error embedding chunks for repo " + req.repoName() + ": " + e.getMessage());
-                e.printStackTrace();
-            }
-            
-            long totalElapsedMs = System.currentTimeMillis() - totalStartTime;
-            
-            return ResponseEntity.ok(new IndexResponse(
-                    result.repositoryId(),
-                    result.filesScanned(),
-                    result.filesIndexed(),
-                    result.filesSkipped(),
-                    result.documentsUpserted(),
-                    result.chunksCreated(),
-                    chunksEmbedded,
-                    totalElapsedMs,
-                    embeddingError
-            ));
+            IndexJob job = indexJobService.submit(req.repoName(), rootPath, !Boolean.FALSE.equals(req.incremental()));
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/index/jobs/" + job.id()))
+                    .body(IndexJobResponse.of(job, Instant.now()));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
+    @GetMapping("/index/jobs/{id}")
+    public ResponseEntity<IndexJobResponse> job(@PathVariable long id) {
+        return indexJobService.find(id)
+                .map(job -> ResponseEntity.ok(IndexJobResponse.of(job, Instant.now())))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /** Requests cancellation; the returned job may still be RUNNING until it reaches a stopping point. */
+    @PostMapping("/index/jobs/{id}/cancel")
+    public ResponseEntity<IndexJobResponse> cancelJob(@PathVariable long id) {
+        return indexJobService.cancel(id)
+                .map(job -> ResponseEntity.accepted().body(IndexJobResponse.of(job, Instant.now())))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/index/status")
     public ResponseEntity<StatusResponse> status() {
         long repoCount = repositoryRepo.count();
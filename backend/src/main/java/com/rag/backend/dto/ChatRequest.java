@@ -2,6 +2,8 @@ package com.rag.backend.dto;
 
 public class ChatRequest {
     private String message;
+    // Optional: restrict retrieval to the repository indexed under this name
+    private String repoName;
 
     public ChatRequest() {
     }
@@ -10,6 +12,11 @@ public class ChatRequest {
         this.message = message;
     }
 
+    public ChatRequest(String message, String repoName) {
+        this.message = message;
+        this.repoName = repoName;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -17,4 +24,12 @@ public class ChatRequest {
     public void setMessage(String message) {
         this.message = message;
     }
+
+    public String getRepoName() {
+        return repoName;
+    }
+
+    public void setRepoName(String repoName) {
+        this.repoName = repoName;
+    }
 }
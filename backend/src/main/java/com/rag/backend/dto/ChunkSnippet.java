@@ -5,5 +5,8 @@ public record ChunkSnippet(
         String filePath,
         int startLine,
         int endLine,
-        String content
+        String content,
+        // L2 distance to the question embedding; lower is closer. Null for a lexical-only hit on an
+        // unembedded chunk.
+        Double distance
 ) {}
@@ -2,4 +2,10 @@ package com.rag.backend.dto;
 
 import java.util.List;
 
-public record RagAnswer(String answer, List<Citation> citations) {}
+/** {@code usage} is null when the answer did not come from the model. */
+public record RagAnswer(String answer, List<Citation> citations, TokenUsage usage) {
+
+    public RagAnswer(String answer, List<Citation> citations) {
+        this(answer, citations, null);
+    }
+}
@@ -0,0 +1,4 @@
+package com.rag.backend.dto;
+
+/** Tokens of one chat request, counted locally with the chat model's tokenizer. */
+public record TokenUsage(int promptTokens, int completionTokens) {}
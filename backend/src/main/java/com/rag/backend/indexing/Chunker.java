@@ -1,9 +1,10 @@
 package com.rag.backend.indexing;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.function.Consumer;
 
-public class Chunker {
+public class Chunker implements ChunkingStrategy {
+
+    public static final String NAME = "lines";
 
     public record Chunk(int chunkIndex, int startLine, int endLine, String content) {}
 
@@ -18,29 +19,34 @@ public class Chunker {
         this.overlapLines = overlapLines;
     }
 
-    public List<Chunk> chunkLines(List<String> lines) {
-        List<Chunk> chunks = new ArrayList<>();
-        if (lines == null || lines.isEmpty()) return chunks;
+    @Override
+    public String name() {
+        return NAME;
+    }
 
+    /**
+     * Emits windows of maxLines lines, each overlapping the previous by overlapLines, in order. Only
+     * the window being emitted is copied out of {@code text}.
+     */
+    @Override
+    public void chunk(String path, SourceText text, Consumer<Chunk> sink) {
+        int lines = text.lineCount();
         int start = 0;
         int chunkIndex = 0;
 
-        while (start < lines.size()) {
-            int endExclusive = Math.min(start + maxLines, lines.size());
-            String content = String.join("\n", lines.subList(start, endExclusive));
+        while (start < lines) {
+            int endExclusive = Math.min(start + maxLines, lines);
 
             // line numbers as 1-based
             int startLine = start + 1;
             int endLine = endExclusive;
 
-            chunks.add(new Chunk(chunkIndex, startLine, endLine, content));
+            sink.accept(new Chunk(chunkIndex, startLine, endLine, text.lines(start, endExclusive)));
             chunkIndex++;
 
-            if (endExclusive == lines.size()) break;
+            if (endExclusive == lines) break;
 
             start = Math.max(0, endExclusive - overlapLines);
         }
-
-        return chunks;
     }
 }
@@ -0,0 +1,24 @@
+package com.rag.backend.indexing;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits a file into the chunks that get embedded and retrieved. Implementations are stateless and
+ * shared by the read/chunk workers.
+ *
+ * Chunk hashes decide which embeddings an incremental run can carry over, so switching strategies
+ * only takes effect for unchanged files after a full (non-incremental) rebuild.
+ */
+public interface ChunkingStrategy {
+
+    /** The value of rag.indexing.chunking.strategy that selects this strategy. */
+    String name();
+
+    /** Whether this strategy handles the file at {@code path} (relative, '/'-separated). */
+    default boolean supports(String path) {
+        return true;
+    }
+
+    /** Emits the chunks of {@code text}, the content of {@code path}, in order, numbered from 0. */
+    void chunk(String path, SourceText text, Consumer<Chunker.Chunk> sink);
+}
@@ -0,0 +1,95 @@
+package com.rag.backend.indexing;
+
+import java.util.function.Consumer;
+
+/**
+ * Cuts chunks where the content says so rather than every N lines, so an edit moves at most the
+ * boundaries next to it and the chunks further away keep their text, hash and embedding.
+ *
+ * A chunk is minLines to maxLines lines long and chunks do not overlap. Its end is chosen in order of:
+ * <ol>
+ *   <li>a syntax anchor: a non-blank line after a blank one, the least indented in the window
+ *       (earliest on ties), so top-level declarations and headings beat members and paragraphs.
+ *       A line opening with a closing bracket is never an anchor;</li>
+ *   <li>the end of the file, if it is within maxLines;</li>
+ *   <li>a rolling-hash cut: the first line whose preceding {@value #WINDOW_LINES} lines hash to 0
+ *       modulo half the min-max span, for text without blank lines;</li>
+ *   <li>maxLines.</li>
+ * </ol>
+ * No anchor leaves less than half of minLines at the end of a file.
+ */
+public class ContentDefinedChunker implements ChunkingStrategy {
+
+    public static final String NAME = "content-defined";
+
+    private static final int WINDOW_LINES = 4;
+
+    private final int minLines;
+    private final int maxLines;
+    private final int hashDivisor;
+
+    public ContentDefinedChunker(int minLines, int maxLines) {
+        if (minLines <= 0) throw new IllegalArgumentException("minLines must be > 0");
+        if (maxLines < minLines) throw new IllegalArgumentException("maxLines must be >= minLines");
+        this.minLines = minLines;
+        this.maxLines = maxLines;
+        this.hashDivisor = Math.max(1, (maxLines - minLines) / 2);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void chunk(String path, SourceText text, Consumer<Chunker.Chunk> sink) {
+        int lines = text.lineCount();
+        int start = 0;
+        int chunkIndex = 0;
+        while (start < lines) {
+            int end = cut(text, start, lines);
+            sink.accept(new Chunker.Chunk(chunkIndex++, start + 1, end, text.lines(start, end)));
+            start = end;
+        }
+    }
+
+    /** Exclusive end of the chunk starting at line {@code start} (0-based). */
+    private int cut(SourceText text, int start, int lines) {
+        int from = start + minLines;
+        int to = Math.min(start + maxLines, lines - Math.max(1, minLines / 2));
+
+        int anchor = -1;
+        int anchorIndent = Integer.MAX_VALUE;
+        for (int line = from; line <= to; line++) {
+            if (text.indent(line - 1) >= 0) continue;
+            int indent = text.indent(line);
+            if (indent < 0 || indent >= anchorIndent || isCloser(text.byteAt(line, indent))) continue;
+            anchor = line;
+            anchorIndent = indent;
+            if (indent == 0) break;
+        }
+        if (anchor >= 0) return anchor;
+        if (lines - start <= maxLines) return lines;
+
+        for (int line = Math.max(from, WINDOW_LINES); line < start + maxLines; line++) {
+            if (Long.remainderUnsigned(windowHash(text, line), hashDivisor) == 0) return line;
+        }
+        return start + maxLines;
+    }
+
+    private static long windowHash(SourceText text, int line) {
+        long hash = 0;
+        for (int i = line - WINDOW_LINES; i < line; i++) hash = hash * 31 + text.lineHash(i);
+        // murmur3 finaliser, so the low bits depend on every line
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static boolean isCloser(byte b) {
+        return b == '}' || b == ')' || b == ']';
+    }
+}
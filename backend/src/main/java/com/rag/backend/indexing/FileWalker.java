@@ -0,0 +1,119 @@
+package com.rag.backend.indexing;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Walks a source tree with a {@link FileVisitor}, pruning ignored directories (SKIP_SUBTREE) instead of
+ * descending into them, and honouring .gitignore files found along the way.
+ */
+public class FileWalker {
+
+    public interface Listener {
+        /** A regular file that passed the directory and .gitignore filters. */
+        void onFile(Path file) throws InterruptedException;
+
+        /** A regular file excluded by a .gitignore rule, or an entry that could not be read. */
+        void onSkipped(Path file);
+    }
+
+    private record IgnoreScope(Path dir, GitIgnore rules) {}
+
+    private final Set<String> ignoredDirNames;
+    private final boolean respectGitIgnore;
+
+    public FileWalker(Set<String> ignoredDirNames, boolean respectGitIgnore) {
+        this.ignoredDirNames = ignoredDirNames;
+        this.respectGitIgnore = respectGitIgnore;
+    }
+
+    public void walk(Path root, Listener listener) throws IOException, InterruptedException {
+        Visitor visitor = new Visitor(root, listener);
+        Files.walkFileTree(root, visitor);
+        if (visitor.interrupted != null) throw visitor.interrupted;
+    }
+
+    private class Visitor extends SimpleFileVisitor<Path> {
+
+        private final Path root;
+        private final Listener listener;
+        // innermost .gitignore first
+        private final Deque<IgnoreScope> scopes = new ArrayDeque<>();
+        private InterruptedException interrupted;
+
+        Visitor(Path root, Listener listener) {
+            this.root = root;
+            this.listener = listener;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (!dir.equals(root)) {
+                Path name = dir.getFileName();
+                if (name != null && ignoredDirNames.contains(name.toString())) return FileVisitResult.SKIP_SUBTREE;
+                if (isGitIgnored(dir, true)) return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            if (respectGitIgnore) {
+                Path gitignore = dir.resolve(".gitignore");
+                if (Files.isRegularFile(gitignore)) {
+                    try {
+                        GitIgnore rules = GitIgnore.load(gitignore);
+                        if (!rules.isEmpty()) scopes.push(new IgnoreScope(dir, rules));
+                    } catch (IOException e) {
+                        // An unreadable .gitignore just means nothing extra is ignored
+                    }
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+            if (!scopes.isEmpty() && scopes.peek().dir().equals(dir)) scopes.pop();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+
+            if (isGitIgnored(file, false)) {
+                listener.onSkipped(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            try {
+                listener.onFile(file);
+                return FileVisitResult.CONTINUE;
+            } catch (InterruptedException e) {
+                interrupted = e;
+                return FileVisitResult.TERMINATE;
+            }
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+            if (file.equals(root)) throw exc;
+            // Skip unreadable entries rather than failing the whole walk
+            listener.onSkipped(file);
+            return FileVisitResult.CONTINUE;
+        }
+
+        private boolean isGitIgnored(Path path, boolean isDirectory) {
+            Iterator<IgnoreScope> it = scopes.iterator();
+            while (it.hasNext()) {
+                IgnoreScope scope = it.next();
+                String rel = scope.dir().relativize(path).toString().replace('\\', '/');
+                Boolean ignored = scope.rules().match(rel, isDirectory);
+                if (ignored != null) return ignored;
+            }
+            return false;
+        }
+    }
+}
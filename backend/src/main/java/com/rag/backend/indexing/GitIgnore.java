@@ -0,0 +1,137 @@
+package com.rag.backend.indexing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Rules of a single .gitignore file, matched against paths relative to the directory holding it.
+ * Supports comments, negation (!), directory-only rules (trailing /), anchored rules (containing /),
+ * and the *, ?, [...] and ** globs.
+ */
+public class GitIgnore {
+
+    private record Rule(Pattern pattern, boolean negate, boolean dirOnly, boolean anchored) {}
+
+    private final List<Rule> rules;
+
+    private GitIgnore(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    public static GitIgnore load(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public static GitIgnore parse(List<String> lines) {
+        List<Rule> rules = new ArrayList<>();
+        for (String raw : lines) {
+            String line = stripTrailingSpaces(raw);
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            boolean negate = false;
+            if (line.startsWith("!")) {
+                negate = true;
+                line = line.substring(1);
+            } else if (line.startsWith("\\#") || line.startsWith("\\!")) {
+                line = line.substring(1);
+            }
+
+            boolean dirOnly = line.endsWith("/");
+            if (dirOnly) line = line.substring(0, line.length() - 1);
+
+            // A slash anywhere but the end anchors the pattern to this .gitignore's directory
+            boolean anchored = line.contains("/");
+            if (line.startsWith("/")) line = line.substring(1);
+            if (line.isEmpty()) continue;
+
+            rules.add(new Rule(Pattern.compile(toRegex(line)), negate, dirOnly, anchored));
+        }
+        return new GitIgnore(rules);
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Returns TRUE if the path is ignored, FALSE if a negated rule re-includes it, or null when
+     * no rule matches. The last matching rule wins, as in git.
+     *
+     * @param relativePath path relative to this file's directory, '/'-separated
+     */
+    public Boolean match(String relativePath, boolean isDirectory) {
+        String name = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule r = rules.get(i);
+            if (r.dirOnly() && !isDirectory) continue;
+            String target = r.anchored() ? relativePath : name;
+            if (r.pattern().matcher(target).matches()) {
+                return !r.negate();
+            }
+        }
+        return null;
+    }
+
+    private static String stripTrailingSpaces(String s) {
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) == ' ' && !(end > 1 && s.charAt(end - 2) == '\\')) end--;
+        return s.substring(0, end);
+    }
+
+    static String toRegex(String glob) {
+        StringBuilder sb = new StringBuilder();
+        int n = glob.length();
+        for (int i = 0; i < n; i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*' -> {
+                    if (i + 1 < n && glob.charAt(i + 1) == '*') {
+                        boolean atStart = i == 0;
+                        boolean slashAfter = i + 2 < n && glob.charAt(i + 2) == '/';
+                        if (slashAfter) {
+                            // "**/" matches zero or more leading directories
+                            sb.append("(?:.*/)?");
+                            i += 2;
+                        } else if (atStart || glob.charAt(i - 1) == '/') {
+                            // trailing "/**" matches everything inside
+                            sb.append(".*");
+                            i += 1;
+                        } else {
+                            sb.append("[^/]*");
+                            i += 1;
+                        }
+                    } else {
+                        sb.append("[^/]*");
+                    }
+                }
+                case '?' -> sb.append("[^/]");
+                case '[' -> {
+                    int close = glob.indexOf(']', i + 2);
+                    if (close < 0) {
+                        sb.append("\\[");
+                    } else {
+                        String body = glob.substring(i + 1, close);
+                        if (body.startsWith("!")) body = "^" + body.substring(1);
+                        sb.append('[').append(body.replace("\\", "\\\\")).append(']');
+                        i = close;
+                    }
+                }
+                case '\\' -> {
+                    if (i + 1 < n) {
+                        sb.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                    }
+                }
+                default -> {
+                    if ("().+^$|{}".indexOf(c) >= 0) sb.append('\\');
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
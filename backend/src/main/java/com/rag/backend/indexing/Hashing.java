@@ -15,7 +15,7 @@ public class Hashing {
         }
     }
 
-    private static String toHex(byte[] bytes) {
+    static String toHex(byte[] bytes) {
         StringBuilder sb = new StringBuilder(bytes.length * 2);
         for (byte b : bytes) sb.append(String.format("%02x", b));
         return sb.toString();
@@ -0,0 +1,143 @@
+package com.rag.backend.indexing;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * State of one background indexing job: index the folder, then embed the repository's new chunks.
+ *
+ * A job is updated by the thread running it and read concurrently by status requests. It is
+ * checkpointed to index_jobs at phase changes and periodically while embedding; after a restart an
+ * unfinished job resumes from its persisted phase (see {@link IndexJobService}).
+ */
+public class IndexJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean finished() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    public enum Phase { INDEXING, EMBEDDING, DONE }
+
+    /** Counters, stored in index_jobs columns of the same name. */
+    public enum Counter {
+        FILES_SCANNED, FILES_INDEXED, FILES_SKIPPED, FILES_UNCHANGED, DOCUMENTS_UPSERTED, DOCUMENTS_DELETED,
+        CHUNKS_CREATED, CHUNKS_REUSED, CHUNKS_EMBEDDED, CHUNKS_FROM_CACHE;
+
+        public String column() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final long id;
+    private final String repoName;
+    private final String rootPath;
+    private final boolean incremental;
+    private final Instant createdAt;
+    private final AtomicIntegerArray counters = new AtomicIntegerArray(Counter.values().length);
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Phase phase = Phase.INDEXING;
+    private volatile Long repositoryId;
+    private volatile String error;
+    private volatile String embeddingError;
+    private volatile IndexingService.StageTimings stageTimings;
+    private volatile Map<String, IndexingService.ChunkingStats> chunkingStats;
+    private volatile Instant startedAt;
+    private volatile Instant embeddingStartedAt;
+    private volatile Instant finishedAt;
+    private volatile boolean cancelRequested;
+
+    public IndexJob(long id, String repoName, String rootPath, boolean incremental, Instant createdAt) {
+        this.id = id;
+        this.repoName = repoName;
+        this.rootPath = rootPath;
+        this.incremental = incremental;
+        this.createdAt = createdAt;
+    }
+
+    public long id() { return id; }
+    public String repoName() { return repoName; }
+    public String rootPath() { return rootPath; }
+    public boolean incremental() { return incremental; }
+    public Instant createdAt() { return createdAt; }
+
+    public Status status() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public Phase phase() { return phase; }
+    public void setPhase(Phase phase) { this.phase = phase; }
+
+    public Long repositoryId() { return repositoryId; }
+    public void setRepositoryId(Long repositoryId) { this.repositoryId = repositoryId; }
+
+    /** Why the job failed; null unless FAILED. */
+    public String error() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    /** Set when indexing succeeded but embedding did not; the missing chunks can be backfilled later. */
+    public String embeddingError() { return embeddingError; }
+    public void setEmbeddingError(String embeddingError) { this.embeddingError = embeddingError; }
+
+    /** Only known to the process that ran the indexing phase; null after a restart. */
+    public IndexingService.StageTimings stageTimings() { return stageTimings; }
+    public void setStageTimings(IndexingService.StageTimings stageTimings) { this.stageTimings = stageTimings; }
+    public Map<String, IndexingService.ChunkingStats> chunkingStats() { return chunkingStats; }
+    public void setChunkingStats(Map<String, IndexingService.ChunkingStats> chunkingStats) { this.chunkingStats = chunkingStats; }
+
+    public Instant startedAt() { return startedAt; }
+    public void setStartedAt(Instant startedAt) { this.startedAt = startedAt; }
+
+    public Instant embeddingStartedAt() { return embeddingStartedAt; }
+    public void setEmbeddingStartedAt(Instant embeddingStartedAt) { this.embeddingStartedAt = embeddingStartedAt; }
+
+    public Instant finishedAt() { return finishedAt; }
+    public void setFinishedAt(Instant finishedAt) { this.finishedAt = finishedAt; }
+
+    public boolean cancelRequested() { return cancelRequested; }
+    public void requestCancel() { this.cancelRequested = true; }
+
+    public int count(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    public void add(Counter counter, int delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    public void set(Counter counter, int value) {
+        counters.set(counter.ordinal(), value);
+    }
+
+    /** Wall time from start to finish (or to {@code now} while running); 0 before the job starts. */
+    public long elapsedMs(Instant now) {
+        return startedAt == null ? 0 : millisBetween(startedAt, finishedAt != null ? finishedAt : now);
+    }
+
+    /** Files indexed or found unchanged per second of the indexing phase. */
+    public double filesPerSecond(Instant now) {
+        if (startedAt == null) return 0;
+        Instant end = embeddingStartedAt != null ? embeddingStartedAt : now;
+        return perSecond(count(Counter.FILES_INDEXED) + count(Counter.FILES_UNCHANGED), startedAt, end);
+    }
+
+    /** Chunks embedded through the provider per second of the embedding phase. */
+    public double chunksEmbeddedPerSecond(Instant now) {
+        if (embeddingStartedAt == null) return 0;
+        return perSecond(count(Counter.CHUNKS_EMBEDDED), embeddingStartedAt, finishedAt != null ? finishedAt : now);
+    }
+
+    private static double perSecond(int count, Instant from, Instant to) {
+        long ms = millisBetween(from, to);
+        return ms == 0 ? 0 : count * 1000.0 / ms;
+    }
+
+    private static long millisBetween(Instant from, Instant to) {
+        return Math.max(0, Duration.between(from, to).toMillis());
+    }
+}
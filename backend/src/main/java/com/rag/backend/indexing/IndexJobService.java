@@ -0,0 +1,285 @@
+package com.rag.backend.indexing;
+
+import com.rag.backend.repo.IndexJobRepo;
+import com.rag.backend.retrieval.ChunkEmbeddingService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs indexing jobs in the background: {@link IndexingService#indexFolder} for the folder, then the
+ * embedding backfill for the repository's chunks.
+ *
+ * At most max-concurrent jobs run at once; the rest wait in submission order, and a repository has
+ * at most one unfinished job. The job row is checkpointed when the job starts, once its repository
+ * row exists, every checkpoint-interval while indexing and embedding, and when it finishes. On
+ * startup, jobs left QUEUED or RUNNING by the previous process are picked up again from their
+ * persisted phase: a job that was embedding does not index again, and its backfill only sees chunks
+ * still missing a vector. An interrupted indexing phase is rerun incrementally against the repository
+ * it had already created, so the batches it committed are skipped by hash.
+ *
+ * Cancellation is cooperative: indexing stops before persisting its next batch, and the backfill
+ * stops after the batches in flight; what either committed stays committed.
+ */
+@Service
+public class IndexJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexJobService.class);
+
+    // Backfill rounds per job; a round ends early only when chunks were added while it ran
+    private static final int MAX_BACKFILL_ROUNDS = 50;
+    private static final int BACKFILL_PAGE_SIZE = 1000;
+    private static final int RECENT_JOBS = 100;
+
+    private final IndexingService indexingService;
+    private final ChunkEmbeddingService chunkEmbeddingService;
+    private final IndexJobRepo indexJobRepo;
+    private final Duration checkpointInterval;
+    private final boolean resumeOnStartup;
+    private final ExecutorService executor;
+
+    // Unfinished jobs of this process, and the last few it finished (which still have stage timings);
+    // older jobs are read back from index_jobs
+    private final Map<Long, IndexJob> liveJobs = new ConcurrentHashMap<>();
+    private final Map<String, IndexJob> liveJobsByRepo = new ConcurrentHashMap<>();
+    private final Map<Long, IndexJob> recentJobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, IndexJob> eldest) {
+            return size() > RECENT_JOBS;
+        }
+    });
+    private volatile boolean shuttingDown;
+
+    public IndexJobService(
+            IndexingService indexingService,
+            ChunkEmbeddingService chunkEmbeddingService,
+            IndexJobRepo indexJobRepo,
+            @Value("${rag.indexing.jobs.max-concurrent:1}") int maxConcurrent,
+            @Value("${rag.indexing.jobs.checkpoint-interval:PT5S}") Duration checkpointInterval,
+            @Value("${rag.indexing.jobs.resume-on-startup:true}") boolean resumeOnStartup) {
+        this.indexingService = indexingService;
+        this.chunkEmbeddingService = chunkEmbeddingService;
+        this.indexJobRepo = indexJobRepo;
+        this.checkpointInterval = checkpointInterval;
+        this.resumeOnStartup = resumeOnStartup;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrent),
+                Thread.ofPlatform().name("index-job-", 0).factory());
+    }
+
+    /**
+     * Queues a job for {@code repoName}, or returns the repository's unfinished job if it has one.
+     *
+     * @throws IllegalArgumentException if rootPath is not a directory
+     */
+    public synchronized IndexJob submit(String repoName, String rootPath, boolean incremental) {
+        Path root = Paths.get(rootPath).normalize().toAbsolutePath();
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Path does not exist or is not a directory: " + root);
+        }
+        IndexJob running = liveJobsByRepo.get(repoName);
+        if (running != null) return running;
+
+        IndexJob job = indexJobRepo.create(repoName, rootPath, incremental);
+        enqueue(job);
+        return job;
+    }
+
+    /** The job's live state while this process runs it, else its last checkpoint. */
+    public Optional<IndexJob> find(long id) {
+        IndexJob job = liveJobs.get(id);
+        if (job == null) job = recentJobs.get(id);
+        return job != null ? Optional.of(job) : indexJobRepo.findById(id);
+    }
+
+    /**
+     * Asks a job to stop. A queued job finishes as CANCELLED without running; a running one stops at
+     * its next cancellation point. Finished jobs are returned unchanged.
+     */
+    public Optional<IndexJob> cancel(long id) {
+        IndexJob live = liveJobs.get(id);
+        if (live == null) return find(id);
+        live.requestCancel();
+        return Optional.of(live);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void resumeUnfinishedJobs() {
+        if (!resumeOnStartup) return;
+        for (IndexJob job : indexJobRepo.findUnfinished()) {
+            if (liveJobs.containsKey(job.id())) continue;
+            log.info("Resuming index job {} for {} from phase {}", job.id(), job.repoName(), job.phase());
+            job.setStatus(IndexJob.Status.QUEUED);
+            enqueue(job);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Running jobs are interrupted and left RUNNING, so the next start resumes them
+        shuttingDown = true;
+        executor.shutdownNow();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private void enqueue(IndexJob job) {
+        liveJobs.put(job.id(), job);
+        liveJobsByRepo.put(job.repoName(), job);
+        executor.execute(() -> run(job));
+    }
+
+    private void run(IndexJob job) {
+        try {
+            if (job.cancelRequested()) throw new CancellationException("Cancelled before it started");
+            job.setStatus(IndexJob.Status.RUNNING);
+            if (job.startedAt() == null) job.setStartedAt(Instant.now());
+            indexJobRepo.save(job);
+
+            if (job.phase() == IndexJob.Phase.INDEXING) {
+                index(job);
+            }
+            embed(job);
+            finish(job, IndexJob.Status.SUCCEEDED, null);
+        } catch (CancellationException e) {
+            log.info("Index job {} for {} cancelled: {}", job.id(), job.repoName(), e.getMessage());
+            finish(job, IndexJob.Status.CANCELLED, null);
+        } catch (Exception e) {
+            if (shuttingDown) {
+                log.info("Index job {} for {} interrupted by shutdown; it resumes on the next start", job.id(), job.repoName());
+                release(job);
+                return;
+            }
+            log.warn("Index job {} for {} failed", job.id(), job.repoName(), e);
+            finish(job, IndexJob.Status.FAILED, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private void index(IndexJob job) throws Exception {
+        // A rerun after a restart starts the phase's counters over
+        for (IndexJob.Counter c : IndexJob.Counter.values()) job.set(c, 0);
+
+        AtomicLong lastCheckpoint = new AtomicLong(System.nanoTime());
+        IndexProgress progress = new IndexProgress() {
+            @Override
+            public void repositoryResolved(long repositoryId) {
+                if (job.repositoryId() == null) {
+                    job.setRepositoryId(repositoryId);
+                    indexJobRepo.save(job);
+                }
+            }
+
+            @Override
+            public void fileScanned() {
+                job.add(IndexJob.Counter.FILES_SCANNED, 1);
+            }
+
+            @Override
+            public void fileUnchanged() {
+                job.add(IndexJob.Counter.FILES_UNCHANGED, 1);
+            }
+
+            @Override
+            public void filesPersisted(int files, int chunks) {
+                job.add(IndexJob.Counter.FILES_INDEXED, files);
+                job.add(IndexJob.Counter.CHUNKS_CREATED, chunks);
+                checkpointIfDue(job, lastCheckpoint);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return job.cancelRequested();
+            }
+        };
+
+        // A full rebuild that already created its repository continues into it instead of starting another
+        IndexingService.IndexResult result = !job.incremental() && job.repositoryId() != null
+                ? indexingService.resumeFolder(job.repositoryId(), job.rootPath(), progress)
+                : indexingService.indexFolder(job.repoName(), job.rootPath(), job.incremental(), progress);
+
+        // The result is exact where the live counters lag (skipped files are only counted at the end)
+        job.setRepositoryId(result.repositoryId());
+        job.set(IndexJob.Counter.FILES_SCANNED, result.filesScanned());
+        job.set(IndexJob.Counter.FILES_INDEXED, result.filesIndexed());
+        job.set(IndexJob.Counter.FILES_SKIPPED, result.filesSkipped());
+        job.set(IndexJob.Counter.FILES_UNCHANGED, result.filesUnchanged());
+        job.set(IndexJob.Counter.DOCUMENTS_UPSERTED, result.documentsUpserted());
+        job.set(IndexJob.Counter.DOCUMENTS_DELETED, result.documentsDeleted());
+        job.set(IndexJob.Counter.CHUNKS_CREATED, result.chunksCreated());
+        job.set(IndexJob.Counter.CHUNKS_REUSED, result.chunksReused());
+        job.setStageTimings(result.stageTimings());
+        job.setChunkingStats(result.chunking());
+        job.setPhase(IndexJob.Phase.EMBEDDING);
+        job.setEmbeddingStartedAt(Instant.now());
+        indexJobRepo.save(job);
+    }
+
+    /** Embeds the repository's missing chunks; a provider failure is recorded, not fatal. */
+    private void embed(IndexJob job) {
+        AtomicLong lastCheckpoint = new AtomicLong(System.nanoTime());
+        try {
+            for (int round = 0; round < MAX_BACKFILL_ROUNDS; round++) {
+                ChunkEmbeddingService.BackfillResult result = chunkEmbeddingService.backfillMissingEmbeddingsForRepo(
+                        job.repoName(), BACKFILL_PAGE_SIZE,
+                        stored -> {
+                            job.add(IndexJob.Counter.CHUNKS_EMBEDDED, stored);
+                            checkpointIfDue(job, lastCheckpoint);
+                        },
+                        job::cancelRequested);
+                job.add(IndexJob.Counter.CHUNKS_FROM_CACHE, result.chunksFromCache());
+                if (result.chunksRemaining() == 0 || result.chunksEmbedded() + result.chunksFromCache() == 0) break;
+            }
+        } catch (CancellationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (shuttingDown) throw e;
+            log.warn("Embedding failed for index job {} ({})", job.id(), job.repoName(), e);
+            job.setEmbeddingError("Embedding failed: " + e.getMessage());
+        }
+    }
+
+    private void checkpointIfDue(IndexJob job, AtomicLong lastCheckpoint) {
+        long now = System.nanoTime();
+        long last = lastCheckpoint.get();
+        if (now - last >= checkpointInterval.toNanos() && lastCheckpoint.compareAndSet(last, now)) {
+            indexJobRepo.save(job);
+        }
+    }
+
+    private void finish(IndexJob job, IndexJob.Status status, String error) {
+        job.setError(error);
+        if (status == IndexJob.Status.SUCCEEDED) job.setPhase(IndexJob.Phase.DONE);
+        job.setFinishedAt(Instant.now());
+        // Last, so a reader that sees the final status sees the rest too
+        job.setStatus(status);
+        try {
+            indexJobRepo.save(job);
+        } finally {
+            recentJobs.put(job.id(), job);
+            release(job);
+        }
+    }
+
+    private void release(IndexJob job) {
+        liveJobs.remove(job.id());
+        liveJobsByRepo.remove(job.repoName(), job);
+    }
+}
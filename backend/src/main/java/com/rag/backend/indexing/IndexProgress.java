@@ -0,0 +1,27 @@
+package com.rag.backend.indexing;
+
+/**
+ * Receives live counters from a running {@link IndexingService#indexFolder} and can stop it.
+ * Callbacks arrive from the walker and persist threads concurrently.
+ */
+public interface IndexProgress {
+
+    IndexProgress NONE = new IndexProgress() {};
+
+    /** The repository being indexed is committed and known by this id; called before any file. */
+    default void repositoryResolved(long repositoryId) {}
+
+    /** A file was found by the walk, whether or not it will be indexed. */
+    default void fileScanned() {}
+
+    /** A file's content hash matched the indexed document, so it was left alone. */
+    default void fileUnchanged() {}
+
+    /** A batch of new or modified files and their chunks was committed. */
+    default void filesPersisted(int files, int chunks) {}
+
+    /** Checked before every file is persisted; once true, indexing stops with a CancellationException. */
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -1,16 +1,24 @@
 package com.rag.backend.indexing;
 
-import com.rag.backend.entity.*;
+import com.rag.backend.ai.TokenCounter;
+import com.rag.backend.entity.RepositoryEntity;
 import com.rag.backend.repo.*;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.nio.charset.MalformedInputException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class IndexingService {
@@ -18,9 +26,19 @@ public class IndexingService {
     private final RepositoryRepo repositoryRepo;
     private final DocumentRepo documentRepo;
     private final ChunkRepo chunkRepo;
+    private final BulkIndexRepo bulkIndexRepo;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
 
-    // Phase 3 tuning knobs
-    private final Chunker chunker = new Chunker(120, 20);
+    // The first that supports a file chunks it
+    private final List<ChunkingStrategy> chunkingStrategies;
+
+    private final FileWalker fileWalker;
+
+    // Pipeline tuning knobs
+    private final int parallelism;
+    private final int queueCapacity;
+    private final int persistBatchSize;
 
     // Ignore folders common in codebases
     private static final Set<String> IGNORE_DIRS = Set.of(
@@ -38,122 +56,526 @@ public class IndexingService {
             "sql", "env"
     );
 
+    // How long the persist loop waits for a file before checking for cancellation and failures
+    private static final long STAGE_POLL_MS = 200;
+
+    // Sentinels used to signal end-of-stream between pipeline stages
+    private static final Path END_OF_PATHS = Paths.get("");
+    private static final PreparedFile END_OF_FILES = new PreparedFile("", "", null, List.of());
+
     public record IndexResult(
             long repositoryId,
             int filesScanned,
             int filesIndexed,
             int filesSkipped,
+            int filesUnchanged,
             int documentsUpserted,
+            int documentsDeleted,
             int chunksCreated,
-            long elapsedMs
+            int chunksReused,
+            long elapsedMs,
+            StageTimings stageTimings,
+            Map<String, ChunkingStats> chunking
     ) {}
 
-    public IndexingService(RepositoryRepo repositoryRepo, DocumentRepo documentRepo, ChunkRepo chunkRepo) {
+    /**
+     * Per-stage timings. walkMs and persistMs are wall time of their single thread;
+     * readMs and chunkMs are summed over all workers, so they can exceed elapsedMs.
+     */
+    public record StageTimings(long walkMs, long readMs, long chunkMs, long persistMs) {}
+
+    /** What one chunking strategy produced for the new and modified files of a run. */
+    public record ChunkingStats(int files, int chunks, long lines, long chars) {}
+
+    private static final class ChunkingTally {
+        final LongAdder files = new LongAdder();
+        final LongAdder chunks = new LongAdder();
+        final LongAdder lines = new LongAdder();
+        final LongAdder chars = new LongAdder();
+
+        ChunkingStats snapshot() {
+            return new ChunkingStats(files.intValue(), chunks.intValue(), lines.sum(), chars.sum());
+        }
+    }
+
+    /**
+     * Output of the read + chunk stages for one file, ready to be persisted.
+     * existingDocumentId is set when the file was indexed before; chunks is null when its hash is unchanged.
+     */
+    private record PreparedFile(String relativePath, String contentHash, Long existingDocumentId, List<PreparedChunk> chunks) {
+        boolean unchanged() { return chunks == null; }
+    }
+
+    private record PreparedChunk(Chunker.Chunk chunk, String contentHash) {}
+
+    @Autowired
+    public IndexingService(
+            RepositoryRepo repositoryRepo,
+            DocumentRepo documentRepo,
+            ChunkRepo chunkRepo,
+            BulkIndexRepo bulkIndexRepo,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            @Value("${rag.indexing.parallelism:0}") int parallelism,
+            @Value("${rag.indexing.queue-capacity:256}") int queueCapacity,
+            @Value("${rag.indexing.persist-batch-size:100}") int persistBatchSize,
+            @Value("${rag.indexing.respect-gitignore:true}") boolean respectGitIgnore,
+            @Value("${rag.indexing.chunking.strategy:lines}") String chunkingStrategy,
+            @Value("${rag.indexing.chunking.min-lines:40}") int chunkMinLines,
+            @Value("${rag.indexing.chunking.max-lines:120}") int chunkMaxLines,
+            @Value("${rag.indexing.chunking.target-tokens:512}") int chunkTargetTokens,
+            @Value("${rag.embedding.model:text-embedding-3-small}") String embeddingModel) {
+        this(repositoryRepo, documentRepo, chunkRepo, bulkIndexRepo, entityManager, transactionManager,
+                parallelism, queueCapacity, persistBatchSize, respectGitIgnore,
+                chunkingStrategies(chunkingStrategy, chunkMinLines, chunkMaxLines, chunkTargetTokens, embeddingModel));
+    }
+
+    /** @param chunkingStrategies tried in order; the first that supports a file chunks it */
+    public IndexingService(
+            RepositoryRepo repositoryRepo,
+            DocumentRepo documentRepo,
+            ChunkRepo chunkRepo,
+            BulkIndexRepo bulkIndexRepo,
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            int parallelism,
+            int queueCapacity,
+            int persistBatchSize,
+            boolean respectGitIgnore,
+            List<ChunkingStrategy> chunkingStrategies) {
         this.repositoryRepo = repositoryRepo;
         this.documentRepo = documentRepo;
         this.chunkRepo = chunkRepo;
+        this.bulkIndexRepo = bulkIndexRepo;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // 0 (the default) means one worker per available core
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.persistBatchSize = Math.max(1, persistBatchSize);
+        this.fileWalker = new FileWalker(IGNORE_DIRS, respectGitIgnore);
+        this.chunkingStrategies = List.copyOf(chunkingStrategies);
+    }
+
+    private static List<ChunkingStrategy> chunkingStrategies(String chunkingStrategy, int chunkMinLines, int chunkMaxLines,
+                                                             int chunkTargetTokens, String embeddingModel) {
+        Chunker lines = new Chunker(120, 20);
+        return switch (chunkingStrategy) {
+            case Chunker.NAME -> List.of(lines);
+            case ContentDefinedChunker.NAME -> List.of(new ContentDefinedChunker(chunkMinLines, chunkMaxLines));
+            // Chunk sizes are measured in the tokens the embedding model will see
+            case SyntaxAwareChunker.NAME -> List.of(
+                    new SyntaxAwareChunker(TokenCounter.forModel(embeddingModel), chunkTargetTokens), lines);
+            default -> throw new IllegalArgumentException("Unknown rag.indexing.chunking.strategy: " + chunkingStrategy);
+        };
     }
 
-    @Transactional
     public IndexResult indexFolder(String repoName, String rootPath) throws IOException {
-        long startTime = System.currentTimeMillis();
-        
+        return indexFolder(repoName, rootPath, true);
+    }
+
+    /**
+     * Indexes a folder as a staged pipeline: walk -> read/decode -> chunk+hash -> batched persist.
+     * The walker and the read/chunk workers run on virtual threads and hand work over through
+     * bounded queues, so a slow stage applies backpressure to the ones before it. Persistence stays
+     * on the calling thread.
+     *
+     * Every persist batch (rag.indexing.persist-batch-size files) commits in its own transaction,
+     * after which the persistence context is cleared, so memory is bounded by the queues and one
+     * batch rather than by the size of the repository. A batch writes its documents' hashes together
+     * with their chunks, so a failure midway leaves every document either fully re-indexed or
+     * untouched, and an incremental rerun picks up exactly the files that were not committed.
+     * Deleted files are pruned in a last transaction, only after a complete walk.
+     *
+     * In incremental mode the repository is upserted by name; files whose content hash is unchanged
+     * are left alone, modified files are re-chunked (keeping embeddings of chunks whose content did not
+     * change) and documents whose files are gone are deleted. Otherwise a new repository is created and
+     * every file is written from scratch.
+     */
+    public IndexResult indexFolder(String repoName, String rootPath, boolean incremental) throws IOException {
+        return indexFolder(repoName, rootPath, incremental, IndexProgress.NONE);
+    }
+
+    /**
+     * As {@link #indexFolder(String, String, boolean)}, reporting counters to {@code progress} as the
+     * pipeline advances.
+     *
+     * @throws java.util.concurrent.CancellationException once {@code progress} reports cancellation;
+     *         batches committed before that stay committed
+     */
+    public IndexResult indexFolder(String repoName, String rootPath, boolean incremental, IndexProgress progress) throws IOException {
+        Path root = resolveRoot(rootPath);
+        RepositoryEntity repo = transactionTemplate.execute(status -> {
+            RepositoryEntity found = incremental ? upsertRepository(repoName, root) : null;
+            return found != null ? found : repositoryRepo.save(new RepositoryEntity(repoName, root.toString()));
+        });
+        return index(repo.getId(), root, incremental, progress);
+    }
+
+    /**
+     * Continues an indexFolder run that stopped midway, into the repository it had created: files
+     * already committed are skipped by hash, the rest are indexed and deleted files are pruned. This
+     * is how a full rebuild resumes without starting yet another repository.
+     *
+     * @throws IllegalArgumentException if the repository no longer exists
+     */
+    public IndexResult resumeFolder(long repositoryId, String rootPath, IndexProgress progress) throws IOException {
+        Path root = resolveRoot(rootPath);
+        if (!repositoryRepo.existsById(repositoryId)) {
+            throw new IllegalArgumentException("Repository " + repositoryId + " no longer exists");
+        }
+        return index(repositoryId, root, true, progress);
+    }
+
+    private static Path resolveRoot(String rootPath) {
         Path root = Paths.get(rootPath).normalize().toAbsolutePath();
         if (!Files.exists(root) || !Files.isDirectory(root)) {
             throw new IllegalArgumentException("Path does not exist or is not a directory: " + root);
         }
+        return root;
+    }
+
+    private IndexResult index(long repositoryId, Path root, boolean incremental, IndexProgress progress) throws IOException {
+        long startTime = System.currentTimeMillis();
+        progress.repositoryResolved(repositoryId);
+
+        // path -> existing document, read-only once the workers start
+        Map<String, DocumentRepo.IndexedDocument> existing = new HashMap<>();
+        if (incremental) {
+            for (DocumentRepo.IndexedDocument d : documentRepo.findIndexedDocuments(repositoryId)) {
+                existing.put(d.getFilePath(), d);
+            }
+        }
+        Set<String> seenPaths = new HashSet<>();
 
-        RepositoryEntity repo = repositoryRepo.save(new RepositoryEntity(repoName, root.toString()));
+        AtomicInteger filesScanned = new AtomicInteger();
+        AtomicInteger filesSkipped = new AtomicInteger();
+        AtomicLong walkNanos = new AtomicLong();
+        AtomicLong readNanos = new AtomicLong();
+        AtomicLong chunkNanos = new AtomicLong();
+        Map<String, ChunkingTally> chunking = new ConcurrentHashMap<>();
+        AtomicReference<IOException> walkError = new AtomicReference<>();
+        // First unexpected failure of the walker or a worker; fails the run instead of stalling it
+        AtomicReference<Throwable> stageFailure = new AtomicReference<>();
 
-        int filesScanned = 0;
-        int filesIndexed = 0;
-        int filesSkipped = 0;
-        int documentsUpserted = 0;
-        int chunks = 0;
+        BlockingQueue<Path> pathQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<PreparedFile> fileQueue = new ArrayBlockingQueue<>(queueCapacity);
 
-        try (Stream<Path> paths = Files.walk(root)) {
-            Iterator<Path> it = paths.iterator();
-            while (it.hasNext()) {
-                Path p = it.next();
+        PersistCounts counts = new PersistCounts();
+        long persistNanos = 0;
 
-                if (Files.isDirectory(p)) {
-                    if (shouldIgnoreDir(p)) {
-                        // Skip subtree
-                        // Files.walk doesn't support skipping easily without FileVisitor,
-                        // but this simple filter is usually fine. We'll still avoid reading files under ignored dirs below.
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            executor.submit(() -> walk(root, pathQueue, filesScanned, filesSkipped, walkNanos, walkError, stageFailure, progress));
+            for (int i = 0; i < parallelism; i++) {
+                executor.submit(() -> prepareFiles(root, existing, pathQueue, fileQueue, filesSkipped, readNanos, chunkNanos, chunking, stageFailure));
+            }
+
+            List<PreparedFile> batch = new ArrayList<>(persistBatchSize);
+            int workersDone = 0;
+            while (workersDone < parallelism) {
+                // Polls, so cancellation and stage failures are seen while the workers are busy or stuck
+                PreparedFile file = fileQueue.poll(STAGE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (progress.isCancelled()) {
+                    throw new CancellationException("Indexing of " + root + " was cancelled");
+                }
+                rethrowStageFailure(stageFailure, root);
+                if (file == null) continue;
+                if (file == END_OF_FILES) {
+                    workersDone++;
+                } else {
+                    seenPaths.add(file.relativePath());
+                    if (file.unchanged()) {
+                        counts.filesUnchanged++;
+                        progress.fileUnchanged();
+                    } else {
+                        batch.add(file);
                     }
-                    continue;
                 }
 
-                if (!Files.isRegularFile(p)) continue;
-                
-                filesScanned++;
-                
-                if (isUnderIgnoredDir(root, p)) {
-                    filesSkipped++;
-                    continue;
-                }
-                if (!isAllowedFile(p)) {
-                    filesSkipped++;
-                    continue;
+                if (batch.size() >= persistBatchSize || (workersDone == parallelism && !batch.isEmpty())) {
+                    long persistStart = System.nanoTime();
+                    int chunksBefore = counts.chunksCreated;
+                    transactionTemplate.executeWithoutResult(status -> {
+                        persistBatch(repositoryId, batch, counts);
+                        // Nothing read or written in this batch is needed by the next one
+                        entityManager.clear();
+                    });
+                    persistNanos += System.nanoTime() - persistStart;
+                    progress.filesPersisted(batch.size(), counts.chunksCreated - chunksBefore);
+                    batch.clear();
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Indexing was interrupted", e);
+        } finally {
+            // Stops the walker and workers if persistence failed midway
+            executor.shutdownNow();
+        }
 
-                List<String> lines;
-                try {
-                    lines = Files.readAllLines(p, StandardCharsets.UTF_8);
-                } catch (MalformedInputException mie) {
-                    // Non-UTF8 or binary-ish file, skip.
-                    filesSkipped++;
-                    continue;
-                } catch (Exception ex) {
-                    // Skip unreadable files
-                    filesSkipped++;
-                    continue;
+        if (walkError.get() != null) {
+            throw walkError.get();
+        }
+        rethrowStageFailure(stageFailure, root);
+
+        // Only prune after a complete walk, otherwise a partial walk would delete live documents
+        if (incremental) {
+            long persistStart = System.nanoTime();
+            List<Long> goneIds = new ArrayList<>();
+            for (DocumentRepo.IndexedDocument d : existing.values()) {
+                if (!seenPaths.contains(d.getFilePath())) goneIds.add(d.getId());
+            }
+            if (!goneIds.isEmpty()) {
+                // chunks go with them via ON DELETE CASCADE
+                transactionTemplate.executeWithoutResult(status -> documentRepo.deleteAllByIdInBatch(goneIds));
+            }
+            counts.documentsDeleted = goneIds.size();
+            persistNanos += System.nanoTime() - persistStart;
+        }
+        // Once the chunks are written, so a new repository's index is built in one pass
+        bulkIndexRepo.ensureRepositoryVectorIndex(repositoryId);
+        bulkIndexRepo.dropSupersededRepositoryVectorIndexes(repositoryId);
+
+        long elapsedMs = System.currentTimeMillis() - startTime;
+        StageTimings timings = new StageTimings(
+                TimeUnit.NANOSECONDS.toMillis(walkNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(readNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(chunkNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(persistNanos)
+        );
+        Map<String, ChunkingStats> chunkingStats = new TreeMap<>();
+        chunking.forEach((name, tally) -> chunkingStats.put(name, tally.snapshot()));
+        return new IndexResult(repositoryId, filesScanned.get(), counts.filesIndexed, filesSkipped.get(),
+                counts.filesUnchanged, counts.documentsUpserted, counts.documentsDeleted,
+                counts.chunksCreated, counts.chunksReused, elapsedMs, timings, chunkingStats);
+    }
+
+    private static void rethrowStageFailure(AtomicReference<Throwable> stageFailure, Path root) {
+        Throwable failure = stageFailure.get();
+        if (failure == null) return;
+        if (failure instanceof Error error) throw error;
+        throw new IllegalStateException("Indexing of " + root + " failed: " + failure.getMessage(), failure);
+    }
+
+    private RepositoryEntity upsertRepository(String repoName, Path root) {
+        Optional<RepositoryEntity> found = repositoryRepo.findFirstByNameOrderByIdDesc(repoName);
+        if (found.isEmpty()) return null;
+
+        RepositoryEntity repo = found.get();
+        if (!root.toString().equals(repo.getRootPath())) {
+            repo.setRootPath(root.toString());
+        }
+        return repo;
+    }
+
+    /** Counters owned by the persist stage (single-threaded). */
+    private static class PersistCounts {
+        int filesIndexed;
+        int filesUnchanged;
+        int documentsUpserted;
+        int documentsDeleted;
+        int chunksCreated;
+        int chunksReused;
+    }
+
+    // --- Stage 1: walk ---
+
+    private void walk(Path root, BlockingQueue<Path> pathQueue, AtomicInteger filesScanned, AtomicInteger filesSkipped,
+                      AtomicLong walkNanos, AtomicReference<IOException> walkError,
+                      AtomicReference<Throwable> stageFailure, IndexProgress progress) {
+        long start = System.nanoTime();
+        // Time spent blocked on a full queue is backpressure, not walking
+        long[] blockedNanos = {0};
+        try {
+            fileWalker.walk(root, new FileWalker.Listener() {
+                @Override
+                public void onFile(Path file) throws InterruptedException {
+                    filesScanned.incrementAndGet();
+                    progress.fileScanned();
+                    if (!isAllowedFile(file)) {
+                        filesSkipped.incrementAndGet();
+                        return;
+                    }
+                    long blockedStart = System.nanoTime();
+                    pathQueue.put(file);
+                    blockedNanos[0] += System.nanoTime() - blockedStart;
                 }
 
-                String fullText = String.join("\n", lines);
-                String docHash = Hashing.sha256(fullText);
-
-                String relativePath = root.relativize(p.toAbsolutePath()).toString().replace("\\", "/");
-                DocumentEntity doc = documentRepo.save(new DocumentEntity(repo, relativePath, docHash));
-                filesIndexed++;
-                documentsUpserted++;
-
-                List<Chunker.Chunk> chunkList = chunker.chunkLines(lines);
-                List<ChunkEntity> chunkEntities = new ArrayList<>(chunkList.size());
-
-                for (Chunker.Chunk c : chunkList) {
-                    String chunkHash = Hashing.sha256(c.content());
-                    chunkEntities.add(new ChunkEntity(
-                            doc,
-                            c.chunkIndex(),
-                            c.startLine(),
-                            c.endLine(),
-                            c.content(),
-                            chunkHash
-                    ));
+                @Override
+                public void onSkipped(Path file) {
+                    filesScanned.incrementAndGet();
+                    progress.fileScanned();
+                    filesSkipped.incrementAndGet();
                 }
+            });
+        } catch (IOException e) {
+            walkError.set(e);
+        } catch (RuntimeException e) {
+            walkError.set(new IOException("Failed to walk " + root, e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Throwable e) {
+            stageFailure.compareAndSet(null, e);
+        } finally {
+            walkNanos.set(System.nanoTime() - start - blockedNanos[0]);
+        }
 
-                chunkRepo.saveAll(chunkEntities);
-                chunks += chunkEntities.size();
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                pathQueue.put(END_OF_PATHS);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        long elapsedMs = System.currentTimeMillis() - startTime;
-        return new IndexResult(repo.getId(), filesScanned, filesIndexed, filesSkipped, documentsUpserted, chunks, elapsedMs);
+    // --- Stages 2 + 3: read/decode, chunk+hash ---
+
+    private void prepareFiles(Path root, Map<String, DocumentRepo.IndexedDocument> existing,
+                              BlockingQueue<Path> pathQueue, BlockingQueue<PreparedFile> fileQueue,
+                              AtomicInteger filesSkipped, AtomicLong readNanos, AtomicLong chunkNanos,
+                              Map<String, ChunkingTally> chunking, AtomicReference<Throwable> stageFailure) {
+        try {
+            while (true) {
+                Path p = pathQueue.take();
+                if (p == END_OF_PATHS) break;
+
+                PreparedFile file = prepareFile(root, p, existing, readNanos, chunkNanos, chunking);
+                if (file == null) {
+                    filesSkipped.incrementAndGet();
+                    continue;
+                }
+                fileQueue.put(file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Throwable e) {
+            // A chunking strategy bug, say; the persist loop rethrows it
+            stageFailure.compareAndSet(null, e);
+        }
+        try {
+            // Always counted, so the persist loop knows this worker is done whatever happened to it
+            fileQueue.put(END_OF_FILES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Reads, hashes and chunks one file. Returns null when the file should be skipped. */
+    private PreparedFile prepareFile(Path root, Path p, Map<String, DocumentRepo.IndexedDocument> existing,
+                                     AtomicLong readNanos, AtomicLong chunkNanos, Map<String, ChunkingTally> chunking) {
+        long readStart = System.nanoTime();
+        SourceText text;
+        try {
+            // Finds the lines and hashes the content in one pass, without decoding the whole file
+            text = SourceText.read(p);
+        } catch (MalformedInputException mie) {
+            // Non-UTF8 or binary-ish file, skip.
+            return null;
+        } catch (Exception ex) {
+            // Skip unreadable files
+            return null;
+        } finally {
+            readNanos.addAndGet(System.nanoTime() - readStart);
+        }
+
+        long chunkStart = System.nanoTime();
+        try {
+            String docHash = text.contentHash();
+
+            String relativePath = root.relativize(p.toAbsolutePath()).toString().replace("\\", "/");
+            DocumentRepo.IndexedDocument previous = existing.get(relativePath);
+            Long previousId = previous != null ? previous.getId() : null;
+            if (previous != null && docHash.equals(previous.getContentHash())) {
+                return new PreparedFile(relativePath, docHash, previousId, null);
+            }
+
+            ChunkingStrategy strategy = chunkingStrategyFor(relativePath);
+            ChunkingTally tally = chunking.computeIfAbsent(strategy.name(), name -> new ChunkingTally());
+            List<PreparedChunk> prepared = new ArrayList<>();
+            strategy.chunk(relativePath, text, c -> {
+                prepared.add(new PreparedChunk(c, Hashing.sha256(c.content())));
+                tally.lines.add(c.endLine() - c.startLine() + 1);
+                tally.chars.add(c.content().length());
+            });
+            tally.files.increment();
+            tally.chunks.add(prepared.size());
+
+            return new PreparedFile(relativePath, docHash, previousId, prepared);
+        } finally {
+            chunkNanos.addAndGet(System.nanoTime() - chunkStart);
+        }
     }
 
-    private boolean shouldIgnoreDir(Path dir) {
-        String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
-        return IGNORE_DIRS.contains(name);
+    private ChunkingStrategy chunkingStrategyFor(String relativePath) {
+        for (ChunkingStrategy strategy : chunkingStrategies) {
+            if (strategy.supports(relativePath)) return strategy;
+        }
+        throw new IllegalStateException("No chunking strategy for " + relativePath);
     }
 
-    private boolean isUnderIgnoredDir(Path root, Path file) {
-        Path rel = root.relativize(file.toAbsolutePath());
-        for (Path part : rel) {
-            if (IGNORE_DIRS.contains(part.toString())) return true;
+    // --- Stage 4: batched persist ---
+
+    private void persistBatch(long repositoryId, List<PreparedFile> batch, PersistCounts counts) {
+        List<Long> modifiedIds = new ArrayList<>();
+        int newFiles = 0;
+        for (PreparedFile file : batch) {
+            if (file.existingDocumentId() != null) {
+                modifiedIds.add(file.existingDocumentId());
+            } else {
+                newFiles++;
+            }
+        }
+
+        if (!modifiedIds.isEmpty()) {
+            // Park the old chunks at negative indexes so the new ones can take their slots
+            chunkRepo.retireChunks(modifiedIds);
+        }
+
+        long[] newIds = bulkIndexRepo.allocateDocumentIds(newFiles);
+        List<BulkIndexRepo.DocumentRow> inserted = new ArrayList<>(newFiles);
+        List<BulkIndexRepo.DocumentRow> updated = new ArrayList<>(modifiedIds.size());
+        List<BulkIndexRepo.ChunkRow> chunkRows = new ArrayList<>();
+        int nextNewId = 0;
+        for (PreparedFile file : batch) {
+            long docId;
+            if (file.existingDocumentId() != null) {
+                docId = file.existingDocumentId();
+                updated.add(new BulkIndexRepo.DocumentRow(docId, repositoryId, file.relativePath(), file.contentHash()));
+            } else {
+                docId = newIds[nextNewId++];
+                inserted.add(new BulkIndexRepo.DocumentRow(docId, repositoryId, file.relativePath(), file.contentHash()));
+            }
+
+            for (PreparedChunk pc : file.chunks()) {
+                Chunker.Chunk c = pc.chunk();
+                chunkRows.add(new BulkIndexRepo.ChunkRow(
+                        repositoryId,
+                        docId,
+                        c.chunkIndex(),
+                        c.startLine(),
+                        c.endLine(),
+                        c.content(),
+                        pc.contentHash()
+                ));
+            }
+        }
+
+        bulkIndexRepo.insertDocuments(inserted);
+        bulkIndexRepo.updateDocumentHashes(updated);
+        bulkIndexRepo.insertChunks(chunkRows);
+
+        if (!modifiedIds.isEmpty()) {
+            counts.chunksReused += chunkRepo.reuseRetiredEmbeddings(modifiedIds);
+            chunkRepo.deleteRetiredChunks(modifiedIds);
         }
-        return false;
+
+        counts.filesIndexed += batch.size();
+        counts.documentsUpserted += batch.size();
+        counts.chunksCreated += chunkRows.size();
     }
 
     private boolean isAllowedFile(Path file) {
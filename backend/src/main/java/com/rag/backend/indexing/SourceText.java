@@ -0,0 +1,233 @@
+package com.rag.backend.indexing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A UTF-8 text file and the byte offsets of its lines, read without materialising it as a string.
+ *
+ * One pass over the bytes finds the lines, validates the UTF-8 and hashes the content, block by block.
+ * Lines and hashes follow {@code Files.readAllLines} joined with "\n": \n, \r\n and \r all end a line,
+ * a final line terminator adds no empty line, and malformed input fails the read. So
+ * {@link #contentHash()} and {@link #lines} give what the hash and chunk text of that joined string
+ * would, and only the requested lines are ever copied onto the heap.
+ */
+public final class SourceText {
+
+    // Smaller files are read into a heap buffer; mapping them costs more than it saves
+    private static final long MAP_THRESHOLD = 64 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final ByteBuffer bytes;
+    private final int[] lineStarts;
+    private final int[] lineEnds;
+    private final int lineCount;
+    private final String contentHash;
+
+    private SourceText(ByteBuffer bytes, int[] lineStarts, int[] lineEnds, int lineCount, String contentHash) {
+        this.bytes = bytes;
+        this.lineStarts = lineStarts;
+        this.lineEnds = lineEnds;
+        this.lineCount = lineCount;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * @throws java.nio.charset.MalformedInputException if the file is not valid UTF-8
+     * @throws IOException if it cannot be read, is 2 GiB or larger, or shrinks while it is read
+     */
+    public static SourceText read(Path path) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= Integer.MAX_VALUE) throw new IOException("File too large to index: " + path);
+            if (size > MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // read until full or end of file
+                }
+                bytes.flip();
+            }
+        }
+        try {
+            return scan(bytes);
+        } catch (InternalError e) {
+            // A mapped file truncated by another process faults on access instead of reading short
+            throw new IOException("File changed while it was read: " + path, e);
+        }
+    }
+
+    /** Same as {@link #read} for content already in memory. */
+    public static SourceText of(ByteBuffer bytes) throws CharacterCodingException {
+        return scan(bytes.slice());
+    }
+
+    private static SourceText scan(ByteBuffer bytes) throws CharacterCodingException {
+        int size = bytes.limit();
+        MessageDigest digest = sha256();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer undecoded = bytes.duplicate();
+        CharBuffer discard = CharBuffer.allocate(BLOCK_SIZE);
+
+        // The final terminator is not part of the joined text
+        int hashedEnd = size;
+        if (size > 0 && bytes.get(size - 1) == '\n') {
+            hashedEnd -= size > 1 && bytes.get(size - 2) == '\r' ? 2 : 1;
+        } else if (size > 0 && bytes.get(size - 1) == '\r') {
+            hashedEnd -= 1;
+        }
+
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int lines = 0;
+        int lineStart = 0;
+        int hashedFrom = 0;
+        int i = 0;
+        for (int blockEnd = Math.min(size, BLOCK_SIZE); ; blockEnd = Math.min(size, blockEnd + BLOCK_SIZE)) {
+            for (; i < blockEnd; i++) {
+                byte b = bytes.get(i);
+                if (b != '\n' && b != '\r') continue;
+
+                if (lines == starts.length) {
+                    starts = Arrays.copyOf(starts, lines * 2);
+                    ends = Arrays.copyOf(ends, lines * 2);
+                }
+                starts[lines] = lineStart;
+                ends[lines] = i;
+                lines++;
+                if (b == '\r') {
+                    // \r and \r\n both hash as \n; a \n terminator already does
+                    update(digest, bytes, hashedFrom, Math.min(i, hashedEnd));
+                    if (i < hashedEnd) digest.update((byte) '\n');
+                    if (i + 1 < size && bytes.get(i + 1) == '\n') i++;
+                    hashedFrom = i + 1;
+                }
+                lineStart = i + 1;
+            }
+            update(digest, bytes, hashedFrom, Math.min(i, hashedEnd));
+            hashedFrom = Math.max(hashedFrom, Math.min(i, hashedEnd));
+
+            undecoded.limit(blockEnd);
+            validate(decoder, undecoded, discard, blockEnd == size);
+            if (blockEnd == size) break;
+        }
+        if (lineStart < size) {
+            if (lines == starts.length) {
+                starts = Arrays.copyOf(starts, lines + 1);
+                ends = Arrays.copyOf(ends, lines + 1);
+            }
+            starts[lines] = lineStart;
+            ends[lines] = size;
+            lines++;
+        }
+        return new SourceText(bytes, starts, ends, lines, Hashing.toHex(digest.digest()));
+    }
+
+    private static void validate(CharsetDecoder decoder, ByteBuffer in, CharBuffer discard, boolean endOfInput)
+            throws CharacterCodingException {
+        while (true) {
+            CoderResult result = decoder.decode(in, discard, endOfInput);
+            if (result.isError()) result.throwException();
+            if (result.isOverflow()) {
+                discard.clear();
+                continue;
+            }
+            // Underflow: an incomplete sequence at the end of a block stays in the buffer for the next one
+            break;
+        }
+        if (endOfInput) {
+            discard.clear();
+            decoder.flush(discard);
+        }
+    }
+
+    private static void update(MessageDigest digest, ByteBuffer bytes, int from, int to) {
+        if (to > from) digest.update(bytes.slice(from, to - from));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public int lineCount() {
+        return lineCount;
+    }
+
+    /** SHA-256 of the lines joined with "\n", as {@link Hashing#sha256} of that string. */
+    public String contentHash() {
+        return contentHash;
+    }
+
+    /** Length of a line in bytes, without its terminator. */
+    public int lineLength(int line) {
+        return lineEnds[line] - lineStarts[line];
+    }
+
+    /** Leading spaces and tabs of a line, or -1 if it is blank. */
+    public int indent(int line) {
+        int start = lineStarts[line];
+        int end = lineEnds[line];
+        for (int i = start; i < end; i++) {
+            byte b = bytes.get(i);
+            if (b != ' ' && b != '\t') return i - start;
+        }
+        return -1;
+    }
+
+    /** The byte at {@code column} of a line; columns count bytes, not characters. */
+    public byte byteAt(int line, int column) {
+        if (column < 0 || column >= lineEnds[line] - lineStarts[line]) {
+            throw new IndexOutOfBoundsException("Column " + column + " of line " + line);
+        }
+        return bytes.get(lineStarts[line] + column);
+    }
+
+    /** 64-bit FNV-1a of a line's bytes, computed in place. */
+    public long lineHash(int line) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = lineStarts[line], end = lineEnds[line]; i < end; i++) {
+            hash = (hash ^ (bytes.get(i) & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** Lines {@code from} to {@code toExclusive} (0-based) joined with "\n". */
+    public String lines(int from, int toExclusive) {
+        if (from < 0 || toExclusive > lineCount || from > toExclusive) {
+            throw new IndexOutOfBoundsException("Lines " + from + ".." + toExclusive + " of " + lineCount);
+        }
+        if (from == toExclusive) return "";
+        int length = toExclusive - from - 1;
+        for (int line = from; line < toExclusive; line++) length += lineEnds[line] - lineStarts[line];
+
+        byte[] utf8 = new byte[length];
+        int at = 0;
+        for (int line = from; line < toExclusive; line++) {
+            if (line > from) utf8[at++] = '\n';
+            int lineLength = lineEnds[line] - lineStarts[line];
+            bytes.get(lineStarts[line], utf8, at, lineLength);
+            at += lineLength;
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
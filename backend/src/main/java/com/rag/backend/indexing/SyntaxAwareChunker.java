@@ -0,0 +1,409 @@
+package com.rag.backend.indexing;
+
+import com.rag.backend.ai.TokenCounter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Cuts Java, Kotlin, Groovy, JS/TS and Markdown files at declaration boundaries and packs the pieces
+ * into chunks of about targetTokens embedding-model tokens, so a chunk holds whole members of one type
+ * or whole sections of one document rather than a fixed number of lines.
+ *
+ * A single pass over each file's bytes marks where a line may start a new chunk, with a level (0 is
+ * strongest):
+ * <ul>
+ *   <li>brace languages: a line outside any method body or initialiser, that is outside every block or
+ *       directly inside class/interface/enum/object/namespace-like blocks, after a blank line or a
+ *       line ending in ';', '{' or '}'. Top level is 0, members are 1, and either is one weaker when the
+ *       previous line is code ending in ';' (imports, fields, statements);</li>
+ *   <li>Markdown: # and ## headings are 0, deeper headings 1, other paragraphs 2; nothing inside
+ *       fenced code blocks.</li>
+ * </ul>
+ * The pieces between marks are packed in order. A chunk of at least a quarter of the target ends at
+ * the next level-0 mark. A chunk that would outgrow the target ends at the strongest mark in its second
+ * half, or at the next one. A single piece over twice the target, such as a very long method, is cut
+ * by lines at blank lines where possible. The scanner skips comments and string literals but is not a
+ * parser: odd code only gives a worse cut, never a lost line.
+ */
+public class SyntaxAwareChunker implements ChunkingStrategy {
+
+    public static final String NAME = "syntax-aware";
+
+    private enum Language { BRACES, MARKDOWN }
+
+    private static final Map<String, Language> LANGUAGES = Map.of(
+            "java", Language.BRACES, "kt", Language.BRACES, "groovy", Language.BRACES,
+            "js", Language.BRACES, "jsx", Language.BRACES, "ts", Language.BRACES, "tsx", Language.BRACES,
+            "md", Language.MARKDOWN);
+
+    // Words that open a block whose direct children are declarations rather than statements
+    private static final byte[][] CONTAINER_WORDS = {
+            bytes("class"), bytes("interface"), bytes("enum"), bytes("record"), bytes("object"),
+            bytes("trait"), bytes("namespace"), bytes("module")};
+
+    private static final int MAX_DEPTH = 63;
+
+    private final TokenCounter tokens;
+    private final int targetTokens;
+
+    public SyntaxAwareChunker(TokenCounter tokens, int targetTokens) {
+        if (targetTokens <= 0) throw new IllegalArgumentException("targetTokens must be > 0");
+        this.tokens = tokens;
+        this.targetTokens = targetTokens;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(String path) {
+        return language(path) != null;
+    }
+
+    @Override
+    public void chunk(String path, SourceText text, Consumer<Chunker.Chunk> sink) {
+        Language language = language(path);
+        if (language == null) throw new IllegalArgumentException("Unsupported file: " + path);
+        if (text.lineCount() == 0) return;
+        byte[] levels = language == Language.BRACES ? braceBoundaries(text) : markdownBoundaries(text);
+        new Packer(text, levels, sink).run();
+    }
+
+    private static Language language(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) return null;
+        return LANGUAGES.get(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    // --- Boundaries: levels[line] is the level of a cut before that line, or -1 ---
+
+    private static byte[] braceBoundaries(SourceText text) {
+        int lines = text.lineCount();
+        byte[] levels = new byte[lines];
+
+        int depth = 0;
+        long containers = 0; // bit d: the block opened at depth d is a container
+        boolean pendingContainer = false;
+        boolean inBlockComment = false;
+        byte multiLine = 0; // '`' in a template literal, '"' in a text block
+        byte previousLast = 0; // last code byte of the previous non-blank line, 0 if it had none
+        boolean previousBlank = true;
+
+        for (int line = 0; line < lines; line++) {
+            int indent = text.indent(line);
+            boolean blank = indent < 0;
+
+            levels[line] = -1;
+            if (line == 0) {
+                levels[line] = 0;
+            } else if (!blank && !inBlockComment && multiLine == 0 && allContainers(containers, depth)
+                    && (previousBlank || previousLast == ';' || previousLast == '{' || previousLast == '}')
+                    && !isCloser(text.byteAt(line, indent))) {
+                int level = Math.min(depth, 1) + (!previousBlank && previousLast == ';' ? 1 : 0);
+                levels[line] = (byte) level;
+            }
+
+            byte last = 0;
+            int length = text.lineLength(line);
+            for (int i = 0; i < length; i++) {
+                byte b = text.byteAt(line, i);
+                if (inBlockComment) {
+                    if (b == '*' && i + 1 < length && text.byteAt(line, i + 1) == '/') {
+                        inBlockComment = false;
+                        i++;
+                    }
+                    continue;
+                }
+                if (multiLine == '`') {
+                    if (b == '\\') i++;
+                    else if (b == '`') multiLine = 0;
+                    continue;
+                }
+                if (multiLine == '"') {
+                    if (isTripleQuote(text, line, i, length)) {
+                        multiLine = 0;
+                        i += 2;
+                        last = '"';
+                    }
+                    continue;
+                }
+                switch (b) {
+                    case '/' -> {
+                        if (i + 1 < length && text.byteAt(line, i + 1) == '/') {
+                            i = length;
+                            continue;
+                        }
+                        if (i + 1 < length && text.byteAt(line, i + 1) == '*') {
+                            inBlockComment = true;
+                            i++;
+                            continue;
+                        }
+                    }
+                    case '"' -> {
+                        if (isTripleQuote(text, line, i, length)) {
+                            multiLine = '"';
+                            i += 2;
+                            continue;
+                        }
+                        i = skipLiteral(text, line, i, length, b);
+                    }
+                    case '\'' -> i = skipLiteral(text, line, i, length, b);
+                    case '`' -> multiLine = '`';
+                    case '{' -> {
+                        if (depth < MAX_DEPTH) {
+                            boolean container = pendingContainer || startsContainer(text, line, i);
+                            containers = container ? containers | (1L << depth) : containers & ~(1L << depth);
+                        }
+                        depth++;
+                        pendingContainer = false;
+                    }
+                    case '}' -> depth = Math.max(0, depth - 1);
+                    case ';' -> pendingContainer = false;
+                    default -> {
+                    }
+                }
+                if (b != ' ' && b != '\t') last = b;
+            }
+            // A declaration header whose '{' is on a later line
+            if (last != 0 && last != '{' && last != ';' && last != '}' && startsContainer(text, line, length)) {
+                pendingContainer = true;
+            }
+
+            if (!blank) {
+                previousBlank = false;
+                previousLast = last;
+            } else {
+                previousBlank = true;
+            }
+        }
+        return levels;
+    }
+
+    private static byte[] markdownBoundaries(SourceText text) {
+        int lines = text.lineCount();
+        byte[] levels = new byte[lines];
+        boolean inFence = false;
+        boolean previousBlank = true;
+        for (int line = 0; line < lines; line++) {
+            int indent = text.indent(line);
+            levels[line] = -1;
+            if (indent >= 0 && indent <= 3 && isFence(text, line, indent)) {
+                if (!inFence && previousBlank) levels[line] = 2;
+                inFence = !inFence;
+            } else if (!inFence && indent >= 0) {
+                int hashes = headingLevel(text, line, indent);
+                if (hashes > 0) levels[line] = (byte) (hashes <= 2 ? 0 : 1);
+                else if (previousBlank) levels[line] = 2;
+            }
+            if (line == 0) levels[line] = 0;
+            previousBlank = indent < 0;
+        }
+        return levels;
+    }
+
+    private static boolean allContainers(long containers, int depth) {
+        if (depth == 0) return true;
+        if (depth > MAX_DEPTH) return false;
+        long mask = (1L << depth) - 1;
+        return (containers & mask) == mask;
+    }
+
+    /** Whether a container word appears as a whole word in the line before {@code end}. */
+    private static boolean startsContainer(SourceText text, int line, int end) {
+        for (byte[] word : CONTAINER_WORDS) {
+            for (int i = 0; i + word.length <= end; i++) {
+                if (matches(text, line, i, word)
+                        && (i == 0 || !isWordByte(text.byteAt(line, i - 1)))
+                        && (i + word.length == text.lineLength(line) || !isWordByte(text.byteAt(line, i + word.length)))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(SourceText text, int line, int at, byte[] word) {
+        for (int k = 0; k < word.length; k++) {
+            if (text.byteAt(line, at + k) != word[k]) return false;
+        }
+        return true;
+    }
+
+    /** Index of the quote closing the literal opened at {@code open}, or the end of the line. */
+    private static int skipLiteral(SourceText text, int line, int open, int length, byte quote) {
+        for (int i = open + 1; i < length; i++) {
+            byte b = text.byteAt(line, i);
+            if (b == '\\') i++;
+            else if (b == quote) return i;
+        }
+        return length;
+    }
+
+    private static boolean isTripleQuote(SourceText text, int line, int i, int length) {
+        return i + 2 < length && text.byteAt(line, i) == '"' && text.byteAt(line, i + 1) == '"'
+                && text.byteAt(line, i + 2) == '"';
+    }
+
+    private static boolean isFence(SourceText text, int line, int indent) {
+        int length = text.lineLength(line);
+        if (indent + 3 > length) return false;
+        byte b = text.byteAt(line, indent);
+        return (b == '`' || b == '~') && text.byteAt(line, indent + 1) == b && text.byteAt(line, indent + 2) == b;
+    }
+
+    /** 1-6 for an ATX heading, else 0. */
+    private static int headingLevel(SourceText text, int line, int indent) {
+        int length = text.lineLength(line);
+        if (indent > 3) return 0;
+        int hashes = 0;
+        while (indent + hashes < length && text.byteAt(line, indent + hashes) == '#') hashes++;
+        if (hashes == 0 || hashes > 6) return 0;
+        int after = indent + hashes;
+        return after == length || text.byteAt(line, after) == ' ' || text.byteAt(line, after) == '\t' ? hashes : 0;
+    }
+
+    private static boolean isCloser(byte b) {
+        return b == '}' || b == ')' || b == ']' || b == '.';
+    }
+
+    private static boolean isWordByte(byte b) {
+        return b == '_' || b == '$' || (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b < 0;
+    }
+
+    private static byte[] bytes(String word) {
+        return word.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // --- Packing ---
+
+    private final class Packer {
+        private final SourceText text;
+        private final byte[] levels;
+        private final Consumer<Chunker.Chunk> sink;
+        private final int lines;
+        private int chunkIndex;
+
+        // The chunk being built, and the marks inside it with the tokens before each
+        private int start;
+        private int tokensSoFar;
+        private int[] markLines = new int[16];
+        private int[] markTokens = new int[16];
+        private int marks;
+
+        Packer(SourceText text, byte[] levels, Consumer<Chunker.Chunk> sink) {
+            this.text = text;
+            this.levels = levels;
+            this.sink = sink;
+            this.lines = text.lineCount();
+        }
+
+        void run() {
+            int pieceStart = 0;
+            while (pieceStart < lines) {
+                int pieceEnd = pieceStart + 1;
+                while (pieceEnd < lines && levels[pieceEnd] < 0) pieceEnd++;
+                add(pieceStart, pieceEnd, levels[pieceStart]);
+                pieceStart = pieceEnd;
+            }
+            if (start < lines) emit(lines);
+        }
+
+        private void add(int from, int to, int level) {
+            int pieceTokens = tokens.count(text.lines(from, to)) + 1;
+            if (tokensSoFar > 0) {
+                if (level == 0 && tokensSoFar >= targetTokens / 4) {
+                    emit(from);
+                } else if (tokensSoFar + pieceTokens > targetTokens) {
+                    int best = strongestMarkInSecondHalf();
+                    if (best >= 0 && levels[markLines[best]] < level) {
+                        cutAtMark(best);
+                    }
+                    if (tokensSoFar > 0 && tokensSoFar + pieceTokens > targetTokens) emit(from);
+                }
+            }
+            if (tokensSoFar == 0 && pieceTokens > 2 * targetTokens) {
+                splitByLines(from, to);
+                return;
+            }
+            if (tokensSoFar > 0) mark(from, tokensSoFar);
+            tokensSoFar += pieceTokens;
+        }
+
+        /** Strongest mark with at least half the target before it, latest on ties; -1 if none. */
+        private int strongestMarkInSecondHalf() {
+            int best = -1;
+            for (int m = 0; m < marks; m++) {
+                if (markTokens[m] < targetTokens / 2) continue;
+                if (best < 0 || levels[markLines[m]] <= levels[markLines[best]]) best = m;
+            }
+            return best;
+        }
+
+        private void cutAtMark(int m) {
+            int line = markLines[m];
+            int before = markTokens[m];
+            emitOnly(line);
+            int kept = 0;
+            for (int k = m + 1; k < marks; k++) {
+                markLines[kept] = markLines[k];
+                markTokens[kept] = markTokens[k] - before;
+                kept++;
+            }
+            marks = kept;
+            tokensSoFar -= before;
+        }
+
+        private void splitByLines(int from, int to) {
+            int pieceStart = from;
+            int pieceTokens = 0;
+            int afterBlank = -1;
+            int tokensBeforeBlank = 0;
+            for (int line = from; line < to; line++) {
+                int lineTokens = tokens.count(text.lines(line, line + 1)) + 1;
+                if (pieceTokens > 0 && pieceTokens + lineTokens > targetTokens) {
+                    boolean atBlank = afterBlank > pieceStart && tokensBeforeBlank >= targetTokens / 2;
+                    int cut = atBlank ? afterBlank : line;
+                    emitOnly(cut);
+                    pieceTokens = atBlank ? pieceTokens - tokensBeforeBlank : 0;
+                    pieceStart = cut;
+                    afterBlank = -1;
+                }
+                pieceTokens += lineTokens;
+                if (text.indent(line) < 0) {
+                    afterBlank = line + 1;
+                    tokensBeforeBlank = pieceTokens;
+                }
+            }
+            emitOnly(to);
+        }
+
+        private void mark(int line, int tokensBefore) {
+            if (marks == markLines.length) {
+                markLines = Arrays.copyOf(markLines, marks * 2);
+                markTokens = Arrays.copyOf(markTokens, marks * 2);
+            }
+            markLines[marks] = line;
+            markTokens[marks] = tokensBefore;
+            marks++;
+        }
+
+        private void emit(int end) {
+            emitOnly(end);
+            tokensSoFar = 0;
+            marks = 0;
+        }
+
+        /** Emits lines start..end and moves start, leaving the token and mark bookkeeping to the caller. */
+        private void emitOnly(int end) {
+            if (end <= start) return;
+            sink.accept(new Chunker.Chunk(chunkIndex++, start + 1, end, text.lines(start, end)));
+            start = end;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.rag.backend.rag;
+
+import com.rag.backend.ai.TokenCounter;
+import com.rag.backend.repo.ChunkVectorRepo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns ranked retrieval hits into the context blocks sent to the model.
+ *
+ * Chunks are cut with overlapping line windows, so the top hits often include neighbouring chunks of
+ * the same file. Those are merged into one contiguous line range, sending every line once. Files are
+ * told apart by document, not path: the same path in two repositories stays two blocks. Blocks whose
+ * lines mostly repeat a better-ranked block (copied code, generated files) are then dropped, in the
+ * spirit of maximal marginal relevance. Finally blocks are taken best-first until the token budget is
+ * spent; the best block is cut to fit if it alone exceeds the budget. Tokens are counted with the chat
+ * model's tokenizer.
+ */
+@Component
+public class ContextAssembler {
+
+    /** A contiguous line range of one file; rank is the best retrieval rank among its chunks (0 = best). */
+    public record ContextBlock(String filePath, int startLine, int endLine, String content, int rank) {}
+
+    private final int maxTokens;
+    private final double duplicateSimilarity;
+    private final TokenCounter tokenCounter;
+
+    public ContextAssembler(
+            @Value("${rag.context.max-tokens:6000}") int maxTokens,
+            @Value("${rag.context.duplicate-similarity:0.8}") double duplicateSimilarity,
+            @Value("${rag.chat.model:gpt-4o}") String chatModel) {
+        this.maxTokens = maxTokens;
+        this.duplicateSimilarity = duplicateSimilarity;
+        this.tokenCounter = TokenCounter.forModel(chatModel);
+    }
+
+    /** Blocks to send, most relevant first. */
+    public List<ContextBlock> assemble(List<ChunkVectorRepo.RetrievedChunk> rankedChunks) {
+        return assemble(rankedChunks, maxTokens);
+    }
+
+    /** As {@link #assemble(List)}, within {@code tokenBudget} if that is below rag.context.max-tokens. */
+    public List<ContextBlock> assemble(List<ChunkVectorRepo.RetrievedChunk> rankedChunks, int tokenBudget) {
+        return pack(dropNearDuplicates(merge(rankedChunks)), Math.min(maxTokens, tokenBudget));
+    }
+
+    /** Tokens of {@code text} for the chat model. */
+    public int countTokens(String text) {
+        return tokenCounter.count(text);
+    }
+
+    // --- Merging
+
+    private static List<ContextBlock> merge(List<ChunkVectorRepo.RetrievedChunk> rankedChunks) {
+        Map<Long, List<ContextBlock>> byDocument = new LinkedHashMap<>();
+        for (int rank = 0; rank < rankedChunks.size(); rank++) {
+            ChunkVectorRepo.RetrievedChunk c = rankedChunks.get(rank);
+            byDocument.computeIfAbsent(c.documentId(), d -> new ArrayList<>()).add(new ContextBlock(
+                    c.filePath(),
+                    c.startLine() != null ? c.startLine() : 0,
+                    c.endLine() != null ? c.endLine() : 0,
+                    c.content(),
+                    rank));
+        }
+
+        List<ContextBlock> merged = new ArrayList<>();
+        for (List<ContextBlock> blocks : byDocument.values()) {
+            blocks.sort(Comparator.comparingInt(ContextBlock::startLine));
+            ContextBlock current = blocks.get(0);
+            for (ContextBlock next : blocks.subList(1, blocks.size())) {
+                ContextBlock joined = join(current, next);
+                if (joined != null) {
+                    current = joined;
+                } else {
+                    merged.add(current);
+                    current = next;
+                }
+            }
+            merged.add(current);
+        }
+        merged.sort(Comparator.comparingInt(ContextBlock::rank));
+        return merged;
+    }
+
+    /**
+     * One block covering both if they overlap or touch, else null. {@code b} starts at or after
+     * {@code a}. Blocks whose content does not match their line range are never joined.
+     */
+    private static ContextBlock join(ContextBlock a, ContextBlock b) {
+        if (b.startLine() > a.endLine() + 1) return null;
+        String[] aLines = a.content().split("\n", -1);
+        String[] bLines = b.content().split("\n", -1);
+        if (!spans(a, aLines) || !spans(b, bLines)) return null;
+
+        int rank = Math.min(a.rank(), b.rank());
+        if (b.endLine() <= a.endLine()) {
+            return new ContextBlock(a.filePath(), a.startLine(), a.endLine(), a.content(), rank);
+        }
+        StringBuilder content = new StringBuilder(a.content());
+        for (int line = a.endLine() + 1; line <= b.endLine(); line++) {
+            content.append('\n').append(bLines[line - b.startLine()]);
+        }
+        return new ContextBlock(a.filePath(), a.startLine(), b.endLine(), content.toString(), rank);
+    }
+
+    private static boolean spans(ContextBlock block, String[] lines) {
+        return block.startLine() > 0 && lines.length == block.endLine() - block.startLine() + 1;
+    }
+
+    // --- Near-duplicates
+
+    private List<ContextBlock> dropNearDuplicates(List<ContextBlock> blocks) {
+        List<ContextBlock> kept = new ArrayList<>();
+        List<Set<String>> keptLines = new ArrayList<>();
+        for (ContextBlock block : blocks) {
+            Set<String> lines = significantLines(block.content());
+            boolean duplicate = false;
+            for (Set<String> other : keptLines) {
+                if (containment(lines, other) >= duplicateSimilarity) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                kept.add(block);
+                keptLines.add(lines);
+            }
+        }
+        return kept;
+    }
+
+    /** Trimmed lines long enough to say something; braces and blank lines match everywhere. */
+    private static Set<String> significantLines(String content) {
+        Set<String> lines = new HashSet<>();
+        for (String line : content.split("\n")) {
+            String t = line.strip();
+            if (t.length() > 3) lines.add(t);
+        }
+        return lines;
+    }
+
+    /** Share of {@code lines} that also appear in {@code other}. */
+    private static double containment(Set<String> lines, Set<String> other) {
+        if (lines.isEmpty()) return 0;
+        int common = 0;
+        for (String line : lines) {
+            if (other.contains(line)) common++;
+        }
+        return common / (double) lines.size();
+    }
+
+    // --- Budget
+
+    private List<ContextBlock> pack(List<ContextBlock> blocks, int budget) {
+        List<ContextBlock> packed = new ArrayList<>();
+        if (budget <= 0) return packed;
+        int remaining = budget;
+        for (ContextBlock block : blocks) {
+            int tokens = tokenCounter.count(block.content());
+            if (tokens <= remaining) {
+                packed.add(block);
+                remaining -= tokens;
+            } else if (packed.isEmpty()) {
+                ContextBlock cut = truncate(block, remaining);
+                if (cut != null) packed.add(cut);
+                break;
+            }
+            // Otherwise a smaller, lower-ranked block may still fit
+        }
+        return packed;
+    }
+
+    /**
+     * The leading lines of {@code block} that fit in {@code tokens}, or null if nothing does. A first
+     * line that is too long on its own (minified code, say) is cut to fit. Lines are counted one at a
+     * time, which slightly overcounts compared to the joined text.
+     */
+    private ContextBlock truncate(ContextBlock block, int tokens) {
+        String[] lines = block.content().split("\n", -1);
+        String first = tokenCounter.truncate(lines[0], tokens);
+        if (first.isEmpty()) return null;
+        StringBuilder content = new StringBuilder(first);
+        int used = tokenCounter.count(first);
+        int count = 1;
+        boolean firstWasCut = first.length() < lines[0].length();
+        while (!firstWasCut && count < lines.length) {
+            int t = tokenCounter.count(lines[count]) + 1;
+            if (used + t > tokens) break;
+            used += t;
+            content.append('\n').append(lines[count++]);
+        }
+        int endLine = spans(block, lines) ? block.startLine() + count - 1 : block.endLine();
+        return new ContextBlock(block.filePath(), block.startLine(), endLine, content.toString(), block.rank());
+    }
+}
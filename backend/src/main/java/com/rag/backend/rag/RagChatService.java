@@ -1,14 +1,21 @@
 package com.rag.backend.rag;
 
-import com.rag.backend.ai.EmbeddingService;
 import com.rag.backend.ai.OpenAIChatClient;
+import com.rag.backend.ai.StreamCancellation;
 import com.rag.backend.dto.Citation;
 import com.rag.backend.dto.RagAnswer;
-import com.rag.backend.entity.ChunkEntity;
+import com.rag.backend.dto.TokenUsage;
 import com.rag.backend.repo.ChunkRepo;
+import com.rag.backend.repo.ChunkVectorRepo;
+import com.rag.backend.retrieval.ChunkRetriever;
+import com.rag.backend.retrieval.QueryEmbeddingCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -19,30 +26,81 @@ public class RagChatService {
         CODE_REVIEW
     }    
 
-    private final EmbeddingService embeddingService;
+    private static final Logger log = LoggerFactory.getLogger(RagChatService.class);
+
+    // Chat formatting around each message, and the primer of the reply, per OpenAI's counting guide
+    private static final int TOKENS_PER_MESSAGE = 3;
+    private static final int REPLY_PRIMER_TOKENS = 3;
+    // Left for the "File:/Lines:" headers around context blocks, which the assembler does not count
+    private static final int BLOCK_HEADER_ALLOWANCE = 200;
+
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final ChunkRetriever chunkRetriever;
     private final ChunkRepo chunkRepo;
     private final OpenAIChatClient chatClient;
+    private final ContextAssembler contextAssembler;
+    private final int maxPromptTokens;
 
     public RagChatService(
-            EmbeddingService embeddingService,
+            QueryEmbeddingCache queryEmbeddingCache,
+            ChunkRetriever chunkRetriever,
             ChunkRepo chunkRepo,
-            OpenAIChatClient chatClient
+            OpenAIChatClient chatClient,
+            ContextAssembler contextAssembler,
+            @Value("${rag.chat.max-prompt-tokens:12000}") int maxPromptTokens
     ) {
-        this.embeddingService = embeddingService;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.chunkRetriever = chunkRetriever;
         this.chunkRepo = chunkRepo;
         this.chatClient = chatClient;
+        this.contextAssembler = contextAssembler;
+        this.maxPromptTokens = maxPromptTokens;
     }
 
     public RagAnswer answerQuestion(String question) {
-        return answerWithMode(question, Mode.DEFAULT);
+        return answerWithMode(question, Mode.DEFAULT, null);
+    }
+
+    public RagAnswer answerQuestion(String question, String repoName) {
+        return answerWithMode(question, Mode.DEFAULT, repoName);
     }
 
     public RagAnswer answerWithMode(String question, Mode mode) {
+        return answerWithMode(question, mode, null);
+    }
+
+    /** Answers from the chunks of {@code repoName} only, or from every repository when it is null. */
+    public RagAnswer answerWithMode(String question, Mode mode, String repoName) {
+        PreparedAnswer prepared = prepare(question, mode, repoName);
+        if (prepared.answer() != null) {
+            return new RagAnswer(prepared.answer(), prepared.citations());
+        }
+        String answer = chatClient.chat(prepared.systemPrompt(), prepared.userPrompt());
+        return new RagAnswer(answer, prepared.citations(), usage(prepared, answer));
+    }
+
+    /**
+     * Everything up to the LLM call: retrieval, citations and prompts. {@code answer} is already set
+     * when no LLM call is needed (nothing was retrieved). promptTokens counts both messages.
+     */
+    public record PreparedAnswer(String systemPrompt, String userPrompt, List<Citation> citations, String answer,
+                                 int promptTokens) {}
 
-        float[] questionEmbedding = embeddingService.embed(question);
+    /**
+     * @throws IllegalArgumentException if the question alone does not fit in rag.chat.max-prompt-tokens
+     */
+    public PreparedAnswer prepare(String question, Mode mode, String repoName) {
+        String systemPrompt = systemPrompt(mode);
+        // Checked before the question is embedded, so an oversized one costs nothing
+        int promptWithoutContext = promptTokens(systemPrompt, userPrompt(question, ""));
+        if (promptWithoutContext + BLOCK_HEADER_ALLOWANCE > maxPromptTokens) {
+            throw new IllegalArgumentException("Question is too long: %d prompt tokens before any context, at most %d allowed"
+                    .formatted(promptWithoutContext, maxPromptTokens - BLOCK_HEADER_ALLOWANCE));
+        }
+
+        float[] questionEmbedding = queryEmbeddingCache.embed(question);
     
-        List<ChunkEntity> chunks =
-                chunkRepo.searchTopK(toPgVectorLiteral(questionEmbedding), 5);
+        List<ChunkVectorRepo.RetrievedChunk> chunks = chunkRetriever.search(question, questionEmbedding, 5, repoName);
     
         // Retrieval guardrail: if no chunks found, return helpful message
         if (chunks.isEmpty()) {
@@ -58,12 +116,58 @@ public class RagChatService {
                     totalChunks, chunksWithEmbedding, chunksMissingEmbedding
             );
             
-            return new RagAnswer(diagnosticMessage, List.of());
+            return new PreparedAnswer(null, null, List.of(), diagnosticMessage, 0);
         }
     
-        String context = buildContext(chunks);
-    
-        String systemPrompt = switch (mode) {
+        // Overlapping hits merged, near-duplicates dropped, packed to what is left of the prompt budget
+        List<ContextAssembler.ContextBlock> blocks = contextAssembler.assemble(chunks,
+                maxPromptTokens - promptWithoutContext - BLOCK_HEADER_ALLOWANCE);
+        String userPrompt = userPrompt(question, buildContext(blocks));
+        int promptTokens = promptTokens(systemPrompt, userPrompt);
+        // Many small blocks can outgrow the header allowance; shed the least relevant, down to none
+        while (promptTokens > maxPromptTokens && !blocks.isEmpty()) {
+            blocks = blocks.subList(0, blocks.size() - 1);
+            userPrompt = userPrompt(question, buildContext(blocks));
+            promptTokens = promptTokens(systemPrompt, userPrompt);
+        }
+        log.debug("Chat prompt: {} tokens, {} context blocks", promptTokens, blocks.size());
+
+        return new PreparedAnswer(systemPrompt, userPrompt, toCitations(blocks), null, promptTokens);
+    }
+
+    /**
+     * Generates the answer for {@code prepared}, passing text to {@code onDelta} as it is produced.
+     * Returns the request's token usage, or null when the answer did not come from the model.
+     */
+    public TokenUsage streamAnswer(PreparedAnswer prepared, Consumer<String> onDelta) {
+        return streamAnswer(prepared, onDelta, new StreamCancellation());
+    }
+
+    /** As {@link #streamAnswer(PreparedAnswer, Consumer)}, stopped early by {@code cancellation}. */
+    public TokenUsage streamAnswer(PreparedAnswer prepared, Consumer<String> onDelta, StreamCancellation cancellation) {
+        if (prepared.answer() != null) {
+            onDelta.accept(prepared.answer());
+            return null;
+        }
+        StringBuilder answer = new StringBuilder();
+        chatClient.chatStream(prepared.systemPrompt(), prepared.userPrompt(), delta -> {
+            answer.append(delta);
+            onDelta.accept(delta);
+        }, cancellation);
+        return usage(prepared, answer.toString());
+    }
+
+    private TokenUsage usage(PreparedAnswer prepared, String answer) {
+        return new TokenUsage(prepared.promptTokens(), contextAssembler.countTokens(answer));
+    }
+
+    private int promptTokens(String systemPrompt, String userPrompt) {
+        return contextAssembler.countTokens(systemPrompt) + contextAssembler.countTokens(userPrompt)
+                + 2 * TOKENS_PER_MESSAGE + REPLY_PRIMER_TOKENS;
+    }
+
+    private static String systemPrompt(Mode mode) {
+        return switch (mode) {
             case EXPLAIN_ARCHITECTURE ->
                     """
                     You are a senior software architect.
@@ -87,33 +191,31 @@ public class RagChatService {
                     You MUST cite file paths and line ranges in your answer.
                     """;
         };
-    
-        String userPrompt = """
+    }
+
+    private static String userPrompt(String question, String context) {
+        return """
                 QUESTION:
                 %s
     
                 CONTEXT:
                 %s
                 """.formatted(question, context);
-    
-        String answer = chatClient.chat(systemPrompt, userPrompt);
-    
-        return new RagAnswer(answer, toCitations(chunks));
     }
 
-    private List<Citation> toCitations(List<ChunkEntity> chunks) {
-        return chunks.stream()
+    private List<Citation> toCitations(List<ContextAssembler.ContextBlock> blocks) {
+        return blocks.stream()
                 .map(c -> new Citation(
-                        c.getDocument().getFilePath(),
-                        c.getStartLine(),
-                        c.getEndLine(),
-                        c.getContent()
+                        c.filePath(),
+                        c.startLine(),
+                        c.endLine(),
+                        c.content()
                 ))
                 .toList();
     }
     
-    private String buildContext(List<ChunkEntity> chunks) {
-        return chunks.stream()
+    private String buildContext(List<ContextAssembler.ContextBlock> blocks) {
+        return blocks.stream()
                 .map(c ->
                         """
                         ---
@@ -122,22 +224,12 @@ public class RagChatService {
                         Snippet:
                         %s
                         """.formatted(
-                                c.getDocument().getFilePath(),
-                                c.getStartLine(),
-                                c.getEndLine(),
-                                c.getContent()
+                                c.filePath(),
+                                c.startLine(),
+                                c.endLine(),
+                                c.content()
                         )
                 )
                 .collect(Collectors.joining("\n"));
     }
-
-    private String toPgVectorLiteral(float[] v) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < v.length; i++) {
-            if (i > 0) sb.append(",");
-            sb.append(v[i]);
-        }
-        sb.append("]");
-        return sb.toString();
-    }
 }
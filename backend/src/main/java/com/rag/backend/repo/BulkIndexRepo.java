@@ -0,0 +1,140 @@
+package com.rag.backend.repo;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Bulk write path for documents and chunks used by indexing.
+ *
+ * The entities use IDENTITY ids, which makes Hibernate insert one row per round trip. Here ids are
+ * allocated from the tables' sequences in one query and rows are sent as JDBC batches; with
+ * reWriteBatchedInserts enabled the driver folds each batch into multi-row INSERT statements.
+ */
+@Repository
+public class BulkIndexRepo {
+
+    private static final int JDBC_BATCH_SIZE = 1000;
+
+    public record DocumentRow(long id, long repositoryId, String filePath, String contentHash) {}
+
+    public record ChunkRow(
+            long repositoryId,
+            long documentId,
+            int chunkIndex,
+            int startLine,
+            int endLine,
+            String content,
+            String contentHash
+    ) {}
+
+    private final JdbcTemplate jdbc;
+
+    public BulkIndexRepo(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Reserves {@code count} document ids in a single round trip. */
+    public long[] allocateDocumentIds(int count) {
+        return allocateIds("documents_id_seq", count);
+    }
+
+    public void insertDocuments(List<DocumentRow> rows) {
+        if (rows.isEmpty()) return;
+        jdbc.batchUpdate(
+                "INSERT INTO documents (id, repository_id, file_path, content_hash) VALUES (?, ?, ?, ?)",
+                rows, JDBC_BATCH_SIZE,
+                (ps, r) -> {
+                    ps.setLong(1, r.id());
+                    ps.setLong(2, r.repositoryId());
+                    ps.setString(3, r.filePath());
+                    ps.setString(4, r.contentHash());
+                });
+    }
+
+    public void updateDocumentHashes(List<DocumentRow> rows) {
+        if (rows.isEmpty()) return;
+        jdbc.batchUpdate(
+                "UPDATE documents SET content_hash = ? WHERE id = ?",
+                rows, JDBC_BATCH_SIZE,
+                (ps, r) -> {
+                    ps.setString(1, r.contentHash());
+                    ps.setLong(2, r.id());
+                });
+    }
+
+    public void insertChunks(List<ChunkRow> rows) {
+        if (rows.isEmpty()) return;
+        jdbc.batchUpdate("""
+                INSERT INTO chunks (repository_id, document_id, chunk_index, start_line, end_line, content, content_hash)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                """,
+                rows, JDBC_BATCH_SIZE,
+                (ps, r) -> {
+                    ps.setLong(1, r.repositoryId());
+                    ps.setLong(2, r.documentId());
+                    ps.setInt(3, r.chunkIndex());
+                    ps.setInt(4, r.startLine());
+                    ps.setInt(5, r.endLine());
+                    ps.setString(6, r.content());
+                    ps.setString(7, r.contentHash());
+                });
+    }
+
+    /** The partial HNSW index that serves repository-scoped searches of {@code repositoryId}. */
+    public static String repositoryVectorIndexName(long repositoryId) {
+        return "idx_chunks_embedding_repo_" + repositoryId;
+    }
+
+    /**
+     * Makes sure the repository has its partial HNSW index, so repository-scoped searches never fall
+     * back to post-filtering the global index. A check only when the index exists; otherwise it is
+     * built with CREATE INDEX CONCURRENTLY, which does not block writes to chunks but cannot run inside
+     * a transaction, so call this outside one. An invalid index left by an interrupted build is
+     * dropped and rebuilt.
+     */
+    public void ensureRepositoryVectorIndex(long repositoryId) {
+        String name = repositoryVectorIndexName(repositoryId);
+        Boolean valid = jdbc.queryForObject(
+                "SELECT (SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(CAST(? AS text)))",
+                Boolean.class, name);
+        if (Boolean.TRUE.equals(valid)) return;
+        if (valid != null) jdbc.execute("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+        jdbc.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + name
+                + " ON chunks USING hnsw (embedding vector_l2_ops) WITH (m = 16, ef_construction = 64)"
+                + " WHERE repository_id = " + repositoryId);
+    }
+
+    /**
+     * Drops the partial HNSW indexes of older repositories with the same name as {@code repositoryId}.
+     * A full rebuild indexes into a new repository, and repository-scoped searches only ever resolve
+     * a name to the newest one, so the older indexes would only slow down writes to chunks. Like
+     * {@link #ensureRepositoryVectorIndex}, call this outside a transaction. Returns how many were
+     * dropped.
+     */
+    public int dropSupersededRepositoryVectorIndexes(long repositoryId) {
+        List<Long> superseded = jdbc.queryForList("""
+                SELECT o.id
+                FROM repositories o
+                JOIN repositories r ON r.name = o.name
+                WHERE r.id = ?
+                AND o.id < r.id
+                AND to_regclass('idx_chunks_embedding_repo_' || o.id) IS NOT NULL
+                """, Long.class, repositoryId);
+        for (long id : superseded) {
+            jdbc.execute("DROP INDEX CONCURRENTLY IF EXISTS " + repositoryVectorIndexName(id));
+        }
+        return superseded.size();
+    }
+
+    private long[] allocateIds(String sequence, int count) {
+        if (count <= 0) return new long[0];
+        List<Long> ids = jdbc.queryForList(
+                "SELECT nextval(CAST(? AS regclass)) FROM generate_series(1, ?)",
+                Long.class, sequence, count);
+        long[] out = new long[ids.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ids.get(i);
+        return out;
+    }
+}
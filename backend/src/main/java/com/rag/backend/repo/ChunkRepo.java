@@ -10,39 +10,80 @@ import java.util.List;
 
 public interface ChunkRepo extends JpaRepository<ChunkEntity, Long> {
 
+    // --- Incremental re-indexing: old chunks of a modified document are "retired" to negative
+    // chunk indexes, the new chunks are inserted, embeddings are carried over by content hash,
+    // and the retired rows are deleted.
+
     @Modifying
-    @Query(value = "UPDATE chunks SET embedding = CAST(:embedding AS vector) WHERE id = :id", nativeQuery = true)
-    int updateEmbedding(@Param("id") Long id, @Param("embedding") String embedding);
+    @Query(value = "UPDATE chunks SET chunk_index = -1 - chunk_index WHERE document_id IN (:documentIds) AND chunk_index >= 0", nativeQuery = true)
+    int retireChunks(@Param("documentIds") List<Long> documentIds);
 
+    @Modifying
     @Query(value = """
-        SELECT *
-        FROM chunks
-        WHERE embedding IS NOT NULL
-        ORDER BY embedding <-> CAST(:queryEmbedding AS vector), id
-        LIMIT :k
+        UPDATE chunks n
+        SET embedding = o.embedding
+        FROM chunks o
+        WHERE n.document_id IN (:documentIds)
+        AND n.chunk_index >= 0
+        AND n.embedding IS NULL
+        AND o.document_id = n.document_id
+        AND o.chunk_index < 0
+        AND o.content_hash = n.content_hash
+        AND o.embedding IS NOT NULL
+        """, nativeQuery = true)
+    int reuseRetiredEmbeddings(@Param("documentIds") List<Long> documentIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM chunks WHERE document_id IN (:documentIds) AND chunk_index < 0", nativeQuery = true)
+    int deleteRetiredChunks(@Param("documentIds") List<Long> documentIds);
+
+    /** Just what the embedding backfill needs, without hydrating managed entities. */
+    interface ChunkText {
+        Long getId();
+        String getContent();
+        String getContentHash();
+    }
+
+    /** Chunks, with or without an embedding, whose content has no cached vector for the model. */
+    @Query(value = """
+        SELECT c.id, c.content, c.content_hash AS "contentHash"
+        FROM chunks c
+        WHERE c.id > :afterId
+        AND NOT EXISTS (
+            SELECT 1 FROM embedding_cache e
+            WHERE e.content_hash = c.content_hash
+            AND e.model = :model
+            AND e.dimensions = :dimensions
+        )
+        ORDER BY c.id
+        LIMIT :limit
         """, nativeQuery = true)
-    List<ChunkEntity> searchTopK(@Param("queryEmbedding") String queryEmbedding, @Param("k") int k);
+    List<ChunkText> findUncachedChunkTextsAfter(@Param("afterId") long afterId, @Param("limit") int limit,
+                                                @Param("model") String model, @Param("dimensions") int dimensions);
 
     @Query(value = """
-        SELECT *
+        SELECT id, content, content_hash AS "contentHash"
         FROM chunks
         WHERE embedding IS NULL
+        AND id > :afterId
         ORDER BY id
         LIMIT :limit
         """, nativeQuery = true)
-    List<ChunkEntity> findTopMissingEmbeddings(@Param("limit") int limit);
+    List<ChunkText> findMissingEmbeddingsAfter(@Param("afterId") long afterId, @Param("limit") int limit);
 
     @Query(value = """
-        SELECT c.*
+        SELECT c.id, c.content, c.content_hash AS "contentHash"
         FROM chunks c
         INNER JOIN documents d ON c.document_id = d.id
         INNER JOIN repositories r ON d.repository_id = r.id
         WHERE r.name = :repoName
         AND c.embedding IS NULL
+        AND c.id > :afterId
         ORDER BY c.id
         LIMIT :limit
         """, nativeQuery = true)
-    List<ChunkEntity> findTopMissingEmbeddingsForRepo(@Param("repoName") String repoName, @Param("limit") int limit);
+    List<ChunkText> findMissingEmbeddingsForRepoAfter(
+            @Param("repoName") String repoName, @Param("afterId") long afterId, @Param("limit") int limit);
 
     @Query(value = """
         SELECT COUNT(*)
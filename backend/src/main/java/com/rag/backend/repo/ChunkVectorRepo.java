@@ -0,0 +1,279 @@
+package com.rag.backend.repo;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads and writes chunk embeddings without the pgvector text format.
+ *
+ * Query vectors are bound as binary real[] parameters (see {@link PgVector#PARAMETER}). Backfilled
+ * vectors are streamed with binary COPY into a session temp table, then applied to chunks and the
+ * embedding cache with one UPDATE and one INSERT per batch. The lexical searches used by hybrid
+ * retrieval live here too, since they also report each hit's vector distance, and so do the reads
+ * that load and hydrate an in-process {@link com.rag.backend.retrieval.VectorIndex}.
+ */
+@Repository
+public class ChunkVectorRepo {
+
+    /**
+     * A retrieval hit with its document, read in the same query as the vector search. The file path is
+     * for display; the same path can exist in several repositories, so hits are told apart by documentId.
+     */
+    public record RetrievedChunk(
+            long id,
+            long documentId,
+            String filePath,
+            Integer startLine,
+            Integer endLine,
+            String content,
+            // L2 distance to the query; null for lexical hits on chunks that have no embedding yet
+            Double distance
+    ) {}
+
+    /** A freshly computed embedding for one chunk; contentHash may be null. */
+    public record EmbeddingRow(long chunkId, String contentHash, float[] embedding) {}
+
+    /** A stored embedding with the repository of its chunk, as loaded into an in-process index. */
+    public record StoredEmbedding(long chunkId, long repositoryId, long version, float[] embedding) {}
+
+    /** Embedded chunk ids in ascending order, each with the version of its embedding (chunks.embedding_version). */
+    public record EmbeddingVersions(long[] chunkIds, long[] versions) {}
+
+    private static final RowMapper<RetrievedChunk> RETRIEVED_CHUNK = (rs, i) -> new RetrievedChunk(
+            rs.getLong("id"),
+            rs.getLong("document_id"),
+            rs.getString("file_path"),
+            (Integer) rs.getObject("start_line"),
+            (Integer) rs.getObject("end_line"),
+            rs.getString("content"),
+            (Double) rs.getObject("distance"));
+
+    // The inner query orders by the bare distance so the HNSW index is used; documents are joined to
+    // the k hits only. Call through ChunkRetriever, which sets hnsw.ef_search for the query.
+    private static final String SEARCH_TOP_K = """
+            SELECT c.id, c.document_id, d.file_path, c.start_line, c.end_line, c.content, c.distance
+            FROM (
+                SELECT id, document_id, start_line, end_line, content,
+                       embedding <-> %s AS distance
+                FROM chunks
+                WHERE embedding IS NOT NULL
+                ORDER BY distance
+                LIMIT ?
+            ) c
+            INNER JOIN documents d ON d.id = c.document_id
+            ORDER BY c.distance
+            """.formatted(PgVector.PARAMETER);
+
+    // Served by the repository's partial index idx_chunks_embedding_repo_{id}. The planner only
+    // matches it when repository_id is planned as a constant, hence force_custom_plan in ChunkRetriever.
+    private static final String SEARCH_TOP_K_IN_REPOSITORY = """
+            SELECT c.id, c.document_id, d.file_path, c.start_line, c.end_line, c.content, c.distance
+            FROM (
+                SELECT id, document_id, start_line, end_line, content,
+                       embedding <-> %s AS distance
+                FROM chunks
+                WHERE repository_id = ?
+                AND embedding IS NOT NULL
+                ORDER BY distance
+                LIMIT ?
+            ) c
+            INNER JOIN documents d ON d.id = c.document_id
+            ORDER BY c.distance
+            """.formatted(PgVector.PARAMETER);
+
+    // Lexical leg of hybrid retrieval over the content_tsv GIN index. The distance is computed for the
+    // few returned rows only, so fused results can still report it.
+    private static final String SEARCH_LEXICAL_TEMPLATE = """
+            SELECT c.id, c.document_id, d.file_path, c.start_line, c.end_line, c.content, c.distance
+            FROM (
+                SELECT id, document_id, start_line, end_line, content,
+                       embedding <-> %s AS distance,
+                       ts_rank_cd(content_tsv, query) AS rank
+                FROM chunks, to_tsquery('simple', ?) query
+                WHERE content_tsv @@ query
+                %s
+                ORDER BY rank DESC, id
+                LIMIT ?
+            ) c
+            INNER JOIN documents d ON d.id = c.document_id
+            ORDER BY c.rank DESC, c.id
+            """;
+    private static final String SEARCH_LEXICAL = SEARCH_LEXICAL_TEMPLATE.formatted(PgVector.PARAMETER, "");
+    private static final String SEARCH_LEXICAL_IN_REPOSITORY =
+            SEARCH_LEXICAL_TEMPLATE.formatted(PgVector.PARAMETER, "AND repository_id = ?");
+
+    private static final String FIND_RETRIEVED_CHUNKS = """
+            SELECT c.id, c.document_id, d.file_path, c.start_line, c.end_line, c.content, CAST(NULL AS float8) AS distance
+            FROM chunks c
+            INNER JOIN documents d ON d.id = c.document_id
+            WHERE c.id = ANY(?)
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    public ChunkVectorRepo(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public List<RetrievedChunk> searchTopK(float[] queryEmbedding, int k) {
+        return jdbc.query(SEARCH_TOP_K, RETRIEVED_CHUNK, queryEmbedding, k);
+    }
+
+    public List<RetrievedChunk> searchTopKInRepository(long repositoryId, float[] queryEmbedding, int k) {
+        return jdbc.query(SEARCH_TOP_K_IN_REPOSITORY, RETRIEVED_CHUNK, queryEmbedding, repositoryId, k);
+    }
+
+    /** Chunks matching {@code tsQuery} (a to_tsquery('simple', ...) expression), best ts_rank_cd first. */
+    public List<RetrievedChunk> searchLexical(String tsQuery, float[] queryEmbedding, int limit) {
+        return jdbc.query(SEARCH_LEXICAL, RETRIEVED_CHUNK,
+                queryEmbedding, tsQuery, limit);
+    }
+
+    public List<RetrievedChunk> searchLexicalInRepository(long repositoryId, String tsQuery, float[] queryEmbedding, int limit) {
+        return jdbc.query(SEARCH_LEXICAL_IN_REPOSITORY, RETRIEVED_CHUNK,
+                queryEmbedding, tsQuery, repositoryId, limit);
+    }
+
+    /**
+     * Hydrates hits found by an in-process index, in no particular order and without distances. Chunks
+     * deleted since they were indexed are simply missing.
+     */
+    public List<RetrievedChunk> findRetrievedChunks(long[] chunkIds) {
+        if (chunkIds.length == 0) return List.of();
+        return jdbc.query(FIND_RETRIEVED_CHUNKS, RETRIEVED_CHUNK, (Object) chunkIds);
+    }
+
+    /** Ids of all chunks that have an embedding, ascending. */
+    public EmbeddingVersions findEmbeddingVersions() {
+        long[][] columns = {new long[1024], new long[1024]};
+        int[] count = {0};
+        jdbc.query("SELECT id, embedding_version FROM chunks WHERE embedding IS NOT NULL ORDER BY id", (RowCallbackHandler) rs -> {
+            if (count[0] == columns[0].length) {
+                columns[0] = Arrays.copyOf(columns[0], count[0] * 2);
+                columns[1] = Arrays.copyOf(columns[1], count[0] * 2);
+            }
+            columns[0][count[0]] = rs.getLong(1);
+            columns[1][count[0]++] = rs.getLong(2);
+        });
+        return new EmbeddingVersions(Arrays.copyOf(columns[0], count[0]), Arrays.copyOf(columns[1], count[0]));
+    }
+
+    /** Embeddings of the given chunks, read in pgvector's binary format; chunks without one are skipped. */
+    public List<StoredEmbedding> findEmbeddings(long[] chunkIds) {
+        if (chunkIds.length == 0) return List.of();
+        return jdbc.query("""
+                SELECT id, repository_id, embedding_version, vector_send(embedding) AS embedding
+                FROM chunks
+                WHERE id = ANY(?)
+                AND embedding IS NOT NULL
+                """,
+                (rs, i) -> new StoredEmbedding(rs.getLong("id"), rs.getLong("repository_id"),
+                        rs.getLong("embedding_version"), PgVector.read(rs.getBytes("embedding"))),
+                (Object) chunkIds);
+    }
+
+    /**
+     * Stores embeddings on their chunks and adds the hashed ones to the embedding cache. Must run
+     * inside a transaction. Returns the number of chunks updated.
+     */
+    public int writeEmbeddings(List<EmbeddingRow> rows, String model, int dimensions) {
+        if (rows.isEmpty()) return 0;
+
+        jdbc.execute("""
+                CREATE TEMP TABLE IF NOT EXISTS embedding_staging (
+                  chunk_id     BIGINT NOT NULL,
+                  content_hash TEXT,
+                  embedding    VECTOR NOT NULL
+                ) ON COMMIT DELETE ROWS
+                """);
+        jdbc.execute("TRUNCATE embedding_staging");
+        jdbc.execute((ConnectionCallback<Long>) con -> copyIn(con.unwrap(PGConnection.class), rows));
+
+        int updated = jdbc.update("""
+                UPDATE chunks c
+                SET embedding = s.embedding
+                FROM embedding_staging s
+                WHERE c.id = s.chunk_id
+                """);
+        jdbc.update("""
+                INSERT INTO embedding_cache (content_hash, model, dimensions, embedding)
+                SELECT DISTINCT ON (content_hash) content_hash, ?, ?, embedding
+                FROM embedding_staging
+                WHERE content_hash IS NOT NULL
+                ON CONFLICT DO NOTHING
+                """, model, dimensions);
+        return updated;
+    }
+
+    /** Streams rows into embedding_staging in COPY's binary format. */
+    private static long copyIn(PGConnection pg, List<EmbeddingRow> rows) throws SQLException {
+        CopyIn copy = pg.getCopyAPI().copyIn("COPY embedding_staging (chunk_id, content_hash, embedding) FROM STDIN (FORMAT binary)");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CopySink(copy), 1 << 16));
+            // Header: signature, flags, header extension length
+            out.writeBytes("PGCOPY\n");
+            out.write(0xFF);
+            out.writeBytes("\r\n");
+            out.write(0);
+            out.writeInt(0);
+            out.writeInt(0);
+            for (EmbeddingRow r : rows) {
+                out.writeShort(3);
+                out.writeInt(Long.BYTES);
+                out.writeLong(r.chunkId());
+                if (r.contentHash() == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] hash = r.contentHash().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(hash.length);
+                    out.write(hash);
+                }
+                out.writeInt(PgVector.binaryLength(r.embedding()));
+                PgVector.write(out, r.embedding());
+            }
+            out.writeShort(-1);
+            out.flush();
+            return copy.endCopy();
+        } catch (IOException e) {
+            throw new SQLException("Failed to stream embeddings through COPY", e);
+        } finally {
+            if (copy.isActive()) copy.cancelCopy();
+        }
+    }
+
+    private static final class CopySink extends OutputStream {
+        private final CopyIn copy;
+
+        CopySink(CopyIn copy) {
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                copy.writeToCopy(b, off, len);
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -2,5 +2,24 @@ package com.rag.backend.repo;
 
 import com.rag.backend.entity.DocumentEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface DocumentRepo extends JpaRepository<DocumentEntity, Long> {}
+import java.util.List;
+
+public interface DocumentRepo extends JpaRepository<DocumentEntity, Long> {
+
+    /** Lightweight view of an already indexed document, used for incremental re-indexing. */
+    interface IndexedDocument {
+        Long getId();
+        String getFilePath();
+        String getContentHash();
+    }
+
+    @Query("""
+        SELECT d.id AS id, d.filePath AS filePath, d.contentHash AS contentHash
+        FROM DocumentEntity d
+        WHERE d.repository.id = :repositoryId
+        """)
+    List<IndexedDocument> findIndexedDocuments(@Param("repositoryId") Long repositoryId);
+}
@@ -0,0 +1,62 @@
+package com.rag.backend.repo;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Persistent embedding cache keyed by (content hash, model, dimensions).
+ *
+ * Hits are copied into chunks.embedding inside the database, so cached vectors never travel
+ * through the JVM. New entries are written by {@link ChunkVectorRepo#writeEmbeddings}.
+ */
+@Repository
+public class EmbeddingCacheRepo {
+
+    private final JdbcTemplate jdbc;
+
+    public EmbeddingCacheRepo(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Sets every chunk whose content is cached to the cached vector, replacing any other it has. */
+    public int applyToAllChunks(String model, int dimensions) {
+        return jdbc.update("""
+                UPDATE chunks c
+                SET embedding = e.embedding
+                FROM embedding_cache e
+                WHERE e.content_hash = c.content_hash
+                AND e.model = ?
+                AND e.dimensions = ?
+                AND c.embedding IS DISTINCT FROM e.embedding
+                """, model, dimensions);
+    }
+
+    /** Fills every chunk that is missing an embedding but whose content is cached. */
+    public int applyToMissingChunks(String model, int dimensions) {
+        return jdbc.update("""
+                UPDATE chunks c
+                SET embedding = e.embedding
+                FROM embedding_cache e
+                WHERE c.embedding IS NULL
+                AND e.content_hash = c.content_hash
+                AND e.model = ?
+                AND e.dimensions = ?
+                """, model, dimensions);
+    }
+
+    /** Same as {@link #applyToMissingChunks}, limited to one repository. */
+    public int applyToMissingChunksForRepo(String repoName, String model, int dimensions) {
+        return jdbc.update("""
+                UPDATE chunks c
+                SET embedding = e.embedding
+                FROM embedding_cache e, documents d, repositories r
+                WHERE c.embedding IS NULL
+                AND d.id = c.document_id
+                AND r.id = d.repository_id
+                AND r.name = ?
+                AND e.content_hash = c.content_hash
+                AND e.model = ?
+                AND e.dimensions = ?
+                """, repoName, model, dimensions);
+    }
+}
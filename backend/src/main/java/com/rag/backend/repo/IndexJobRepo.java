@@ -0,0 +1,113 @@
+package com.rag.backend.repo;
+
+import com.rag.backend.indexing.IndexJob;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/** Checkpoints of background indexing jobs in index_jobs. */
+@Repository
+public class IndexJobRepo {
+
+    private static final String COUNTER_COLUMNS = Arrays.stream(IndexJob.Counter.values())
+            .map(IndexJob.Counter::column)
+            .collect(Collectors.joining(", "));
+
+    private static final String SELECT = """
+            SELECT id, repo_name, root_path, incremental, status, phase, repository_id, %s,
+                   error, embedding_error, created_at, started_at, embedding_started_at, finished_at
+            FROM index_jobs
+            """.formatted(COUNTER_COLUMNS);
+
+    private static final String UPDATE = """
+            UPDATE index_jobs
+            SET status = ?, phase = ?, repository_id = ?, %s,
+                error = ?, embedding_error = ?, started_at = ?, embedding_started_at = ?, finished_at = ?,
+                updated_at = NOW()
+            WHERE id = ?
+            """.formatted(Arrays.stream(IndexJob.Counter.values())
+                    .map(c -> c.column() + " = ?")
+                    .collect(Collectors.joining(", ")));
+
+    private static final RowMapper<IndexJob> INDEX_JOB = (rs, i) -> {
+        IndexJob job = new IndexJob(
+                rs.getLong("id"),
+                rs.getString("repo_name"),
+                rs.getString("root_path"),
+                rs.getBoolean("incremental"),
+                rs.getTimestamp("created_at").toInstant());
+        job.setStatus(IndexJob.Status.valueOf(rs.getString("status")));
+        job.setPhase(IndexJob.Phase.valueOf(rs.getString("phase")));
+        job.setRepositoryId((Long) rs.getObject("repository_id"));
+        for (IndexJob.Counter c : IndexJob.Counter.values()) {
+            job.set(c, rs.getInt(c.column()));
+        }
+        job.setError(rs.getString("error"));
+        job.setEmbeddingError(rs.getString("embedding_error"));
+        job.setStartedAt(toInstant(rs.getTimestamp("started_at")));
+        job.setEmbeddingStartedAt(toInstant(rs.getTimestamp("embedding_started_at")));
+        job.setFinishedAt(toInstant(rs.getTimestamp("finished_at")));
+        return job;
+    };
+
+    private final JdbcTemplate jdbc;
+
+    public IndexJobRepo(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Records a new QUEUED job and returns it. */
+    public IndexJob create(String repoName, String rootPath, boolean incremental) {
+        return jdbc.queryForObject("""
+                INSERT INTO index_jobs (repo_name, root_path, incremental, status, phase)
+                VALUES (?, ?, ?, ?, ?)
+                RETURNING id, created_at
+                """,
+                (rs, i) -> new IndexJob(rs.getLong("id"), repoName, rootPath, incremental,
+                        rs.getTimestamp("created_at").toInstant()),
+                repoName, rootPath, incremental, IndexJob.Status.QUEUED.name(), IndexJob.Phase.INDEXING.name());
+    }
+
+    public Optional<IndexJob> findById(long id) {
+        return jdbc.query(SELECT + "WHERE id = ?", INDEX_JOB, id).stream().findFirst();
+    }
+
+    /** QUEUED and RUNNING jobs, oldest first. */
+    public List<IndexJob> findUnfinished() {
+        return jdbc.query(SELECT + "WHERE status IN ('QUEUED', 'RUNNING') ORDER BY id", INDEX_JOB);
+    }
+
+    /** Writes the job's current state. */
+    public void save(IndexJob job) {
+        List<Object> args = new ArrayList<>();
+        args.add(job.status().name());
+        args.add(job.phase().name());
+        args.add(job.repositoryId());
+        for (IndexJob.Counter c : IndexJob.Counter.values()) {
+            args.add(job.count(c));
+        }
+        args.add(job.error());
+        args.add(job.embeddingError());
+        args.add(toTimestamp(job.startedAt()));
+        args.add(toTimestamp(job.embeddingStartedAt()));
+        args.add(toTimestamp(job.finishedAt()));
+        args.add(job.id());
+        jdbc.update(UPDATE, args.toArray());
+    }
+
+    private static Instant toInstant(Timestamp ts) {
+        return ts == null ? null : ts.toInstant();
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant == null ? null : Timestamp.from(instant);
+    }
+}
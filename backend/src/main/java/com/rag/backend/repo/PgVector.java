@@ -0,0 +1,49 @@
+package com.rag.backend.repo;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * pgvector's binary wire format (vector_send / vector_recv): an int16 dimension count, an unused
+ * int16, then the components as big-endian float4. Used for binary COPY and for reading
+ * {@code vector_send(embedding)} results, so vectors never go through their decimal text form.
+ *
+ * Query parameters don't need this: a {@code float[]} bound with setObject goes over the wire as a
+ * binary real[], which {@code CAST(... AS vector)} converts server side.
+ */
+public final class PgVector {
+
+    /** SQL for a query vector bound as a float[] parameter. */
+    public static final String PARAMETER = "CAST(CAST(? AS real[]) AS vector)";
+
+    private static final int HEADER_BYTES = 4;
+
+    private PgVector() {}
+
+    /** Size of {@code v} in the binary format, i.e. the field length in a binary COPY row. */
+    public static int binaryLength(float[] v) {
+        return HEADER_BYTES + Float.BYTES * v.length;
+    }
+
+    public static void write(DataOutput out, float[] v) throws IOException {
+        if (v.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("pgvector supports at most " + Short.MAX_VALUE + " dimensions, got " + v.length);
+        }
+        out.writeShort(v.length);
+        out.writeShort(0);
+        for (float f : v) out.writeFloat(f);
+    }
+
+    public static float[] read(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int dims = Short.toUnsignedInt(buf.getShort());
+        buf.getShort(); // unused
+        if (bytes.length != HEADER_BYTES + Float.BYTES * dims) {
+            throw new IllegalArgumentException("Malformed vector: " + dims + " dimensions in " + bytes.length + " bytes");
+        }
+        float[] v = new float[dims];
+        buf.asFloatBuffer().get(v);
+        return v;
+    }
+}
@@ -3,4 +3,9 @@ package com.rag.backend.repo;
 import com.rag.backend.entity.RepositoryEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 
-public interface RepositoryRepo extends JpaRepository<RepositoryEntity, Long> {}
+import java.util.Optional;
+
+public interface RepositoryRepo extends JpaRepository<RepositoryEntity, Long> {
+
+    Optional<RepositoryEntity> findFirstByNameOrderByIdDesc(String name);
+}
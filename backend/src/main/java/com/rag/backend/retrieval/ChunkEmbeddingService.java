@@ -1,89 +1,224 @@
 package com.rag.backend.retrieval;
 
 import com.rag.backend.ai.EmbeddingService;
-import com.rag.backend.entity.ChunkEntity;
 import com.rag.backend.repo.ChunkRepo;
-import jakarta.transaction.Transactional;
+import com.rag.backend.repo.ChunkVectorRepo;
+import com.rag.backend.repo.EmbeddingCacheRepo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * Backfills chunk embeddings.
+ *
+ * Missing chunks are paged by id and split into batches; up to {@code max-in-flight} batches are
+ * embedded concurrently (the rate limiting and retries live in {@link EmbeddingService}). Every batch
+ * is written in its own transaction, so whatever was embedded before a failure stays committed and a
+ * later run only picks up what is still missing.
+ *
+ * Before calling the provider, chunks whose content hash is already in the embedding cache are filled
+ * straight from it, and chunks with identical content in one batch are embedded once. Every new vector
+ * is added to the cache. Vectors are written with binary COPY (see {@link ChunkVectorRepo}), and each
+ * committed batch is announced with a {@link ChunkEmbeddingsStored} event.
+ */
 @Service
 public class ChunkEmbeddingService {
 
+    private static final Logger log = LoggerFactory.getLogger(ChunkEmbeddingService.class);
+
     private final ChunkRepo chunkRepo;
     private final EmbeddingService embeddingService;
-
-    public ChunkEmbeddingService(ChunkRepo chunkRepo, EmbeddingService embeddingService) {
+    private final EmbeddingCacheRepo embeddingCacheRepo;
+    private final ChunkVectorRepo chunkVectorRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final int maxInFlight;
+
+    public ChunkEmbeddingService(
+            ChunkRepo chunkRepo,
+            EmbeddingService embeddingService,
+            EmbeddingCacheRepo embeddingCacheRepo,
+            ChunkVectorRepo chunkVectorRepo,
+            PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${rag.embedding.backfill.batch-size:256}") int batchSize,
+            @Value("${rag.embedding.backfill.max-in-flight:4}") int maxInFlight) {
         this.chunkRepo = chunkRepo;
         this.embeddingService = embeddingService;
+        this.embeddingCacheRepo = embeddingCacheRepo;
+        this.chunkVectorRepo = chunkVectorRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
     }
 
-    @Transactional
-    public void backfillEmbeddings() {
-        List<ChunkEntity> chunks = chunkRepo.findAll();
-
-        for (ChunkEntity chunk : chunks) {
-            // your entity field is "content"
-            float[] embedding = embeddingService.embed(chunk.getContent());
+    /** Supplies the next page of chunks with an id greater than {@code afterId}. */
+    @FunctionalInterface
+    private interface PageLoader {
+        List<ChunkRepo.ChunkText> load(long afterId, int limit);
+    }
 
-            // pgvector expects a string like: [0.1,0.2,0.3]
-            String vectorLiteral = toPgVectorLiteral(embedding);
+    private static final IntConsumer IGNORE_PROGRESS = n -> {};
+    private static final BooleanSupplier NEVER_CANCELLED = () -> false;
 
-            chunkRepo.updateEmbedding(chunk.getId(), vectorLiteral);
-        }
+    /**
+     * Re-embeds every chunk with the current model: chunks whose content is cached get the cached
+     * vector, and only the rest go to the provider.
+     */
+    public void backfillEmbeddings() {
+        String model = embeddingService.getModel();
+        int dimensions = embeddingService.getDimensions();
+        embeddingCacheRepo.applyToAllChunks(model, dimensions);
+        run((afterId, limit) -> chunkRepo.findUncachedChunkTextsAfter(afterId, limit, model, dimensions),
+                batchSize, Integer.MAX_VALUE, IGNORE_PROGRESS, NEVER_CANCELLED);
+        // A committed batch caches its hashes, so later pages skip other chunks with the same content;
+        // they get that batch's vector here
+        embeddingCacheRepo.applyToAllChunks(model, dimensions);
     }
 
-    @Transactional
     public int backfillMissingEmbeddings(int limit) {
-        List<ChunkEntity> chunks = chunkRepo.findTopMissingEmbeddings(limit); // embedding IS NULL
-        int updated = 0;
-
-        for (ChunkEntity chunk : chunks) {
-            float[] embedding = embeddingService.embed(chunk.getContent());
-            String vectorLiteral = toPgVectorLiteral(embedding);
-            updated += chunkRepo.updateEmbedding(chunk.getId(), vectorLiteral);
-        }
-
-        return updated;
+        int fromCache = embeddingCacheRepo.applyToMissingChunks(
+                embeddingService.getModel(), embeddingService.getDimensions());
+        return fromCache + run(chunkRepo::findMissingEmbeddingsAfter, batchSize, limit, IGNORE_PROGRESS, NEVER_CANCELLED);
     }
 
-    public record BackfillResult(int chunksEmbedded, long chunksRemaining, long elapsedMs) {}
+    /** chunksEmbedded counts vectors fetched from the provider; chunksFromCache those copied from the cache. */
+    public record BackfillResult(int chunksEmbedded, int chunksFromCache, long chunksRemaining, long elapsedMs) {}
 
-    @Transactional
     public BackfillResult backfillMissingEmbeddingsForRepo(String repoName, int batchSize) {
+        return backfillMissingEmbeddingsForRepo(repoName, batchSize, IGNORE_PROGRESS, NEVER_CANCELLED);
+    }
+
+    /**
+     * As {@link #backfillMissingEmbeddingsForRepo(String, int)}, passing the size of every committed
+     * batch to {@code onStored}. Once {@code cancelled} is true no further batch is started, and a
+     * CancellationException is thrown when the in-flight ones have been committed.
+     */
+    public BackfillResult backfillMissingEmbeddingsForRepo(String repoName, int batchSize,
+                                                           IntConsumer onStored, BooleanSupplier cancelled) {
         long startTime = System.currentTimeMillis();
-        int totalEmbedded = 0;
+
+        int fromCache = embeddingCacheRepo.applyToMissingChunksForRepo(
+                repoName, embeddingService.getModel(), embeddingService.getDimensions());
+
+        int totalEmbedded = run(
+                (afterId, limit) -> chunkRepo.findMissingEmbeddingsForRepoAfter(repoName, afterId, limit),
+                Math.min(batchSize, this.batchSize),
+                Integer.MAX_VALUE,
+                onStored,
+                cancelled);
+
         long remaining = chunkRepo.countMissingEmbeddingsForRepo(repoName);
+        long elapsedMs = System.currentTimeMillis() - startTime;
+        return new BackfillResult(totalEmbedded, fromCache, remaining, elapsedMs);
+    }
 
-        while (remaining > 0) {
-            List<ChunkEntity> chunks = chunkRepo.findTopMissingEmbeddingsForRepo(repoName, batchSize);
-            if (chunks.isEmpty()) {
-                break;
+    /**
+     * Embeds up to {@code limit} chunks from the loader in batches of {@code pageSize}, keeping at most
+     * maxInFlight batches in flight. Rethrows the first failure once in-flight batches have finished;
+     * earlier batches stay committed.
+     */
+    private int run(PageLoader loader, int pageSize, int limit, IntConsumer onStored, BooleanSupplier cancelled) {
+        AtomicInteger embedded = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        boolean stopped = false;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long afterId = 0;
+            int dispatched = 0;
+            while (dispatched < limit && failure.get() == null) {
+                if (cancelled.getAsBoolean()) {
+                    stopped = true;
+                    break;
+                }
+                List<ChunkRepo.ChunkText> page = loader.load(afterId, Math.min(pageSize, limit - dispatched));
+                if (page.isEmpty()) break;
+                afterId = page.get(page.size() - 1).getId();
+                dispatched += page.size();
+
+                inFlight.acquire();
+                if (failure.get() != null) {
+                    inFlight.release();
+                    break;
+                }
+                executor.submit(() -> {
+                    try {
+                        int stored = embedAndStore(page);
+                        embedded.addAndGet(stored);
+                        onStored.accept(stored);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
             }
+            // closing the executor waits for in-flight batches
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Embedding backfill was interrupted", e);
+        }
 
-            for (ChunkEntity chunk : chunks) {
-                float[] embedding = embeddingService.embed(chunk.getContent());
-                String vectorLiteral = toPgVectorLiteral(embedding);
-                chunkRepo.updateEmbedding(chunk.getId(), vectorLiteral);
-                totalEmbedded++;
-            }
+        if (failure.get() != null) {
+            log.warn("Embedding backfill stopped after {} chunks: {}", embedded.get(), failure.get().getMessage());
+            throw failure.get();
+        }
+        if (stopped) {
+            throw new CancellationException("Embedding backfill was cancelled after " + embedded.get() + " chunks");
+        }
+        return embedded.get();
+    }
 
-            remaining = chunkRepo.countMissingEmbeddingsForRepo(repoName);
+    /** Embeds one batch with as few provider requests as possible and commits its vectors. */
+    private int embedAndStore(List<ChunkRepo.ChunkText> chunks) {
+        // Identical content is embedded once; chunks without a hash are embedded on their own
+        Map<String, Integer> slotByHash = new HashMap<>();
+        int[] slotOfChunk = new int[chunks.size()];
+        List<String> contents = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkRepo.ChunkText c = chunks.get(i);
+            Integer slot = c.getContentHash() != null ? slotByHash.get(c.getContentHash()) : null;
+            if (slot == null) {
+                slot = contents.size();
+                contents.add(c.getContent());
+                if (c.getContentHash() != null) slotByHash.put(c.getContentHash(), slot);
+            }
+            slotOfChunk[i] = slot;
         }
 
-        long elapsedMs = System.currentTimeMillis() - startTime;
-        return new BackfillResult(totalEmbedded, remaining, elapsedMs);
-    }
+        List<float[]> embeddings = embeddingService.embedAll(contents);
 
-    private static String toPgVectorLiteral(float[] v) {
-        StringBuilder sb = new StringBuilder();
-        sb.append('[');
-        for (int i = 0; i < v.length; i++) {
-            if (i > 0) sb.append(',');
-            sb.append(v[i]);
+        List<ChunkVectorRepo.EmbeddingRow> rows = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkRepo.ChunkText c = chunks.get(i);
+            rows.add(new ChunkVectorRepo.EmbeddingRow(c.getId(), c.getContentHash(), embeddings.get(slotOfChunk[i])));
         }
-        sb.append(']');
-        return sb.toString();
+
+        Integer updated = transactionTemplate.execute(status -> {
+            int written = chunkVectorRepo.writeEmbeddings(rows, embeddingService.getModel(), embeddingService.getDimensions());
+            eventPublisher.publishEvent(new ChunkEmbeddingsStored(rows));
+            return written;
+        });
+        return updated == null ? 0 : updated;
     }
 }
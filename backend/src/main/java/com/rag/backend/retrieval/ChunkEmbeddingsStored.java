@@ -0,0 +1,8 @@
+package com.rag.backend.retrieval;
+
+import com.rag.backend.repo.ChunkVectorRepo;
+
+import java.util.List;
+
+/** Published by {@link ChunkEmbeddingService} inside the transaction that writes a batch of vectors. */
+public record ChunkEmbeddingsStored(List<ChunkVectorRepo.EmbeddingRow> rows) {}
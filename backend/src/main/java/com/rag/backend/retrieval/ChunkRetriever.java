@@ -0,0 +1,164 @@
+package com.rag.backend.retrieval;
+
+import com.rag.backend.entity.RepositoryEntity;
+import com.rag.backend.repo.ChunkVectorRepo;
+import com.rag.backend.repo.RepositoryRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Chunk retrieval, optionally scoped to one repository.
+ *
+ * The vector leg goes to the configured {@link VectorIndex} (pgvector unless rag.retrieval.engine=in-memory)
+ * with an HNSW candidate list of rag.retrieval.hnsw.ef-search, or the per-request value. Higher values
+ * give better recall at the cost of latency.
+ *
+ * Hybrid searches also run a lexical leg (full-text search over identifiers, see {@link LexicalQuery})
+ * concurrently on a second connection and merge both rankings with reciprocal rank fusion. Each leg's
+ * latency is recorded in the rag.retrieval.leg timer, tagged leg=vector or leg=lexical. A failing
+ * lexical leg only degrades the answer to vector hits.
+ */
+@Service
+public class ChunkRetriever implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkRetriever.class);
+
+    // pgvector rejects ef_search outside 1..1000; the in-memory index uses the same bounds
+    private static final int MAX_EF_SEARCH = 1000;
+
+    private final ChunkVectorRepo chunkVectorRepo;
+    private final RepositoryRepo repositoryRepo;
+    private final VectorIndex vectorIndex;
+    private final TransactionTemplate readOnlyTx;
+    private final int defaultEfSearch;
+    private final boolean hybridEnabled;
+    private final int candidatesPerLeg;
+    private final int rrfK;
+    private final Timer vectorTimer;
+    private final Timer lexicalTimer;
+    private final ExecutorService lexicalExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ChunkRetriever(
+            ChunkVectorRepo chunkVectorRepo,
+            RepositoryRepo repositoryRepo,
+            VectorIndex vectorIndex,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${rag.retrieval.hnsw.ef-search:40}") int defaultEfSearch,
+            @Value("${rag.retrieval.hybrid.enabled:true}") boolean hybridEnabled,
+            @Value("${rag.retrieval.hybrid.candidates-per-leg:20}") int candidatesPerLeg,
+            @Value("${rag.retrieval.hybrid.rrf-k:60}") int rrfK) {
+        this.chunkVectorRepo = chunkVectorRepo;
+        this.repositoryRepo = repositoryRepo;
+        this.vectorIndex = vectorIndex;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.defaultEfSearch = defaultEfSearch;
+        this.hybridEnabled = hybridEnabled;
+        this.candidatesPerLeg = candidatesPerLeg;
+        this.rrfK = rrfK;
+        this.vectorTimer = Timer.builder("rag.retrieval.leg").tag("leg", "vector")
+                .description("Latency of one retrieval leg").register(meterRegistry);
+        this.lexicalTimer = Timer.builder("rag.retrieval.leg").tag("leg", "lexical")
+                .description("Latency of one retrieval leg").register(meterRegistry);
+    }
+
+    public List<ChunkVectorRepo.RetrievedChunk> search(String question, float[] queryEmbedding, int k, String repoName) {
+        return search(question, queryEmbedding, k, repoName, null);
+    }
+
+    /**
+     * Top {@code k} chunks for the question: vector and lexical hits fused by reciprocal rank. Falls
+     * back to a vector-only search when hybrid retrieval is disabled or the question has no searchable
+     * terms.
+     *
+     * @throws IllegalArgumentException if no repository has that name
+     */
+    public List<ChunkVectorRepo.RetrievedChunk> search(
+            String question, float[] queryEmbedding, int k, String repoName, Integer efSearch) {
+        String tsQuery = hybridEnabled ? LexicalQuery.toTsQuery(question) : null;
+        if (tsQuery == null) {
+            return search(queryEmbedding, k, repoName, efSearch);
+        }
+
+        Long repositoryId = resolveRepositoryId(repoName);
+        int perLeg = Math.max(k, candidatesPerLeg);
+        CompletableFuture<List<ChunkVectorRepo.RetrievedChunk>> lexical = CompletableFuture.supplyAsync(
+                () -> lexicalTimer.record(() -> searchLexical(tsQuery, queryEmbedding, perLeg, repositoryId)),
+                lexicalExecutor);
+        List<ChunkVectorRepo.RetrievedChunk> vectorHits;
+        try {
+            vectorHits = searchVector(queryEmbedding, perLeg, repositoryId, efSearch);
+        } catch (RuntimeException e) {
+            lexical.cancel(true);
+            throw e;
+        }
+
+        List<ChunkVectorRepo.RetrievedChunk> lexicalHits;
+        try {
+            lexicalHits = lexical.join();
+        } catch (CompletionException e) {
+            log.warn("Lexical retrieval failed, using vector hits only: {}", e.getCause().toString());
+            lexicalHits = List.of();
+        }
+        return RankFusion.fuse(List.of(vectorHits, lexicalHits), rrfK, k);
+    }
+
+    // Vector-only searches
+
+    public List<ChunkVectorRepo.RetrievedChunk> search(float[] queryEmbedding, int k) {
+        return search(queryEmbedding, k, null, null);
+    }
+
+    public List<ChunkVectorRepo.RetrievedChunk> search(float[] queryEmbedding, int k, String repoName) {
+        return search(queryEmbedding, k, repoName, null);
+    }
+
+    /**
+     * Top {@code k} chunks by L2 distance, with their file paths.
+     *
+     * @param repoName  restricts the search to the latest repository with this name; null or blank searches all
+     * @param efSearch  HNSW candidates to explore (raised to at least k); null uses rag.retrieval.hnsw.ef-search
+     * @throws IllegalArgumentException if no repository has that name
+     */
+    public List<ChunkVectorRepo.RetrievedChunk> search(float[] queryEmbedding, int k, String repoName, Integer efSearch) {
+        return searchVector(queryEmbedding, k, resolveRepositoryId(repoName), efSearch);
+    }
+
+    private List<ChunkVectorRepo.RetrievedChunk> searchVector(float[] queryEmbedding, int k, Long repositoryId, Integer efSearch) {
+        int ef = Math.min(MAX_EF_SEARCH, Math.max(efSearch != null ? efSearch : defaultEfSearch, k));
+        return vectorTimer.record(() -> vectorIndex.searchTopK(queryEmbedding, k, repositoryId, ef));
+    }
+
+    private List<ChunkVectorRepo.RetrievedChunk> searchLexical(
+            String tsQuery, float[] queryEmbedding, int limit, Long repositoryId) {
+        return readOnlyTx.execute(status -> repositoryId == null
+                ? chunkVectorRepo.searchLexical(tsQuery, queryEmbedding, limit)
+                : chunkVectorRepo.searchLexicalInRepository(repositoryId, tsQuery, queryEmbedding, limit));
+    }
+
+    private Long resolveRepositoryId(String repoName) {
+        if (repoName == null || repoName.isBlank()) return null;
+        return repositoryRepo.findFirstByNameOrderByIdDesc(repoName.trim())
+                .map(RepositoryEntity::getId)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown repository: " + repoName.trim()));
+    }
+
+    @Override
+    public void destroy() {
+        lexicalExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,275 @@
+package com.rag.backend.retrieval;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embeddings as rows of one memory-mapped float file, for exact (brute-force) nearest-neighbour search.
+ *
+ * Row i of the file holds the vector of {@code chunkIds[i]}; chunk and repository ids live in parallel
+ * long arrays on the heap. The file is mapped in segments of 16384 rows (a single mapping is limited to
+ * 2 GB), so the vectors cost no heap and the OS pages them. Removing a chunk moves the last row into its
+ * slot, so the rows stay dense and a scan never skips holes.
+ *
+ * A search splits the rows into ranges scored in parallel on a fork-join pool. Each range copies one
+ * row at a time out of the mapping into a scratch array (a bulk memory copy) and scores it with
+ * {@link VectorDistance}, keeping its top k in a primitive heap; the per-range heaps are then merged.
+ * Results are exact, which also makes this the recall baseline for approximate engines.
+ *
+ * Searches run concurrently; writes wait for them behind a read/write lock, so a search never sees a
+ * row half-written or moved by a remove.
+ */
+public final class EmbeddingMatrix implements AutoCloseable {
+
+    private static final int SEGMENT_ROWS = 16384;
+    private static final int ROWS_PER_TASK = 4096;
+
+    private final Path file;
+    private final boolean deleteOnClose;
+    private final int dimensions;
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> rowByChunk = new HashMap<>();
+
+    private FloatBuffer[] segments = new FloatBuffer[0];
+    private long[] chunkIds = new long[0];
+    private long[] repositoryIds = new long[0];
+    private int rows;
+
+    private EmbeddingMatrix(Path file, boolean deleteOnClose, int dimensions, ForkJoinPool pool) throws IOException {
+        this.file = file;
+        this.deleteOnClose = deleteOnClose;
+        this.dimensions = dimensions;
+        this.pool = pool;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Opens an empty matrix backed by {@code file}, or by a temporary file deleted on close when
+     * {@code file} is null. Any existing content is discarded.
+     */
+    public static EmbeddingMatrix create(Path file, int dimensions, ForkJoinPool pool) {
+        if (dimensions <= 0) throw new IllegalArgumentException("dimensions must be positive: " + dimensions);
+        try {
+            if (file == null) {
+                return new EmbeddingMatrix(Files.createTempFile("embeddings", ".f32"), true, dimensions, pool);
+            }
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            return new EmbeddingMatrix(file, false, dimensions, pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create embedding matrix file " + file, e);
+        }
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] chunkIds() {
+        lock.readLock().lock();
+        try {
+            return Arrays.copyOf(chunkIds, rows);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Adds a chunk, overwriting its row if it is already present. */
+    public void add(long chunkId, long repositoryId, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected a " + dimensions + "-dimension vector, got " + vector.length);
+        }
+        lock.writeLock().lock();
+        try {
+            Integer existing = rowByChunk.get(chunkId);
+            if (existing != null) {
+                writeRow(existing, vector);
+                repositoryIds[existing] = repositoryId;
+                return;
+            }
+
+            int row = rows;
+            if (row == chunkIds.length) {
+                int capacity = Math.max(SEGMENT_ROWS, row * 2);
+                chunkIds = Arrays.copyOf(chunkIds, capacity);
+                repositoryIds = Arrays.copyOf(repositoryIds, capacity);
+            }
+            if (row / SEGMENT_ROWS == segments.length) mapSegment();
+
+            writeRow(row, vector);
+            chunkIds[row] = chunkId;
+            repositoryIds[row] = repositoryId;
+            rowByChunk.put(chunkId, row);
+            rows = row + 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(long chunkId) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowByChunk.remove(chunkId);
+            if (row == null) return false;
+
+            int last = rows - 1;
+            if (row != last) {
+                float[] v = new float[dimensions];
+                segments[last / SEGMENT_ROWS].get(offset(last), v);
+                writeRow(row, v);
+                chunkIds[row] = chunkIds[last];
+                repositoryIds[row] = repositoryIds[last];
+                rowByChunk.put(chunkIds[row], row);
+            }
+            rows = last;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Exact top {@code k} chunks by L2 distance, closest first.
+     *
+     * @param repositoryId only consider this repository's chunks; null for all
+     */
+    public List<VectorIndex.Neighbor> search(float[] query, int k, Long repositoryId) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected a " + dimensions + "-dimension query, got " + query.length);
+        }
+        if (k <= 0) return List.of();
+        // Held across the fork-join tasks too: they only read, and a write waits until they finish
+        lock.readLock().lock();
+        try {
+            return searchLocked(query, k, repositoryId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<VectorIndex.Neighbor> searchLocked(float[] query, int k, Long repositoryId) {
+        int n = rows;
+        if (n == 0) return List.of();
+        FloatBuffer[] segs = segments;
+        long[] ids = chunkIds;
+        long[] repos = repositoryIds;
+
+        NodeHeap top;
+        if (n <= ROWS_PER_TASK) {
+            top = scoreRange(query, k, repositoryId, segs, repos, 0, n);
+        } else {
+            List<Callable<NodeHeap>> tasks = new ArrayList<>();
+            for (int from = 0; from < n; from += ROWS_PER_TASK) {
+                int start = from;
+                int end = Math.min(n, from + ROWS_PER_TASK);
+                tasks.add(() -> scoreRange(query, k, repositoryId, segs, repos, start, end));
+            }
+            top = new NodeHeap(true, k + 1);
+            for (Future<NodeHeap> f : pool.invokeAll(tasks)) {
+                NodeHeap partial = join(f);
+                while (partial.size() > 0) {
+                    float d = partial.topDistance();
+                    int row = partial.pop();
+                    if (top.size() < k || d < top.topDistance()) {
+                        top.push(row, d);
+                        if (top.size() > k) top.pop();
+                    }
+                }
+            }
+        }
+
+        VectorIndex.Neighbor[] out = new VectorIndex.Neighbor[top.size()];
+        for (int i = out.length - 1; i >= 0; i--) {
+            float d = (float) Math.sqrt(top.topDistance());
+            out[i] = new VectorIndex.Neighbor(ids[top.pop()], d);
+        }
+        return List.of(out);
+    }
+
+    private NodeHeap scoreRange(float[] query, int k, Long repositoryId, FloatBuffer[] segs, long[] repos, int from, int to) {
+        NodeHeap top = new NodeHeap(true, k + 1);
+        float[] row = new float[dimensions];
+        for (int r = from; r < to; r++) {
+            if (repositoryId != null && repos[r] != repositoryId) continue;
+            segs[r / SEGMENT_ROWS].get(offset(r), row);
+            float d = VectorDistance.squaredL2(query, 0, row, 0, dimensions);
+            if (top.size() < k || d < top.topDistance()) {
+                top.push(r, d);
+                if (top.size() > k) top.pop();
+            }
+        }
+        return top;
+    }
+
+    private void writeRow(int row, float[] vector) {
+        segments[row / SEGMENT_ROWS].put(offset(row), vector);
+    }
+
+    private int offset(int row) {
+        return (row % SEGMENT_ROWS) * dimensions;
+    }
+
+    private void mapSegment() {
+        long bytes = (long) SEGMENT_ROWS * dimensions * Float.BYTES;
+        try {
+            FloatBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, segments.length * bytes, bytes)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            FloatBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[grown.length - 1] = segment;
+            segments = grown;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow embedding matrix file " + file, e);
+        }
+    }
+
+    private static NodeHeap join(Future<NodeHeap> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during exact vector search", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Exact vector search failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+            if (deleteOnClose) Files.deleteIfExists(file);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.rag.backend.retrieval;
+
+import com.rag.backend.repo.ChunkVectorRepo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Exact vector search over an {@link EmbeddingMatrix}, enabled with rag.retrieval.engine=exact.
+ *
+ * Scans every embedding (filtered to the repository, if any) with SIMD on all cores, so recall is
+ * always 100% and ef_search is ignored. For up to a few hundred thousand chunks this is competitive
+ * with an approximate index. The matrix file is a working file rebuilt from chunks.embedding at
+ * startup, not a snapshot.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "rag.retrieval.engine", havingValue = "exact")
+public class ExactVectorIndex extends LocalVectorIndex {
+
+    private final EmbeddingMatrix matrix;
+    private final ForkJoinPool pool;
+
+    public ExactVectorIndex(
+            ChunkVectorRepo chunkVectorRepo,
+            PgVectorIndex fallback,
+            @Value("${rag.embedding.dimensions:1536}") int dimensions,
+            @Value("${rag.retrieval.exact.matrix-path:}") String matrixPath,
+            @Value("${rag.retrieval.exact.parallelism:0}") int parallelism,
+            @Value("${rag.retrieval.exact.sync-interval:PT1M}") Duration syncInterval) {
+        super("exact", chunkVectorRepo, fallback, syncInterval);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.matrix = EmbeddingMatrix.create(matrixPath.isBlank() ? null : Path.of(matrixPath), dimensions, pool);
+    }
+
+    @Override
+    protected List<Neighbor> nearest(float[] queryEmbedding, int k, Long repositoryId, int efSearch) {
+        return matrix.search(queryEmbedding, k, repositoryId);
+    }
+
+    @Override
+    protected long[] indexedChunkIds() {
+        return matrix.chunkIds();
+    }
+
+    @Override
+    protected void add(long chunkId, long repositoryId, float[] embedding) {
+        matrix.add(chunkId, repositoryId, embedding);
+    }
+
+    @Override
+    protected void remove(long chunkId) {
+        matrix.remove(chunkId);
+    }
+
+    @Override
+    public int size() {
+        return matrix.size();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        super.destroy();
+        pool.shutdownNow();
+        matrix.close();
+    }
+}
@@ -0,0 +1,531 @@
+package com.rag.backend.retrieval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph (Malkov and Yashunin) over chunk embeddings, held in the JVM.
+ *
+ * Vectors are copied into primitive float pages of 1024 vectors each and links are int arrays, so a
+ * node costs its vector plus a few hundred bytes of links and nothing is boxed on the search path.
+ * Distances are L2, like pgvector's {@code <->}.
+ *
+ * Removing a chunk only marks its node deleted: it still routes searches but is never returned.
+ * {@link #compacted()} rebuilds the graph without deleted nodes. Searches run concurrently; writes
+ * wait for them behind a read/write lock.
+ */
+public final class HnswGraph {
+
+    private static final int MAGIC = 0x52414748; // "RAGH"
+    private static final int VERSION = 1;
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_LEVEL = 16;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Queue<Visited> visitedPool = new ConcurrentLinkedQueue<>();
+
+    private float[][] vectorPages = new float[0][];
+    private long[] chunkIds = new long[0];
+    private long[] repositoryIds = new long[0];
+    // links[node][level] = {count, neighbour...}
+    private int[][][] links = new int[0][][];
+    private final BitSet deleted = new BitSet();
+    private final Map<Long, Integer> nodeByChunk = new HashMap<>();
+    private final Map<Long, Integer> liveByRepository = new HashMap<>();
+    private int nodeCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * @param m              links per node on the upper levels (twice as many on level 0)
+     * @param efConstruction candidate list size while inserting; higher builds a better graph, slower
+     */
+    public HnswGraph(int dimensions, int m, int efConstruction, long seed) {
+        if (dimensions <= 0 || m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("Invalid HNSW parameters: dimensions=" + dimensions
+                    + ", m=" + m + ", efConstruction=" + efConstruction);
+        }
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /** Chunks a search can return. */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeByChunk.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Removed or replaced nodes still held in the graph. */
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] chunkIds() {
+        lock.readLock().lock();
+        try {
+            return nodeByChunk.keySet().stream().mapToLong(Long::longValue).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Adds a chunk, replacing its previous vector if it was already indexed. */
+    public void add(long chunkId, long repositoryId, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected a " + dimensions + "-dimension vector, got " + vector.length);
+        }
+        lock.writeLock().lock();
+        try {
+            Integer existing = nodeByChunk.get(chunkId);
+            if (existing != null) {
+                if (repositoryIds[existing] == repositoryId && distance(vector, existing) == 0f) return;
+                markDeleted(chunkId, existing);
+            }
+            insert(chunkId, repositoryId, vector);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(long chunkId) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeByChunk.get(chunkId);
+            if (node == null) return false;
+            markDeleted(chunkId, node);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate top {@code k} chunks by L2 distance, closest first.
+     *
+     * @param ef           candidate list size on level 0 (raised to at least k); higher means better recall
+     * @param repositoryId only return chunks of this repository; null for all
+     */
+    public List<VectorIndex.Neighbor> search(float[] query, int k, int ef, Long repositoryId) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected a " + dimensions + "-dimension query, got " + query.length);
+        }
+        lock.readLock().lock();
+        try {
+            int live = repositoryId == null ? nodeByChunk.size() : liveByRepository.getOrDefault(repositoryId, 0);
+            if (k <= 0 || live == 0) return List.of();
+
+            IntPredicate accept = repositoryId == null
+                    ? node -> !deleted.get(node)
+                    : node -> !deleted.get(node) && repositoryIds[node] == repositoryId;
+            int ep = greedyDescend(query, entryPoint, maxLevel, 0);
+            NodeHeap results = searchLayer(query, ep, Math.max(ef, k), 0, accept);
+            if (results.size() < Math.min(k, live)) {
+                // A selective repository filter (or many deleted nodes) starved the graph walk
+                results = scan(query, k, accept);
+            }
+            return toNeighbors(results, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** A new graph holding only the live chunks. */
+    public HnswGraph compacted() {
+        lock.readLock().lock();
+        try {
+            HnswGraph copy = new HnswGraph(dimensions, m, efConstruction, random.split().nextLong());
+            float[] v = new float[dimensions];
+            for (int node = 0; node < nodeCount; node++) {
+                if (deleted.get(node)) continue;
+                System.arraycopy(vectorPages[node >>> PAGE_BITS], offset(node), v, 0, dimensions);
+                copy.add(chunkIds[node], repositoryIds[node], v);
+            }
+            return copy;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Snapshot: header, then per node its ids, deleted flag, vector and links, all big-endian
+
+    public void writeTo(OutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(dimensions);
+            data.writeInt(m);
+            data.writeInt(efConstruction);
+            data.writeInt(nodeCount);
+            data.writeInt(entryPoint);
+            data.writeInt(maxLevel);
+            ByteBuffer vector = ByteBuffer.allocate(dimensions * Float.BYTES);
+            for (int node = 0; node < nodeCount; node++) {
+                data.writeLong(chunkIds[node]);
+                data.writeLong(repositoryIds[node]);
+                data.writeBoolean(deleted.get(node));
+                vector.clear();
+                vector.asFloatBuffer().put(vectorPages[node >>> PAGE_BITS], offset(node), dimensions);
+                data.write(vector.array());
+                data.writeByte(links[node].length);
+                for (int[] level : links[node]) {
+                    data.writeInt(level[0]);
+                    for (int i = 1; i <= level[0]; i++) data.writeInt(level[i]);
+                }
+            }
+            data.flush();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static HnswGraph readFrom(InputStream in, long seed) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not an HNSW snapshot, or written by an incompatible version");
+        }
+        HnswGraph graph = new HnswGraph(data.readInt(), data.readInt(), data.readInt(), seed);
+        int count = data.readInt();
+        int entryPoint = data.readInt();
+        int maxLevel = data.readInt();
+
+        byte[] bytes = new byte[graph.dimensions * Float.BYTES];
+        float[] vector = new float[graph.dimensions];
+        for (int node = 0; node < count; node++) {
+            long chunkId = data.readLong();
+            long repositoryId = data.readLong();
+            boolean deleted = data.readBoolean();
+            data.readFully(bytes);
+            ByteBuffer.wrap(bytes).asFloatBuffer().get(vector);
+            graph.allocate(chunkId, repositoryId, vector);
+
+            int levels = data.readUnsignedByte();
+            graph.links[node] = graph.newLinks(levels - 1);
+            for (int l = 0; l < levels; l++) {
+                int[] level = graph.links[node][l];
+                level[0] = data.readInt();
+                if (level[0] >= level.length) throw new IOException("Corrupt HNSW snapshot: node " + node + " has too many links");
+                for (int i = 1; i <= level[0]; i++) level[i] = data.readInt();
+            }
+
+            if (deleted) {
+                graph.deleted.set(node);
+            } else {
+                graph.nodeByChunk.put(chunkId, node);
+                graph.liveByRepository.merge(repositoryId, 1, Integer::sum);
+            }
+        }
+        graph.entryPoint = entryPoint;
+        graph.maxLevel = maxLevel;
+        return graph;
+    }
+
+    // --- Construction
+
+    private void insert(long chunkId, long repositoryId, float[] vector) {
+        int node = allocate(chunkId, repositoryId, vector);
+        int level = randomLevel();
+        links[node] = newLinks(level);
+        nodeByChunk.put(chunkId, node);
+        liveByRepository.merge(repositoryId, 1, Integer::sum);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int ep = greedyDescend(vector, entryPoint, maxLevel, level);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap found = searchLayer(vector, ep, efConstruction, l, null);
+            int count = found.size();
+            int[] candidates = new int[count];
+            float[] dists = new float[count];
+            // Popping a max-heap yields the farthest first; fill from the back for ascending order
+            for (int i = count - 1; i >= 0; i--) {
+                dists[i] = found.topDistance();
+                candidates[i] = found.pop();
+            }
+
+            int[] selected = selectNeighbors(candidates, dists, count, m);
+            int[] own = links[node][l];
+            own[0] = selected.length;
+            System.arraycopy(selected, 0, own, 1, selected.length);
+            for (int neighbour : selected) connect(neighbour, node, l);
+            ep = candidates[0];
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /** Adds {@code node} to {@code target}'s links, re-selecting them if that overflows the level's capacity. */
+    private void connect(int target, int node, int level) {
+        int[] own = links[target][level];
+        int capacity = own.length - 1;
+        if (own[0] < capacity) {
+            own[++own[0]] = node;
+            return;
+        }
+
+        int count = own[0] + 1;
+        int[] candidates = Arrays.copyOfRange(own, 1, count + 1);
+        candidates[count - 1] = node;
+        float[] dists = new float[count];
+        for (int i = 0; i < count; i++) dists[i] = distance(target, candidates[i]);
+        sortByDistance(candidates, dists, count);
+
+        int[] selected = selectNeighbors(candidates, dists, count, capacity);
+        own[0] = selected.length;
+        System.arraycopy(selected, 0, own, 1, selected.length);
+    }
+
+    /**
+     * The neighbour selection heuristic: take candidates closest first, skipping any that is closer to
+     * an already selected neighbour than to the base node, so links spread in different directions.
+     * Skipped candidates fill whatever room is left.
+     */
+    private int[] selectNeighbors(int[] candidates, float[] dists, int count, int max) {
+        int[] selected = new int[Math.min(count, max)];
+        int[] skipped = new int[count];
+        int n = 0;
+        int s = 0;
+        for (int i = 0; i < count && n < selected.length; i++) {
+            int c = candidates[i];
+            boolean diverse = true;
+            for (int j = 0; j < n; j++) {
+                if (distance(c, selected[j]) < dists[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) selected[n++] = c;
+            else skipped[s++] = c;
+        }
+        for (int i = 0; i < s && n < selected.length; i++) selected[n++] = skipped[i];
+        return n == selected.length ? selected : Arrays.copyOf(selected, n);
+    }
+
+    // --- Search
+
+    /** Walks down from {@code fromLevel} to just above {@code toLevel}, always moving to the closest neighbour. */
+    private int greedyDescend(float[] query, int ep, int fromLevel, int toLevel) {
+        float best = distance(query, ep);
+        for (int l = fromLevel; l > toLevel; l--) {
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                int[] neighbours = links[ep][l];
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    float d = distance(query, neighbours[i]);
+                    if (d < best) {
+                        best = d;
+                        ep = neighbours[i];
+                        moved = true;
+                    }
+                }
+            }
+        }
+        return ep;
+    }
+
+    /**
+     * Best-first search of one level. The walk is bounded by the ef nearest nodes seen, deleted or not;
+     * only nodes passing {@code accept} (all when null) are returned. Returns a max-heap of squared distances.
+     */
+    private NodeHeap searchLayer(float[] query, int ep, int ef, int level, IntPredicate accept) {
+        Visited visited = visitedPool.poll();
+        if (visited == null) visited = new Visited();
+        visited.reset(nodeCount);
+        try {
+            NodeHeap candidates = new NodeHeap(false, ef);
+            NodeHeap nearest = new NodeHeap(true, ef + 1);
+            NodeHeap results = accept == null ? nearest : new NodeHeap(true, ef + 1);
+
+            float d = distance(query, ep);
+            visited.visit(ep);
+            candidates.push(ep, d);
+            nearest.push(ep, d);
+            if (accept != null && accept.test(ep)) results.push(ep, d);
+
+            while (candidates.size() > 0) {
+                if (nearest.size() >= ef && candidates.topDistance() > nearest.topDistance()) break;
+                int[] neighbours = links[candidates.pop()][level];
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    int e = neighbours[i];
+                    if (!visited.visit(e)) continue;
+                    float de = distance(query, e);
+                    if (nearest.size() < ef || de < nearest.topDistance()) {
+                        candidates.push(e, de);
+                        nearest.push(e, de);
+                        if (nearest.size() > ef) nearest.pop();
+                        if (accept != null && accept.test(e)) {
+                            results.push(e, de);
+                            if (results.size() > ef) results.pop();
+                        }
+                    }
+                }
+            }
+            return results;
+        } finally {
+            visitedPool.offer(visited);
+        }
+    }
+
+    /** Exact top k over every accepted node. */
+    private NodeHeap scan(float[] query, int k, IntPredicate accept) {
+        NodeHeap results = new NodeHeap(true, k + 1);
+        for (int node = 0; node < nodeCount; node++) {
+            if (!accept.test(node)) continue;
+            float d = distance(query, node);
+            if (results.size() < k || d < results.topDistance()) {
+                results.push(node, d);
+                if (results.size() > k) results.pop();
+            }
+        }
+        return results;
+    }
+
+    private List<VectorIndex.Neighbor> toNeighbors(NodeHeap results, int k) {
+        while (results.size() > k) results.pop();
+        VectorIndex.Neighbor[] out = new VectorIndex.Neighbor[results.size()];
+        for (int i = out.length - 1; i >= 0; i--) {
+            float d = (float) Math.sqrt(results.topDistance());
+            out[i] = new VectorIndex.Neighbor(chunkIds[results.pop()], d);
+        }
+        return new ArrayList<>(Arrays.asList(out));
+    }
+
+    // --- Storage
+
+    private int allocate(long chunkId, long repositoryId, float[] vector) {
+        int node = nodeCount;
+        if (node == chunkIds.length) {
+            int capacity = Math.max(PAGE_SIZE, chunkIds.length * 2);
+            chunkIds = Arrays.copyOf(chunkIds, capacity);
+            repositoryIds = Arrays.copyOf(repositoryIds, capacity);
+            links = Arrays.copyOf(links, capacity);
+        }
+        int page = node >>> PAGE_BITS;
+        if (page == vectorPages.length) {
+            vectorPages = Arrays.copyOf(vectorPages, page + 1);
+            vectorPages[page] = new float[PAGE_SIZE * dimensions];
+        }
+        System.arraycopy(vector, 0, vectorPages[page], offset(node), dimensions);
+        chunkIds[node] = chunkId;
+        repositoryIds[node] = repositoryId;
+        nodeCount++;
+        return node;
+    }
+
+    private int[][] newLinks(int level) {
+        int[][] levels = new int[level + 1][];
+        for (int l = 0; l <= level; l++) levels[l] = new int[(l == 0 ? maxM0 : m) + 1];
+        return levels;
+    }
+
+    private void markDeleted(long chunkId, int node) {
+        nodeByChunk.remove(chunkId);
+        liveByRepository.merge(repositoryIds[node], -1, (a, b) -> a + b == 0 ? null : a + b);
+        deleted.set(node);
+    }
+
+    private int randomLevel() {
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier));
+    }
+
+    private int offset(int node) {
+        return (node & (PAGE_SIZE - 1)) * dimensions;
+    }
+
+    private float distance(float[] query, int node) {
+        return VectorDistance.squaredL2(query, 0, vectorPages[node >>> PAGE_BITS], offset(node), dimensions);
+    }
+
+    private float distance(int a, int b) {
+        return VectorDistance.squaredL2(vectorPages[a >>> PAGE_BITS], offset(a), vectorPages[b >>> PAGE_BITS], offset(b), dimensions);
+    }
+
+    private static void sortByDistance(int[] nodes, float[] dists, int count) {
+        for (int i = 1; i < count; i++) {
+            int node = nodes[i];
+            float d = dists[i];
+            int j = i - 1;
+            while (j >= 0 && dists[j] > d) {
+                nodes[j + 1] = nodes[j];
+                dists[j + 1] = dists[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+            dists[j + 1] = d;
+        }
+    }
+
+    /** Visited marks reused across searches; bumping the epoch clears them. */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /** Returns false if the node was already visited. */
+        boolean visit(int node) {
+            if (marks[node] == epoch) return false;
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
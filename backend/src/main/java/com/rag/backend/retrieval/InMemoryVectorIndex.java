@@ -0,0 +1,160 @@
+package com.rag.backend.retrieval;
+
+import com.rag.backend.repo.ChunkVectorRepo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Vector search in an {@link HnswGraph} held in the JVM, enabled with rag.retrieval.engine=in-memory.
+ *
+ * With a snapshot-path the graph is restored from that file at startup instead of being rebuilt from
+ * chunks.embedding, and the file is rewritten (atomically) after every change and on shutdown. The
+ * version of each vector goes to a ".versions" file next to it, so the first sync reloads only what
+ * changed while the process was down; without that file every vector is reloaded. Once removed
+ * chunks outnumber live ones the graph is rebuilt without them.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "rag.retrieval.engine", havingValue = "in-memory")
+public class InMemoryVectorIndex extends LocalVectorIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryVectorIndex.class);
+
+    private final int dimensions;
+    private final Path snapshotPath;
+    private final Path versionsPath;
+
+    private volatile HnswGraph graph;
+
+    public InMemoryVectorIndex(
+            ChunkVectorRepo chunkVectorRepo,
+            PgVectorIndex fallback,
+            @Value("${rag.embedding.dimensions:1536}") int dimensions,
+            @Value("${rag.retrieval.in-memory.m:16}") int m,
+            @Value("${rag.retrieval.in-memory.ef-construction:100}") int efConstruction,
+            @Value("${rag.retrieval.in-memory.snapshot-path:}") String snapshotPath,
+            @Value("${rag.retrieval.in-memory.sync-interval:PT1M}") Duration syncInterval) {
+        super("in-memory", chunkVectorRepo, fallback, syncInterval);
+        this.dimensions = dimensions;
+        this.snapshotPath = snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.versionsPath = this.snapshotPath == null ? null
+                : this.snapshotPath.resolveSibling(this.snapshotPath.getFileName() + ".versions");
+        this.graph = new HnswGraph(dimensions, m, efConstruction, System.nanoTime());
+    }
+
+    @Override
+    protected List<Neighbor> nearest(float[] queryEmbedding, int k, Long repositoryId, int efSearch) {
+        return graph.search(queryEmbedding, k, efSearch, repositoryId);
+    }
+
+    @Override
+    protected long[] indexedChunkIds() {
+        return graph.chunkIds();
+    }
+
+    @Override
+    protected void add(long chunkId, long repositoryId, float[] embedding) {
+        graph.add(chunkId, repositoryId, embedding);
+    }
+
+    @Override
+    protected void remove(long chunkId) {
+        graph.remove(chunkId);
+    }
+
+    @Override
+    public int size() {
+        return graph.size();
+    }
+
+    @Override
+    protected void afterSync() {
+        if (graph.deletedCount() > graph.size()) {
+            graph = graph.compacted();
+        }
+    }
+
+    @Override
+    protected void restore() {
+        if (snapshotPath == null || !Files.exists(snapshotPath)) return;
+        try (InputStream in = Files.newInputStream(snapshotPath)) {
+            HnswGraph restored = HnswGraph.readFrom(in, System.nanoTime());
+            if (restored.dimensions() != dimensions) {
+                log.warn("Ignoring vector index snapshot {}: {} dimensions, expected {}", snapshotPath, restored.dimensions(), dimensions);
+                return;
+            }
+            graph = restored;
+            log.info("Restored {} chunks from vector index snapshot {}", restored.size(), snapshotPath);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable vector index snapshot {}: {}", snapshotPath, e.getMessage());
+            return;
+        }
+        if (!Files.exists(versionsPath)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(versionsPath)))) {
+            int count = in.readInt();
+            long[] ids = new long[count];
+            long[] versions = new long[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readLong();
+                versions[i] = in.readLong();
+            }
+            restoreVersions(new ChunkVectorRepo.EmbeddingVersions(ids, versions));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable vector versions {}, every vector will be reloaded: {}", versionsPath, e.getMessage());
+        }
+    }
+
+    @Override
+    protected void persist() {
+        if (snapshotPath == null) return;
+        try {
+            // The graph first: if the versions file then lags behind, some vectors are reloaded needlessly,
+            // whereas versions newer than the graph would hide stale vectors
+            writeAtomically(snapshotPath, graph::writeTo);
+            ChunkVectorRepo.EmbeddingVersions versions = indexedVersions();
+            writeAtomically(versionsPath, out -> {
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+                data.writeInt(versions.chunkIds().length);
+                for (int i = 0; i < versions.chunkIds().length; i++) {
+                    data.writeLong(versions.chunkIds()[i]);
+                    data.writeLong(versions.versions()[i]);
+                }
+                data.flush();
+            });
+        } catch (IOException e) {
+            log.warn("Could not write vector index snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    private interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static void writeAtomically(Path target, Writer writer) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        // Write next to the target and rename, so a crash never leaves a half-written file
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            writer.writeTo(out);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,52 @@
+package com.rag.backend.retrieval;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Turns a question into a tsquery for the lexical retrieval leg.
+ *
+ * Tokenizes the same way as the code_search_text SQL function behind chunks.content_tsv: words are
+ * runs of letters and digits, each kept whole and also split at camelCase boundaries, all lowercased.
+ * Terms are OR-ed so a chunk matching any identifier is a candidate; ts_rank_cd favours chunks that
+ * match more of them. Common English words are dropped since every chunk would match them.
+ */
+public final class LexicalQuery {
+
+    private static final int MAX_TERMS = 32;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "does", "for", "from", "how",
+            "i", "if", "in", "is", "it", "its", "me", "my", "of", "on", "or", "show", "that", "the",
+            "this", "to", "use", "used", "uses", "was", "what", "when", "where", "which", "who", "why",
+            "with", "work", "works", "you", "your");
+
+    private LexicalQuery() {}
+
+    /** Returns a to_tsquery('simple', ...) expression, or null if the question has no useful terms. */
+    public static String toTsQuery(String question) {
+        if (question == null) return null;
+
+        Set<String> terms = new LinkedHashSet<>();
+        for (String word : question.split("[^A-Za-z0-9]+")) {
+            if (word.isEmpty()) continue;
+            add(terms, word);
+            for (String part : splitCamelCase(word)) add(terms, part);
+        }
+        if (terms.isEmpty()) return null;
+        return String.join(" | ", terms.stream().limit(MAX_TERMS).toList());
+    }
+
+    private static void add(Set<String> terms, String term) {
+        String t = term.toLowerCase(Locale.ROOT);
+        if (t.length() >= 2 && !STOP_WORDS.contains(t)) terms.add(t);
+    }
+
+    private static String[] splitCamelCase(String word) {
+        // Same two rules as code_search_text: fooBar -> foo Bar, HTTPServer -> HTTP Server
+        return word.replaceAll("([a-z0-9])([A-Z])", "$1 $2")
+                .replaceAll("([A-Z]+)([A-Z][a-z])", "$1 $2")
+                .split(" ");
+    }
+}
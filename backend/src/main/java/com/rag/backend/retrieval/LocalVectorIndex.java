@@ -0,0 +1,284 @@
+package com.rag.backend.retrieval;
+
+import com.rag.backend.repo.ChunkVectorRepo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base for vector engines that search embeddings held in this process.
+ *
+ * The engine answers the nearest-neighbour part without touching the database; only the k winning
+ * chunks are then read by primary key for their content and file path. Until the first sync has
+ * finished, searches go to {@link PgVectorIndex}.
+ *
+ * Keeping it current:
+ * - at startup the engine may restore persisted state, then syncs
+ * - vectors written by {@link ChunkEmbeddingService} are loaded as soon as their transaction commits
+ * - every sync-interval the indexed chunks and the version of each one's vector
+ *   (chunks.embedding_version, bumped by a trigger on any change) are compared with the database;
+ *   new and changed embeddings are loaded, however they were written (e.g. copied from the
+ *   embedding cache, or changed while the process was down), and deleted chunks are removed
+ *
+ * All writes happen on one background thread.
+ */
+public abstract class LocalVectorIndex implements VectorIndex, MeterBinder, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalVectorIndex.class);
+
+    private static final int LOAD_BATCH_SIZE = 512;
+
+    private final String engine;
+    private final ChunkVectorRepo chunkVectorRepo;
+    private final PgVectorIndex fallback;
+    private final Duration syncInterval;
+    private final ScheduledExecutorService writer;
+
+    private volatile boolean ready;
+    private boolean dirty;
+    // Version of every indexed vector as of the last sync (ids ascending), and of those loaded since
+    private long[] syncedIds = new long[0];
+    private long[] syncedVersions = new long[0];
+    private final Map<Long, Long> loadedSinceSync = new HashMap<>();
+
+    protected LocalVectorIndex(String engine, ChunkVectorRepo chunkVectorRepo, PgVectorIndex fallback, Duration syncInterval) {
+        this.engine = engine;
+        this.chunkVectorRepo = chunkVectorRepo;
+        this.fallback = fallback;
+        this.syncInterval = syncInterval;
+        this.writer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name(engine + "-vector-index").daemon().factory());
+    }
+
+    /** Nearest live chunks, closest first. */
+    protected abstract List<Neighbor> nearest(float[] queryEmbedding, int k, Long repositoryId, int efSearch);
+
+    protected abstract long[] indexedChunkIds();
+
+    /** Adds a chunk or replaces its vector. Only called on the writer thread. */
+    protected abstract void add(long chunkId, long repositoryId, float[] embedding);
+
+    /** Only called on the writer thread. */
+    protected abstract void remove(long chunkId);
+
+    /** Chunks a search can return. */
+    public abstract int size();
+
+    /** Loads persisted state before the first sync. Runs on the writer thread. */
+    protected void restore() {}
+
+    /** Runs after every sync on the writer thread, e.g. to reclaim space held by removed chunks. */
+    protected void afterSync() {}
+
+    /** Persists the current state after a change. Runs on the writer thread, or at shutdown once it has stopped. */
+    protected void persist() {}
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        writer.execute(this::restore);
+        writer.scheduleWithFixedDelay(this::syncQuietly, 0, syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public List<ChunkVectorRepo.RetrievedChunk> searchTopK(float[] queryEmbedding, int k, Long repositoryId, int efSearch) {
+        if (!ready) {
+            return fallback.searchTopK(queryEmbedding, k, repositoryId, efSearch);
+        }
+
+        List<Neighbor> neighbors = nearest(queryEmbedding, k, repositoryId, efSearch);
+        long[] ids = neighbors.stream().mapToLong(Neighbor::chunkId).toArray();
+        Map<Long, ChunkVectorRepo.RetrievedChunk> byId = new HashMap<>();
+        for (ChunkVectorRepo.RetrievedChunk c : chunkVectorRepo.findRetrievedChunks(ids)) byId.put(c.id(), c);
+
+        List<ChunkVectorRepo.RetrievedChunk> hits = new ArrayList<>(neighbors.size());
+        for (Neighbor n : neighbors) {
+            ChunkVectorRepo.RetrievedChunk c = byId.get(n.chunkId());
+            // Deleted since the last sync
+            if (c == null) continue;
+            hits.add(new ChunkVectorRepo.RetrievedChunk(
+                    c.id(), c.documentId(), c.filePath(), c.startLine(), c.endLine(), c.content(), (double) n.distance()));
+        }
+        return hits;
+    }
+
+    @TransactionalEventListener
+    public void onEmbeddingsStored(ChunkEmbeddingsStored event) {
+        writer.execute(() -> {
+            try {
+                // Read back rather than taken from the event, so each vector is held with its version
+                load(event.rows().stream().mapToLong(ChunkVectorRepo.EmbeddingRow::chunkId).toArray());
+                dirty = true;
+            } catch (RuntimeException e) {
+                // Their versions differ from the ones held, so the next sync loads them
+                log.warn("Could not add {} new embeddings to the {} vector index: {}", event.rows().size(), engine, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Brings the index in line with the database. Runs on the writer thread; public so a caller that
+     * owns the index outright (a test, say) can sync it directly.
+     */
+    public void sync() {
+        ChunkVectorRepo.EmbeddingVersions stored = chunkVectorRepo.findEmbeddingVersions();
+        long[] ids = stored.chunkIds();
+        long[] indexed = indexedChunkIds();
+        Arrays.sort(indexed);
+
+        // Both sorted: walk them together
+        long[] stale = new long[ids.length];
+        int staleCount = 0;
+        int added = 0;
+        int removed = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length || j < indexed.length) {
+            if (j == indexed.length || (i < ids.length && ids[i] < indexed[j])) {
+                stale[staleCount++] = ids[i++];
+                added++;
+            } else if (i == ids.length || indexed[j] < ids[i]) {
+                remove(indexed[j++]);
+                removed++;
+            } else {
+                if (versionOf(ids[i]) != stored.versions()[i]) stale[staleCount++] = ids[i];
+                i++;
+                j++;
+            }
+        }
+        load(Arrays.copyOf(stale, staleCount));
+
+        // What was just loaded may be newer than the versions read above
+        long[] versions = stored.versions().clone();
+        loadedSinceSync.entrySet().removeIf(e -> {
+            int at = Arrays.binarySearch(ids, e.getKey());
+            if (at < 0) return false;
+            versions[at] = e.getValue();
+            return true;
+        });
+        syncedIds = ids;
+        syncedVersions = versions;
+
+        afterSync();
+        if (staleCount > 0 || removed > 0) {
+            log.info("{} vector index synced: {} added, {} updated, {} removed, {} chunks",
+                    engine, added, staleCount - added, removed, size());
+            dirty = true;
+        }
+        ready = true;
+        if (dirty) {
+            persist();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Loads the current vectors of {@code chunkIds}, noting the version of each. A chunk whose
+     * embedding is gone by now is removed. Runs on the writer thread.
+     */
+    private void load(long[] chunkIds) {
+        for (int from = 0; from < chunkIds.length; from += LOAD_BATCH_SIZE) {
+            long[] batch = Arrays.copyOfRange(chunkIds, from, Math.min(chunkIds.length, from + LOAD_BATCH_SIZE));
+            Set<Long> found = new HashSet<>();
+            for (ChunkVectorRepo.StoredEmbedding e : chunkVectorRepo.findEmbeddings(batch)) {
+                add(e.chunkId(), e.repositoryId(), e.embedding());
+                loadedSinceSync.put(e.chunkId(), e.version());
+                found.add(e.chunkId());
+            }
+            for (long id : batch) {
+                if (!found.contains(id)) remove(id);
+            }
+        }
+    }
+
+    /** Version of the vector held for {@code chunkId}, or -1 if unknown. */
+    private long versionOf(long chunkId) {
+        Long loaded = loadedSinceSync.get(chunkId);
+        if (loaded != null) return loaded;
+        int at = Arrays.binarySearch(syncedIds, chunkId);
+        return at >= 0 ? syncedVersions[at] : -1;
+    }
+
+    /**
+     * Versions of the vectors held, for an engine that persists its state; see
+     * {@link #restoreVersions}. Runs on the writer thread, or at shutdown once it has stopped.
+     */
+    protected ChunkVectorRepo.EmbeddingVersions indexedVersions() {
+        Map<Long, Long> versions = new TreeMap<>(loadedSinceSync);
+        long[] ids = new long[syncedIds.length + versions.size()];
+        long[] out = new long[ids.length];
+        int n = 0;
+        int i = 0;
+        for (Map.Entry<Long, Long> e : versions.entrySet()) {
+            while (i < syncedIds.length && syncedIds[i] < e.getKey()) {
+                ids[n] = syncedIds[i];
+                out[n++] = syncedVersions[i++];
+            }
+            if (i < syncedIds.length && syncedIds[i] == e.getKey()) i++;
+            ids[n] = e.getKey();
+            out[n++] = e.getValue();
+        }
+        while (i < syncedIds.length) {
+            ids[n] = syncedIds[i];
+            out[n++] = syncedVersions[i++];
+        }
+        return new ChunkVectorRepo.EmbeddingVersions(Arrays.copyOf(ids, n), Arrays.copyOf(out, n));
+    }
+
+    /**
+     * Restores the versions persisted with the engine's state, from {@link #restore()}. Vectors
+     * without a version are reloaded by the first sync.
+     */
+    protected void restoreVersions(ChunkVectorRepo.EmbeddingVersions versions) {
+        syncedIds = versions.chunkIds();
+        syncedVersions = versions.versions();
+        loadedSinceSync.clear();
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; searches use what is already indexed (or pgvector until ready)
+            log.warn("{} vector index sync failed: {}", engine, e.getMessage());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rag.vector-index.size", this, LocalVectorIndex::size)
+                .tag("engine", engine)
+                .description("Chunks held in the in-process vector index")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        writer.shutdown();
+        if (writer.awaitTermination(30, TimeUnit.SECONDS) && dirty) {
+            persist();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.rag.backend.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * A binary heap of (node, squared distance) pairs over primitive arrays, ordered nearest-first or
+ * farthest-first. A farthest-first heap capped at k holds the k nearest seen so far.
+ */
+final class NodeHeap {
+    private final boolean farthestFirst;
+    private int[] nodes;
+    private float[] dists;
+    private int size;
+
+    NodeHeap(boolean farthestFirst, int capacity) {
+        this.farthestFirst = farthestFirst;
+        this.nodes = new int[Math.max(4, capacity)];
+        this.dists = new float[nodes.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    float topDistance() {
+        return dists[0];
+    }
+
+    void push(int node, float d) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            dists = Arrays.copyOf(dists, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(d, dists[parent])) break;
+            nodes[i] = nodes[parent];
+            dists[i] = dists[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        dists[i] = d;
+    }
+
+    int pop() {
+        int top = nodes[0];
+        int node = nodes[--size];
+        float d = dists[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(dists[child + 1], dists[child])) child++;
+            if (!before(dists[child], d)) break;
+            nodes[i] = nodes[child];
+            dists[i] = dists[child];
+            i = child;
+        }
+        nodes[i] = node;
+        dists[i] = d;
+        return top;
+    }
+
+    private boolean before(float a, float b) {
+        return farthestFirst ? a > b : a < b;
+    }
+}
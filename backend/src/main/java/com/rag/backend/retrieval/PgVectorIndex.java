@@ -0,0 +1,45 @@
+package com.rag.backend.retrieval;
+
+import com.rag.backend.repo.ChunkVectorRepo;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Vector search in PostgreSQL, the default engine.
+ *
+ * Each search runs in its own read-only transaction so hnsw.ef_search can be set with
+ * {@code set_config(..., true)} (the equivalent of SET LOCAL) without leaking into pooled
+ * connections. Repository-scoped searches use that repository's partial HNSW index, so they return
+ * the k nearest chunks of the repository rather than whatever survives filtering a global top-k.
+ */
+@Component
+public class PgVectorIndex implements VectorIndex {
+
+    private final ChunkVectorRepo chunkVectorRepo;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate readOnlyTx;
+
+    public PgVectorIndex(ChunkVectorRepo chunkVectorRepo, JdbcTemplate jdbc, PlatformTransactionManager transactionManager) {
+        this.chunkVectorRepo = chunkVectorRepo;
+        this.jdbc = jdbc;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    @Override
+    public List<ChunkVectorRepo.RetrievedChunk> searchTopK(float[] queryEmbedding, int k, Long repositoryId, int efSearch) {
+        return readOnlyTx.execute(status -> {
+            jdbc.queryForObject("SELECT set_config('hnsw.ef_search', ?, true)", String.class, Integer.toString(efSearch));
+            if (repositoryId == null) {
+                return chunkVectorRepo.searchTopK(queryEmbedding, k);
+            }
+            // A generic plan would not match the partial index predicate
+            jdbc.queryForObject("SELECT set_config('plan_cache_mode', 'force_custom_plan', true)", String.class);
+            return chunkVectorRepo.searchTopKInRepository(repositoryId, queryEmbedding, k);
+        });
+    }
+}
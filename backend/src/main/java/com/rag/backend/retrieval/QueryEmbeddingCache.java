@@ -0,0 +1,153 @@
+package com.rag.backend.retrieval;
+
+import com.rag.backend.ai.EmbeddingService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process cache of question embeddings for /api/chat and /api/retrieve.
+ *
+ * Entries are keyed by model and normalized question text (Unicode NFC, trimmed, whitespace collapsed;
+ * case is kept because identifiers are case-sensitive). The cache is bounded by size (LRU) and by TTL.
+ * Concurrent misses for the same key share a single provider call. Hit/miss counters are published
+ * as rag.query-embedding-cache.* meters.
+ */
+@Component
+public class QueryEmbeddingCache implements MeterBinder {
+
+    private record Entry(float[] embedding, long expiresAtNanos) {}
+
+    private final EmbeddingService embeddingService;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+
+    // access-ordered, so iteration order is least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public QueryEmbeddingCache(
+            EmbeddingService embeddingService,
+            @Value("${rag.query-embedding-cache.max-entries:10000}") int maxEntries,
+            @Value("${rag.query-embedding-cache.ttl:PT1H}") Duration ttl) {
+        this(embeddingService, maxEntries, ttl, System::nanoTime);
+    }
+
+    public QueryEmbeddingCache(EmbeddingService embeddingService, int maxEntries, Duration ttl, LongSupplier nanoClock) {
+        this.embeddingService = embeddingService;
+        this.maxEntries = Math.max(0, maxEntries);
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /** Returns the embedding of {@code question}, from the cache when possible. */
+    public float[] embed(String question) {
+        String key = key(question);
+
+        float[] cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached.clone();
+        }
+
+        CompletableFuture<float[]> mine = new CompletableFuture<>();
+        CompletableFuture<float[]> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            // Someone is already embedding this question; wait for their result
+            coalesced.increment();
+            try {
+                return leader.join().clone();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        try {
+            // A previous leader may have finished between our lookup and putIfAbsent
+            float[] embedding = lookup(key);
+            if (embedding != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                embedding = embeddingService.embed(question);
+                store(key, embedding);
+            }
+            mine.complete(embedding);
+            return embedding.clone();
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rag.query-embedding-cache.hits", hits, LongAdder::sum).register(registry);
+        FunctionCounter.builder("rag.query-embedding-cache.misses", misses, LongAdder::sum).register(registry);
+        FunctionCounter.builder("rag.query-embedding-cache.coalesced", coalesced, LongAdder::sum)
+                .description("Requests that waited on an identical in-flight embedding call")
+                .register(registry);
+        FunctionCounter.builder("rag.query-embedding-cache.evictions", evictions, LongAdder::sum).register(registry);
+        Gauge.builder("rag.query-embedding-cache.size", this, QueryEmbeddingCache::size).register(registry);
+    }
+
+    private String key(String question) {
+        String normalized = Normalizer.normalize(question, Normalizer.Form.NFC).trim().replaceAll("\\s+", " ");
+        return embeddingService.getModel() + '\u0000' + normalized;
+    }
+
+    private synchronized float[] lookup(String key) {
+        Entry e = entries.get(key);
+        if (e == null) return null;
+        if (nanoClock.getAsLong() - e.expiresAtNanos() >= 0) {
+            entries.remove(key);
+            evictions.increment();
+            return null;
+        }
+        return e.embedding();
+    }
+
+    private synchronized void store(String key, float[] embedding) {
+        if (maxEntries == 0) return;
+        entries.put(key, new Entry(embedding.clone(), nanoClock.getAsLong() + ttlNanos));
+        var it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+}
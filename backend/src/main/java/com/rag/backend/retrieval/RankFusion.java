@@ -0,0 +1,41 @@
+package com.rag.backend.retrieval;
+
+import com.rag.backend.repo.ChunkVectorRepo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Reciprocal rank fusion of ranked retrieval results. */
+public final class RankFusion {
+
+    /** The constant from the original RRF paper; damps the advantage of the very top ranks. */
+    public static final int DEFAULT_K = 60;
+
+    private RankFusion() {}
+
+    /**
+     * Scores each chunk as the sum of 1 / (k + rank) over the rankings it appears in (rank starting
+     * at 1) and returns the best {@code limit}. Ties keep the order in which chunks were first seen,
+     * so earlier rankings win ties.
+     */
+    public static List<ChunkVectorRepo.RetrievedChunk> fuse(
+            List<List<ChunkVectorRepo.RetrievedChunk>> rankings, int k, int limit) {
+        Map<Long, ChunkVectorRepo.RetrievedChunk> chunks = new LinkedHashMap<>();
+        Map<Long, Double> scores = new LinkedHashMap<>();
+        for (List<ChunkVectorRepo.RetrievedChunk> ranking : rankings) {
+            for (int i = 0; i < ranking.size(); i++) {
+                ChunkVectorRepo.RetrievedChunk c = ranking.get(i);
+                // Keep the copy that has a distance, if any leg computed one
+                chunks.merge(c.id(), c, (a, b) -> a.distance() != null ? a : b);
+                scores.merge(c.id(), 1.0 / (k + i + 1), Double::sum);
+            }
+        }
+
+        List<Long> ids = new ArrayList<>(scores.keySet());
+        ids.sort(Comparator.comparingDouble((Long id) -> scores.get(id)).reversed());
+        return ids.stream().limit(limit).map(chunks::get).toList();
+    }
+}
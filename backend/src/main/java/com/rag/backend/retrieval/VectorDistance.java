@@ -0,0 +1,33 @@
+package com.rag.backend.retrieval;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Squared L2 distance with the Vector API, so the JIT emits the widest SIMD the CPU has (AVX2, AVX-512,
+ * NEON) instead of a scalar loop. Needs {@code --add-modules jdk.incubator.vector} at compile and run
+ * time; the Maven build, tests and Docker image pass it.
+ */
+final class VectorDistance {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorDistance() {}
+
+    static float squaredL2(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            FloatVector d = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            sum = d.fma(d, sum);
+        }
+        float s = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            s += d * d;
+        }
+        return s;
+    }
+}
@@ -0,0 +1,27 @@
+package com.rag.backend.retrieval;
+
+import com.rag.backend.repo.ChunkVectorRepo;
+
+import java.util.List;
+
+/**
+ * Nearest-neighbour search over chunk embeddings: the vector leg of {@link ChunkRetriever}.
+ *
+ * {@link PgVectorIndex} queries pgvector's HNSW indexes. The in-process engines extend
+ * {@link LocalVectorIndex} and only read the winning chunks from the database:
+ * {@link InMemoryVectorIndex} (rag.retrieval.engine=in-memory) walks an HNSW graph and
+ * {@link ExactVectorIndex} (rag.retrieval.engine=exact) scans every embedding.
+ */
+public interface VectorIndex {
+
+    /** A search hit of an in-process engine; distance is the L2 distance to the query. */
+    record Neighbor(long chunkId, float distance) {}
+
+    /**
+     * Top {@code k} chunks by L2 distance, closest first, with their file paths.
+     *
+     * @param repositoryId only search this repository's chunks; null searches all
+     * @param efSearch     HNSW candidate list size, already at least k
+     */
+    List<ChunkVectorRepo.RetrievedChunk> searchTopK(float[] queryEmbedding, int k, Long repositoryId, int efSearch);
+}
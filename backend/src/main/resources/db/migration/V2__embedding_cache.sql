@@ -0,0 +1,21 @@
+-- Content-addressed embedding cache: identical chunk content (same SHA-256) embedded with the
+-- same model and dimensions always yields the same vector, so it is only paid for once.
+CREATE TABLE IF NOT EXISTS embedding_cache (
+  content_hash TEXT NOT NULL,
+  model        TEXT NOT NULL,
+  dimensions   INT NOT NULL,
+  embedding    VECTOR(1536) NOT NULL,
+  created_at   TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+  PRIMARY KEY (content_hash, model, dimensions)
+);
+
+-- Seed the cache with what has already been embedded (the model was hard-coded until now)
+INSERT INTO embedding_cache (content_hash, model, dimensions, embedding)
+SELECT DISTINCT ON (content_hash) content_hash, 'text-embedding-3-small', 1536, embedding
+FROM chunks
+WHERE content_hash IS NOT NULL
+AND embedding IS NOT NULL
+ON CONFLICT DO NOTHING;
+
+-- Backfills page through chunks that still need an embedding
+CREATE INDEX IF NOT EXISTS idx_chunks_missing_embedding ON chunks(id) WHERE embedding IS NULL;
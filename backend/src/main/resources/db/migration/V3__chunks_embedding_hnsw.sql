@@ -0,0 +1,7 @@
+-- Approximate nearest-neighbour index for retrieval. searchTopK orders by L2 distance (<->),
+-- so the operator class is vector_l2_ops; without it every query scans every chunk.
+-- m / ef_construction are pgvector's defaults, spelled out so a rebuild is deliberate.
+-- Query-time recall is tuned per transaction through hnsw.ef_search (see ChunkRetriever).
+CREATE INDEX IF NOT EXISTS idx_chunks_embedding_hnsw
+  ON chunks USING hnsw (embedding vector_l2_ops)
+  WITH (m = 16, ef_construction = 64);
@@ -0,0 +1,32 @@
+-- Repository-scoped retrieval. chunks carries its repository id so a per-repository partial HNSW
+-- index can serve "nearest chunks of repo X" directly, instead of post-filtering a global ANN
+-- result (which can return fewer than k rows).
+ALTER TABLE chunks ADD COLUMN IF NOT EXISTS repository_id BIGINT;
+
+UPDATE chunks c
+SET repository_id = d.repository_id
+FROM documents d
+WHERE d.id = c.document_id
+AND c.repository_id IS NULL;
+
+ALTER TABLE chunks ALTER COLUMN repository_id SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_chunks_repository ON chunks(repository_id);
+
+-- Bulk indexing writes repository_id itself; anything else inserting chunks gets it from the document
+CREATE OR REPLACE FUNCTION chunks_set_repository_id() RETURNS trigger AS $$
+BEGIN
+  IF NEW.repository_id IS NULL THEN
+    SELECT d.repository_id INTO NEW.repository_id FROM documents d WHERE d.id = NEW.document_id;
+  END IF;
+  RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_chunks_set_repository_id
+  BEFORE INSERT ON chunks
+  FOR EACH ROW EXECUTE FUNCTION chunks_set_repository_id();
+
+-- The partial HNSW indexes themselves (idx_chunks_embedding_repo_{id}) are not built here: a build
+-- inside this migration would block writes to chunks for its whole duration. BulkIndexRepo builds
+-- them with CREATE INDEX CONCURRENTLY on each repository's next index run.
@@ -0,0 +1,19 @@
+-- Lexical leg of hybrid retrieval: full-text search over chunk content with a code-aware tokenizer.
+--
+-- code_search_text turns punctuation into spaces and adds a copy with camelCase / PascalCase split,
+-- so "chunkRepo.searchTopK" is searchable as chunkrepo, searchtopk, chunk, repo, search, top and k,
+-- and snake_case identifiers as their parts. The 'simple' configuration lowercases without stemming
+-- or stop words, which keeps identifiers intact. LexicalQuery builds queries with the same rules.
+CREATE OR REPLACE FUNCTION code_search_text(body TEXT) RETURNS TEXT
+LANGUAGE sql IMMUTABLE PARALLEL SAFE AS $$
+  SELECT words || ' ' || regexp_replace(
+           regexp_replace(words, '([a-z0-9])([A-Z])', '\1 \2', 'g'),
+           '([A-Z]+)([A-Z][a-z])', '\1 \2', 'g')
+  FROM (SELECT regexp_replace(body, '[^A-Za-z0-9]+', ' ', 'g') AS words) w
+$$;
+
+ALTER TABLE chunks
+  ADD COLUMN IF NOT EXISTS content_tsv TSVECTOR
+  GENERATED ALWAYS AS (to_tsvector('simple', code_search_text(content))) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_chunks_content_tsv ON chunks USING gin (content_tsv);
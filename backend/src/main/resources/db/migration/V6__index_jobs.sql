@@ -0,0 +1,31 @@
+-- Background indexing jobs (POST /api/index). A job row is a checkpoint: its phase says which step
+-- to resume from after a restart, and its counters are as of the last checkpoint.
+CREATE TABLE IF NOT EXISTS index_jobs (
+  id                   BIGSERIAL PRIMARY KEY,
+  repo_name            TEXT NOT NULL,
+  root_path            TEXT NOT NULL,
+  incremental          BOOLEAN NOT NULL,
+  status               TEXT NOT NULL,
+  phase                TEXT NOT NULL,
+  repository_id        BIGINT,
+  files_scanned        INT NOT NULL DEFAULT 0,
+  files_indexed        INT NOT NULL DEFAULT 0,
+  files_skipped        INT NOT NULL DEFAULT 0,
+  files_unchanged      INT NOT NULL DEFAULT 0,
+  documents_upserted   INT NOT NULL DEFAULT 0,
+  documents_deleted    INT NOT NULL DEFAULT 0,
+  chunks_created       INT NOT NULL DEFAULT 0,
+  chunks_reused        INT NOT NULL DEFAULT 0,
+  chunks_embedded      INT NOT NULL DEFAULT 0,
+  chunks_from_cache    INT NOT NULL DEFAULT 0,
+  error                TEXT,
+  embedding_error      TEXT,
+  created_at           TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+  started_at           TIMESTAMPTZ,
+  embedding_started_at TIMESTAMPTZ,
+  finished_at          TIMESTAMPTZ,
+  updated_at           TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+-- Startup looks for jobs to resume
+CREATE INDEX IF NOT EXISTS idx_index_jobs_unfinished ON index_jobs(id) WHERE status IN ('QUEUED', 'RUNNING');
@@ -0,0 +1,19 @@
+-- A per-chunk version, bumped whenever the embedding changes however it is written (backfill, a
+-- copy from the embedding cache, manual SQL). The in-process vector engines compare it with the
+-- version they hold, so changed vectors are reloaded without reading every vector on each sync.
+CREATE SEQUENCE IF NOT EXISTS chunks_embedding_version_seq;
+
+ALTER TABLE chunks ADD COLUMN IF NOT EXISTS embedding_version BIGINT NOT NULL DEFAULT 0;
+
+CREATE OR REPLACE FUNCTION chunks_bump_embedding_version() RETURNS trigger AS $$
+BEGIN
+  IF TG_OP = 'INSERT' OR NEW.embedding IS DISTINCT FROM OLD.embedding THEN
+    NEW.embedding_version := nextval('chunks_embedding_version_seq');
+  END IF;
+  RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_chunks_bump_embedding_version
+  BEFORE INSERT OR UPDATE OF embedding ON chunks
+  FOR EACH ROW EXECUTE FUNCTION chunks_bump_embedding_version();
@@ -0,0 +1,112 @@
+package com.rag.backend;
+
+import com.rag.backend.repo.BulkIndexRepo;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BulkIndexRepoTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final BulkIndexRepo repo = new BulkIndexRepo(jdbc);
+
+    @Test
+    void documentIds_comeFromTheSequenceInOneQuery() {
+        when(jdbc.queryForList(contains("nextval"), eq(Long.class), eq("documents_id_seq"), eq(3)))
+                .thenReturn(List.of(41L, 42L, 43L));
+
+        assertThat(repo.allocateDocumentIds(3)).containsExactly(41, 42, 43);
+        assertThat(repo.allocateDocumentIds(0)).isEmpty();
+        verify(jdbc, times(1)).queryForList(anyString(), eq(Long.class), any(Object[].class));
+    }
+
+    @Test
+    void emptyBatches_doNotReachTheDatabase() {
+        repo.insertDocuments(List.of());
+        repo.updateDocumentHashes(List.of());
+        repo.insertChunks(List.of());
+
+        verifyNoInteractions(jdbc);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void chunks_areSentAsOneJdbcBatch_withEveryColumnBound() throws Exception {
+        List<BulkIndexRepo.ChunkRow> rows = List.of(
+                new BulkIndexRepo.ChunkRow(7, 100, 0, 1, 40, "first", "h0"),
+                new BulkIndexRepo.ChunkRow(7, 100, 1, 41, 52, "second", "h1"));
+        ArgumentCaptor<ParameterizedPreparedStatementSetter<BulkIndexRepo.ChunkRow>> setter =
+                ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+
+        repo.insertChunks(rows);
+
+        verify(jdbc).batchUpdate(contains("INSERT INTO chunks"), eq(rows), eq(1000), setter.capture());
+        PreparedStatement ps = mock(PreparedStatement.class);
+        setter.getValue().setValues(ps, rows.get(1));
+        verify(ps).setLong(1, 7);
+        verify(ps).setLong(2, 100);
+        verify(ps).setInt(3, 1);
+        verify(ps).setInt(4, 41);
+        verify(ps).setInt(5, 52);
+        verify(ps).setString(6, "second");
+        verify(ps).setString(7, "h1");
+    }
+
+    @Test
+    void aValidRepositoryIndex_isLeftAlone() {
+        givenIndexValidity(true);
+
+        repo.ensureRepositoryVectorIndex(7);
+
+        verify(jdbc, never()).execute(anyString());
+    }
+
+    @Test
+    void aMissingRepositoryIndex_isBuiltConcurrently() {
+        givenIndexValidity(null);
+
+        repo.ensureRepositoryVectorIndex(7);
+
+        verify(jdbc).execute(argThat((String sql) -> sql.startsWith("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_chunks_embedding_repo_7 ")
+                && sql.endsWith("WHERE repository_id = 7")));
+        verify(jdbc, never()).execute(startsWith("DROP"));
+    }
+
+    @Test
+    void anInvalidIndexFromAnInterruptedBuild_isDroppedAndRebuilt() {
+        givenIndexValidity(false);
+
+        repo.ensureRepositoryVectorIndex(7);
+
+        InOrder inOrder = inOrder(jdbc);
+        inOrder.verify(jdbc).execute("DROP INDEX CONCURRENTLY IF EXISTS idx_chunks_embedding_repo_7");
+        inOrder.verify(jdbc).execute(startsWith("CREATE INDEX CONCURRENTLY"));
+    }
+
+    @Test
+    void theIndexesOfOlderSameNameRepositories_areDroppedConcurrently() {
+        when(jdbc.queryForList(contains("o.id < r.id"), eq(Long.class), eq(9L))).thenReturn(List.of(3L, 7L));
+
+        assertThat(repo.dropSupersededRepositoryVectorIndexes(9)).isEqualTo(2);
+
+        verify(jdbc).execute("DROP INDEX CONCURRENTLY IF EXISTS idx_chunks_embedding_repo_3");
+        verify(jdbc).execute("DROP INDEX CONCURRENTLY IF EXISTS idx_chunks_embedding_repo_7");
+    }
+
+    private void givenIndexValidity(Boolean valid) {
+        when(jdbc.queryForObject(contains("indisvalid"), eq(Boolean.class), eq("idx_chunks_embedding_repo_7")))
+                .thenReturn(valid);
+    }
+}
@@ -15,6 +15,7 @@ import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -27,7 +28,7 @@ class ChatControllerCodeReviewIT {
 
     @Test
     void code_review_returns_200() {
-        when(ragChatService.answerWithMode(eq("Hi"), eq(RagChatService.Mode.CODE_REVIEW)))
+        when(ragChatService.answerWithMode(eq("Hi"), eq(RagChatService.Mode.CODE_REVIEW), isNull()))
                 .thenReturn(new RagAnswer("code review answer", List.of()));
 
         ResponseEntity<RagAnswer> res =
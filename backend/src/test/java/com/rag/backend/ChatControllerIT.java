@@ -14,6 +14,8 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -40,7 +42,7 @@ class ChatControllerIT {
         ChatRequest body = new ChatRequest("hello");
         HttpEntity<ChatRequest> req = new HttpEntity<>(body, headers);
 
-        when(ragChatService.answerQuestion("hello"))
+        when(ragChatService.answerQuestion(eq("hello"), isNull()))
                 .thenReturn(new RagAnswer("hello from test", List.of()));
 
         ResponseEntity<RagAnswer> resp =
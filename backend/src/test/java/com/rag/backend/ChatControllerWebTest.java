@@ -1,6 +1,7 @@
 package com.rag.backend;
 
 import com.rag.backend.controller.ChatController;
+import com.rag.backend.dto.Citation;
 import com.rag.backend.dto.RagAnswer;
 import com.rag.backend.rag.RagChatService;
 import org.junit.jupiter.api.Test;
@@ -9,12 +10,19 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -26,13 +34,13 @@ class ChatControllerWebTest {
     @MockBean RagChatService ragChatService;
 
     // These are constructor deps of ChatController too; WebMvcTest needs them mocked
-    @MockBean com.rag.backend.ai.EmbeddingService embeddingService;
-    @MockBean com.rag.backend.repo.ChunkRepo chunkRepo;
+    @MockBean com.rag.backend.retrieval.QueryEmbeddingCache queryEmbeddingCache;
+    @MockBean com.rag.backend.retrieval.ChunkRetriever chunkRetriever;
 
     @Test
     void postChat_delegatesToRagChatService_andReturnsJson() throws Exception {
         RagAnswer ra = new RagAnswer("Hello from RAG", List.of());
-        when(ragChatService.answerQuestion(eq("Hi"))).thenReturn(ra);
+        when(ragChatService.answerQuestion(eq("Hi"), isNull())).thenReturn(ra);
 
         MediaType contentType = Objects.requireNonNull(MediaType.APPLICATION_JSON, "Content type must not be null");
         mvc.perform(post("/api/chat")
@@ -45,4 +53,30 @@ class ChatControllerWebTest {
                 .andExpect(jsonPath("$.answer").value("Hello from RAG"))
                 .andExpect(jsonPath("$.citations").isArray());
     }
+
+    @Test
+    void postChatStream_sendsCitationsThenDeltasThenDone() throws Exception {
+        var prepared = new RagChatService.PreparedAnswer("sys", "user",
+                List.of(new Citation("src/A.java", 1, 9, "class A {}")), null, 42);
+        when(ragChatService.prepare(eq("Hi"), eq(RagChatService.Mode.DEFAULT), isNull())).thenReturn(prepared);
+        doAnswer(inv -> {
+            Consumer<String> onDelta = inv.getArgument(1);
+            onDelta.accept("Hel");
+            onDelta.accept("lo");
+            return null;
+        }).when(ragChatService).streamAnswer(eq(prepared), any(), any());
+
+        MvcResult result = mvc.perform(post("/api/chat/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"message\":\"Hi\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        String body = result.getResponse().getContentAsString();
+        assertThat(body).contains("event:citations", "src/A.java", "event:delta", "event:done");
+        assertThat(body.indexOf("event:citations")).isLessThan(body.indexOf("\"content\":\"Hel\""));
+        assertThat(body.indexOf("\"content\":\"Hel\"")).isLessThan(body.indexOf("\"content\":\"lo\""));
+        assertThat(body.indexOf("\"content\":\"lo\"")).isLessThan(body.indexOf("event:done"));
+    }
 }
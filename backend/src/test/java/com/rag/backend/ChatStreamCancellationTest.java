@@ -0,0 +1,77 @@
+package com.rag.backend;
+
+import com.rag.backend.ai.StreamCancellation;
+import com.rag.backend.controller.ChatController;
+import com.rag.backend.dto.ChatRequest;
+import com.rag.backend.rag.RagChatService;
+import com.rag.backend.retrieval.ChunkRetriever;
+import com.rag.backend.retrieval.QueryEmbeddingCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatStreamCancellationTest {
+
+    @Test
+    void cancel_closesTheAttachedStream_once_andAStreamAttachedLaterAtOnce() {
+        StreamCancellation cancellation = new StreamCancellation();
+        CountingStream open = new CountingStream();
+        assertThat(cancellation.attach(open)).isTrue();
+
+        cancellation.cancel();
+        cancellation.cancel();
+
+        assertThat(cancellation.isCancelled()).isTrue();
+        assertThat(open.closes).isEqualTo(1);
+        CountingStream late = new CountingStream();
+        assertThat(cancellation.attach(late)).isFalse();
+        assertThat(late.closes).isEqualTo(1);
+    }
+
+    @Test
+    void controllerShutdown_cancelsStreamsStillGenerating() throws Exception {
+        RagChatService ragChatService = mock(RagChatService.class);
+        var prepared = new RagChatService.PreparedAnswer("sys", "user", List.of(), null, 10);
+        when(ragChatService.prepare(eq("Hi"), eq(RagChatService.Mode.DEFAULT), isNull())).thenReturn(prepared);
+        CountDownLatch generating = new CountDownLatch(1);
+        AtomicReference<StreamCancellation> seen = new AtomicReference<>();
+        doAnswer(inv -> {
+            StreamCancellation cancellation = inv.getArgument(2);
+            seen.set(cancellation);
+            generating.countDown();
+            // Stands in for a read blocked on the next delta, which closing the stream fails
+            while (!cancellation.isCancelled()) Thread.sleep(5);
+            throw new IllegalStateException("stream closed");
+        }).when(ragChatService).streamAnswer(eq(prepared), any(), any());
+
+        ChatController controller = new ChatController(
+                mock(QueryEmbeddingCache.class), mock(ChunkRetriever.class), ragChatService, Duration.ofMinutes(5));
+        controller.chatStream(new ChatRequest("Hi"));
+        assertThat(generating.await(5, TimeUnit.SECONDS)).isTrue();
+
+        controller.shutdown();
+
+        assertThat(seen.get().isCancelled()).isTrue();
+    }
+
+    private static final class CountingStream implements AutoCloseable {
+        int closes;
+
+        @Override
+        public void close() {
+            closes++;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.rag.backend;
+
+import com.rag.backend.indexing.Chunker;
+import com.rag.backend.indexing.ChunkingStrategy;
+import com.rag.backend.indexing.ContentDefinedChunker;
+import com.rag.backend.indexing.Hashing;
+import com.rag.backend.indexing.SourceText;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentDefinedChunkerTest {
+
+    private final ContentDefinedChunker chunker = new ContentDefinedChunker(20, 60);
+
+    @Test
+    void anEditNearTheTop_changesOnlyTheChunksAroundIt() throws Exception {
+        String original = javaClass(40);
+        String edited = original.replaceFirst("int x0 = 0;", "int x0 = 0;\n        int inserted = 1;");
+
+        Set<String> before = hashes(chunker, original);
+        Set<String> after = hashes(chunker, edited);
+        Set<String> changed = new HashSet<>(after);
+        changed.removeAll(before);
+
+        assertThat(before).hasSizeGreaterThan(5);
+        assertThat(changed).hasSizeLessThanOrEqualTo(2);
+
+        // Fixed windows shift with the inserted line, so every later chunk changes
+        Set<String> changedByLines = new HashSet<>(hashes(new Chunker(60, 10), edited));
+        changedByLines.removeAll(hashes(new Chunker(60, 10), original));
+        assertThat(changedByLines.size()).isGreaterThan(changed.size() + 2);
+    }
+
+    @Test
+    void chunks_tileTheFile_withinTheSizeLimits_andCutAtDeclarations() throws Exception {
+        String source = javaClass(40);
+        List<Chunker.Chunk> chunks = chunk(chunker, source);
+        String[] lines = source.lines().toArray(String[]::new);
+
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunker.Chunk c = chunks.get(i);
+            assertThat(c.chunkIndex()).isEqualTo(i);
+            assertThat(c.startLine()).isEqualTo(i == 0 ? 1 : chunks.get(i - 1).endLine() + 1);
+            int size = c.endLine() - c.startLine() + 1;
+            assertThat(size).isLessThanOrEqualTo(60);
+            if (i < chunks.size() - 1) {
+                assertThat(size).isGreaterThanOrEqualTo(20);
+                assertThat(lines[c.endLine()].trim()).startsWith("public int method");
+            }
+        }
+        assertThat(chunks.get(chunks.size() - 1).endLine()).isEqualTo(lines.length);
+    }
+
+    @Test
+    void textWithoutBlankLines_isCutByContent_andResynchronisesAfterAnEdit() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) sb.append("\"key").append(i).append("\": ").append(i * 7919 % 1000).append(",\n");
+        String original = sb.toString();
+        String edited = "\"first\": 0,\n" + original;
+
+        List<Chunker.Chunk> chunks = chunk(chunker, original);
+        assertThat(chunks).allSatisfy(c -> assertThat(c.endLine() - c.startLine() + 1).isBetween(1, 60));
+
+        Set<String> changed = new HashSet<>(hashes(chunker, edited));
+        changed.removeAll(hashes(chunker, original));
+        assertThat(changed).hasSizeLessThanOrEqualTo(2);
+    }
+
+    private static String javaClass(int methods) {
+        StringBuilder sb = new StringBuilder("package demo;\n\nimport java.util.List;\n\npublic class Demo {\n");
+        for (int m = 0; m < methods; m++) {
+            sb.append("\n    public int method").append(m).append("(List<Integer> values) {\n");
+            sb.append("        int x").append(m).append(" = ").append(m).append(";\n");
+            for (int l = 0; l < 3 + m % 5; l++) {
+                sb.append("        x").append(m).append(" += values.get(").append(l).append(");\n");
+            }
+            sb.append("        return x").append(m).append(";\n    }\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private static List<Chunker.Chunk> chunk(ChunkingStrategy strategy, String source) throws Exception {
+        List<Chunker.Chunk> chunks = new ArrayList<>();
+        strategy.chunk("Demo.java", SourceText.of(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8))), chunks::add);
+        return chunks;
+    }
+
+    private static Set<String> hashes(ChunkingStrategy strategy, String source) throws Exception {
+        Set<String> hashes = new HashSet<>();
+        for (Chunker.Chunk c : chunk(strategy, source)) hashes.add(Hashing.sha256(c.content()));
+        return hashes;
+    }
+}
@@ -0,0 +1,116 @@
+package com.rag.backend;
+
+import com.rag.backend.rag.ContextAssembler;
+import com.rag.backend.repo.ChunkVectorRepo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextAssemblerTest {
+
+    private final ContextAssembler assembler = new ContextAssembler(6000, 0.8, "gpt-4o");
+
+    @Test
+    void overlappingAndAdjacentChunks_ofOneFile_becomeOneRange_withEachLineOnce() {
+        List<ContextAssembler.ContextBlock> blocks = assembler.assemble(List.of(
+                chunk("A.java", 101, 220),
+                chunk("B.java", 1, 10),
+                chunk("A.java", 1, 120),
+                chunk("A.java", 221, 230)));
+
+        assertThat(blocks).extracting(ContextAssembler.ContextBlock::filePath).containsExactly("A.java", "B.java");
+        ContextAssembler.ContextBlock a = blocks.get(0);
+        assertThat(a.startLine()).isEqualTo(1);
+        assertThat(a.endLine()).isEqualTo(230);
+        assertThat(a.content()).isEqualTo(lines("A.java", 1, 230));
+        // Ranked by its best chunk
+        assertThat(a.rank()).isZero();
+    }
+
+    @Test
+    void theSamePath_inTwoDocuments_staysTwoBlocks() {
+        // README.md of two indexed repositories, with overlapping line ranges
+        List<ContextAssembler.ContextBlock> blocks = assembler.assemble(List.of(
+                chunk(1, "README.md", 1, 30),
+                chunk(2, "README.md", 21, 50)));
+
+        assertThat(blocks).extracting(ContextAssembler.ContextBlock::filePath).containsExactly("README.md", "README.md");
+        assertThat(blocks).extracting(ContextAssembler.ContextBlock::startLine).containsExactly(1, 21);
+        assertThat(blocks.get(0).content()).isEqualTo(lines("README.md", 1, 30));
+        assertThat(blocks.get(1).content()).isEqualTo(lines("README.md", 21, 50));
+    }
+
+    @Test
+    void nearDuplicateOfABetterHit_isDropped() {
+        ChunkVectorRepo.RetrievedChunk original = chunk("src/Util.java", 1, 20);
+        ChunkVectorRepo.RetrievedChunk copy = new ChunkVectorRepo.RetrievedChunk(
+                99L, 99L, "vendor/Util.java", 1, 20, original.content(), 0.2);
+        ChunkVectorRepo.RetrievedChunk other = chunk("src/Other.java", 1, 20);
+
+        assertThat(assembler.assemble(List.of(original, copy, other)))
+                .extracting(ContextAssembler.ContextBlock::filePath).containsExactly("src/Util.java", "src/Other.java");
+    }
+
+    @Test
+    void aSmallerBudget_thanTheConfiguredOne_wins() {
+        List<ChunkVectorRepo.RetrievedChunk> chunks = List.of(chunk("A.java", 1, 40), chunk("B.java", 1, 40));
+        int oneBlock = assembler.countTokens(lines("A.java", 1, 40)) + 10;
+
+        assertThat(assembler.assemble(chunks)).hasSize(2);
+        assertThat(assembler.assemble(chunks, oneBlock))
+                .extracting(ContextAssembler.ContextBlock::filePath).containsExactly("A.java");
+    }
+
+    @Test
+    void blocksArePackedBestFirst_intoTheTokenBudget() {
+        // Room for two 40-line blocks and the 5-line one, not for a third 40-line block
+        int budget = 2 * assembler.countTokens(lines("A.java", 1, 40)) + assembler.countTokens(lines("D.java", 1, 5)) + 10;
+        ContextAssembler small = new ContextAssembler(budget, 0.8, "gpt-4o");
+        List<ContextAssembler.ContextBlock> blocks = small.assemble(List.of(
+                chunk("A.java", 1, 40), chunk("B.java", 1, 40), chunk("C.java", 1, 40), chunk("D.java", 1, 5)));
+
+        assertThat(blocks).extracting(ContextAssembler.ContextBlock::filePath).containsExactly("A.java", "B.java", "D.java");
+
+        // A single block larger than the budget is cut to its leading lines
+        ContextAssembler.ContextBlock cut = new ContextAssembler(100, 0.8, "gpt-4o").assemble(List.of(chunk("A.java", 1, 40))).get(0);
+        assertThat(cut.startLine()).isEqualTo(1);
+        assertThat(cut.endLine()).isBetween(2, 39);
+        assertThat(assembler.countTokens(cut.content())).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    void aSingleLineOverTheBudget_isCutToFit_andNoBudgetMeansNoBlocks() {
+        // Minified code: the whole chunk is one line, far over the budget
+        String minified = IntStream.range(0, 500).mapToObj(i -> "\"k" + i + "\":" + i).collect(Collectors.joining(",", "{", "}"));
+        List<ChunkVectorRepo.RetrievedChunk> chunks = List.of(
+                new ChunkVectorRepo.RetrievedChunk(1L, 1L, "app.min.json", 1, 1, minified, 0.1));
+
+        List<ContextAssembler.ContextBlock> blocks = assembler.assemble(chunks, 50);
+        assertThat(blocks).hasSize(1);
+        assertThat(blocks.get(0).content()).isNotEmpty();
+        assertThat(minified).startsWith(blocks.get(0).content());
+        assertThat(assembler.countTokens(blocks.get(0).content())).isLessThanOrEqualTo(50);
+        assertThat(blocks.get(0).endLine()).isEqualTo(1);
+
+        assertThat(assembler.assemble(chunks, 0)).isEmpty();
+        assertThat(assembler.assemble(chunks, -20)).isEmpty();
+    }
+
+    private static ChunkVectorRepo.RetrievedChunk chunk(String file, int start, int end) {
+        return chunk(file.hashCode(), file, start, end);
+    }
+
+    private static ChunkVectorRepo.RetrievedChunk chunk(long documentId, String file, int start, int end) {
+        return new ChunkVectorRepo.RetrievedChunk(start, documentId, file, start, end, lines(file, start, end), 0.1);
+    }
+
+    private static String lines(String file, int start, int end) {
+        return IntStream.rangeClosed(start, end)
+                .mapToObj(i -> "    int line" + i + " = compute(\"" + file + "\", " + i + ");")
+                .collect(Collectors.joining("\n"));
+    }
+}
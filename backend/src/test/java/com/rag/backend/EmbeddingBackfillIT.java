@@ -1,20 +1,26 @@
 package com.rag.backend;
 
 import com.rag.backend.ai.EmbeddingService;
+import com.rag.backend.repo.ChunkRepo;
+import com.rag.backend.repo.ChunkVectorRepo;
+import com.rag.backend.repo.EmbeddingCacheRepo;
 import com.rag.backend.retrieval.ChunkEmbeddingService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.util.List;
 import java.util.Objects;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -24,6 +30,11 @@ class EmbeddingBackfillIT {
 
     @Autowired JdbcTemplate jdbc;
     @Autowired ChunkEmbeddingService chunkEmbeddingService;
+    @Autowired ChunkRepo chunkRepo;
+    @Autowired EmbeddingCacheRepo embeddingCacheRepo;
+    @Autowired ChunkVectorRepo chunkVectorRepo;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired ApplicationEventPublisher eventPublisher;
 
     @MockBean EmbeddingService embeddingService;
 
@@ -33,7 +44,7 @@ class EmbeddingBackfillIT {
     @BeforeEach
     void setup() {
         // IMPORTANT: clean DB so other ITs don't pollute this test
-        jdbc.execute("TRUNCATE TABLE chunks, documents, repositories RESTART IDENTITY CASCADE");
+        jdbc.execute("TRUNCATE TABLE chunks, documents, repositories, embedding_cache RESTART IDENTITY CASCADE");
 
         Long repoIdLong = jdbc.queryForObject(
                 "INSERT INTO repositories(name, root_path) VALUES ('test-repo','/tmp') RETURNING id",
@@ -50,6 +61,10 @@ class EmbeddingBackfillIT {
     
         docId = Objects.requireNonNull(docIdLong, "Document ID must not be null");
 
+        // Part of the embedding cache key
+        when(embeddingService.getModel()).thenReturn("text-embedding-3-small");
+        when(embeddingService.getDimensions()).thenReturn(1536);
+
         // Create chunks with NULL embeddings
         jdbc.update("""
             INSERT INTO chunks(document_id, chunk_index, start_line, end_line, content, content_hash, embedding)
@@ -60,8 +75,10 @@ class EmbeddingBackfillIT {
 
     @Test
     void backfill_populatesMissingEmbeddings() {
-        when(embeddingService.embed("chunk one")).thenReturn(unitVector(0));
-        when(embeddingService.embed("chunk two")).thenReturn(unitVector(1));
+        when(embeddingService.embedAll(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(t -> unitVector(t.equals("chunk one") ? 0 : 1)).toList();
+        });
 
         // Act
         int updated = chunkEmbeddingService.backfillMissingEmbeddings(100);
@@ -77,7 +94,80 @@ class EmbeddingBackfillIT {
         assertThat(stillNull).isEqualTo(0);
 
         // Verify AFTER the call
-        verify(embeddingService, atLeastOnce()).embed(anyString());
+        // Both chunks go out in a single batched request
+        verify(embeddingService, times(1)).embedAll(anyList());
+    }
+
+    @Test
+    void backfill_reusesCachedEmbeddings_withoutCallingProvider() {
+        when(embeddingService.embedAll(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(t -> unitVector(0)).toList();
+        });
+        chunkEmbeddingService.backfillMissingEmbeddings(100);
+
+        // Same content hashes in another document: should be served from the cache
+        jdbc.update("""
+            INSERT INTO documents(repository_id, file_path, content_hash) VALUES (?, 'copy.txt', 'h')
+            """, repoId);
+        jdbc.update("""
+            INSERT INTO chunks(document_id, chunk_index, start_line, end_line, content, content_hash, embedding)
+            SELECT d.id, 0, 1, 1, 'chunk one', 'h1', NULL FROM documents d WHERE d.file_path = 'copy.txt'
+            """);
+
+        int updated = chunkEmbeddingService.backfillMissingEmbeddings(100);
+
+        assertThat(updated).isEqualTo(1);
+        Integer stillNull = jdbc.queryForObject("SELECT COUNT(*) FROM chunks WHERE embedding IS NULL", Integer.class);
+        assertThat(stillNull).isEqualTo(0);
+        verify(embeddingService, times(1)).embedAll(anyList());
+    }
+
+    @Test
+    void fullBackfill_takesCachedContentFromTheCache_andEmbedsOnlyTheRest() {
+        when(embeddingService.embedAll(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(t -> unitVector(t.equals("chunk one") ? 0 : 1)).toList();
+        });
+        chunkEmbeddingService.backfillMissingEmbeddings(100);
+        // A new chunk whose content is not cached yet
+        jdbc.update("""
+            INSERT INTO chunks(document_id, chunk_index, start_line, end_line, content, content_hash, embedding)
+            VALUES (?, 2, 1, 1, 'chunk three', 'h3', NULL)
+            """, docId);
+
+        chunkEmbeddingService.backfillEmbeddings();
+
+        verify(embeddingService, times(1)).embedAll(List.of("chunk three"));
+        Integer stillNull = jdbc.queryForObject("SELECT COUNT(*) FROM chunks WHERE embedding IS NULL", Integer.class);
+        assertThat(stillNull).isEqualTo(0);
+        Integer cached = jdbc.queryForObject("SELECT COUNT(*) FROM embedding_cache", Integer.class);
+        assertThat(cached).isEqualTo(3);
+    }
+
+    @Test
+    void fullBackfill_fillsDuplicateContent_onAPageAfterTheBatchThatCachedIt() {
+        when(embeddingService.embedAll(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(t -> unitVector(t.equals("chunk one") ? 0 : 1)).toList();
+        });
+        // Same content as chunk one, after chunk two in id order
+        jdbc.update("""
+            INSERT INTO chunks(document_id, chunk_index, start_line, end_line, content, content_hash, embedding)
+            VALUES (?, 2, 1, 1, 'chunk one', 'h1', NULL)
+            """, docId);
+        // One chunk per page and per batch, so chunk one is cached before the last page is read
+        ChunkEmbeddingService onePerPage = new ChunkEmbeddingService(chunkRepo, embeddingService, embeddingCacheRepo,
+                chunkVectorRepo, transactionManager, eventPublisher, 1, 1);
+
+        onePerPage.backfillEmbeddings();
+
+        Integer stillNull = jdbc.queryForObject("SELECT COUNT(*) FROM chunks WHERE embedding IS NULL", Integer.class);
+        assertThat(stillNull).isEqualTo(0);
+        Integer distinct = jdbc.queryForObject(
+                "SELECT COUNT(DISTINCT embedding::text) FROM chunks WHERE content_hash = 'h1'", Integer.class);
+        assertThat(distinct).isEqualTo(1);
+        verify(embeddingService, times(2)).embedAll(anyList());
     }
 
     private static float[] unitVector(int index) {
@@ -0,0 +1,103 @@
+package com.rag.backend;
+
+import com.rag.backend.retrieval.EmbeddingMatrix;
+import com.rag.backend.retrieval.VectorIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+class EmbeddingMatrixTest {
+
+    // Not a multiple of any SIMD width, so the scalar tail is exercised too
+    private static final int DIMS = 37;
+
+    @Test
+    void search_matchesANaiveScan_acrossParallelRanges() throws Exception {
+        float[][] vectors = randomVectors(10_000, 1);
+        try (EmbeddingMatrix matrix = EmbeddingMatrix.create(null, DIMS, new ForkJoinPool(3))) {
+            for (int i = 0; i < vectors.length; i++) matrix.add(100 + i, i % 4, vectors[i]);
+
+            float[] q = randomVectors(1, 2)[0];
+            List<VectorIndex.Neighbor> hits = matrix.search(q, 8, null);
+
+            List<Integer> expected = IntStream.range(0, vectors.length).boxed()
+                    .sorted(Comparator.comparingDouble(i -> distance(vectors[i], q)))
+                    .limit(8)
+                    .toList();
+            assertThat(hits).extracting(VectorIndex.Neighbor::chunkId)
+                    .containsExactlyElementsOf(expected.stream().map(i -> 100L + i).toList());
+            assertThat((double) hits.get(0).distance()).isCloseTo(distance(vectors[expected.get(0)], q), offset(1e-4));
+        }
+    }
+
+    @Test
+    void remove_movesTheLastRowIntoTheGap_andFiltersByRepository() throws Exception {
+        float[][] vectors = randomVectors(5, 3);
+        try (EmbeddingMatrix matrix = EmbeddingMatrix.create(null, DIMS, ForkJoinPool.commonPool())) {
+            for (int i = 0; i < vectors.length; i++) matrix.add(i, i < 2 ? 7 : 8, vectors[i]);
+
+            assertThat(matrix.remove(0)).isTrue();
+            assertThat(matrix.remove(0)).isFalse();
+
+            assertThat(matrix.size()).isEqualTo(4);
+            assertThat(matrix.chunkIds()).containsExactlyInAnyOrder(1, 2, 3, 4);
+            // Chunk 4 now sits in row 0 and must still be found by its own vector
+            assertThat(matrix.search(vectors[4], 1, null).get(0).chunkId()).isEqualTo(4);
+            assertThat(matrix.search(vectors[4], 5, 7L)).extracting(VectorIndex.Neighbor::chunkId).containsExactly(1L);
+        }
+    }
+
+    @Test
+    void searches_seeAStableResult_whileAnotherThreadAddsAndRemoves() throws Exception {
+        float[][] stable = randomVectors(6_000, 4);
+        float[][] churn = randomVectors(2_000, 5);
+        float[] q = randomVectors(1, 6)[0];
+        try (EmbeddingMatrix matrix = EmbeddingMatrix.create(null, DIMS, new ForkJoinPool(3))) {
+            for (int i = 0; i < churn.length; i++) matrix.add(100_000 + i, 2, churn[i]);
+            for (int i = 0; i < stable.length; i++) matrix.add(i, 1, stable[i]);
+            List<VectorIndex.Neighbor> expected = matrix.search(q, 10, 1L);
+
+            // Each remove moves the last row, often one of repository 1, into the gap; a search must
+            // never miss or repeat one
+            AtomicBoolean done = new AtomicBoolean();
+            Thread writer = new Thread(() -> {
+                while (!done.get()) {
+                    for (int i = 0; i < churn.length; i++) matrix.remove(100_000 + i);
+                    for (int i = 0; i < churn.length; i++) matrix.add(100_000 + i, 2, churn[i]);
+                }
+            });
+            writer.start();
+            try {
+                for (int i = 0; i < 200; i++) {
+                    assertThat(matrix.search(q, 10, 1L)).isEqualTo(expected);
+                }
+            } finally {
+                done.set(true);
+                writer.join();
+            }
+        }
+    }
+
+    private static double distance(float[] a, float[] b) {
+        double s = 0;
+        for (int i = 0; i < a.length; i++) s += (a[i] - b[i]) * (a[i] - b[i]);
+        return Math.sqrt(s);
+    }
+
+    private static float[][] randomVectors(int count, long seed) {
+        Random random = new Random(seed);
+        float[][] vectors = new float[count][DIMS];
+        for (float[] v : vectors) {
+            for (int i = 0; i < DIMS; i++) v[i] = (float) random.nextGaussian();
+        }
+        return vectors;
+    }
+}
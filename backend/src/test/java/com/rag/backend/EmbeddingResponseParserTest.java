@@ -0,0 +1,70 @@
+package com.rag.backend;
+
+import com.rag.backend.ai.EmbeddingResponseParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingResponseParserTest {
+
+    @Test
+    void floatFormat_isReadByIndex_andIgnoresOtherFields() throws Exception {
+        String json = """
+                {"object":"list",
+                 "data":[
+                   {"object":"embedding","index":1,"embedding":[0.5,-1,2.5e-3]},
+                   {"object":"embedding","index":0,"embedding":[1.0,0.0,-0.25]}
+                 ],
+                 "model":"text-embedding-3-small",
+                 "usage":{"prompt_tokens":4,"total_tokens":4}}
+                """;
+
+        float[][] vectors = parse(json, 2, 3);
+
+        assertThat(vectors[0]).containsExactly(1.0f, 0.0f, -0.25f);
+        assertThat(vectors[1]).containsExactly(0.5f, -1f, 2.5e-3f);
+    }
+
+    @Test
+    void base64Format_decodesLittleEndianFloat32s() throws Exception {
+        float[] expected = {0.1f, -3.75f, Float.MIN_VALUE};
+        ByteBuffer buf = ByteBuffer.allocate(expected.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float f : expected) buf.putFloat(f);
+        String encoded = Base64.getEncoder().encodeToString(buf.array());
+
+        float[][] vectors = parse("{\"data\":[{\"index\":0,\"embedding\":\"" + encoded + "\"}]}", 1, 3);
+
+        assertThat(vectors[0]).containsExactly(expected);
+    }
+
+    @Test
+    void missingVector_isRejected() {
+        String json = "{\"data\":[{\"index\":0,\"embedding\":[1.0]}]}";
+
+        assertThatThrownBy(() -> parse(json, 2, 1)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void aVectorOfAnotherLength_isRejected_inEitherFormat() {
+        String floats = "{\"data\":[{\"index\":0,\"embedding\":[1.0,0.5]}]}";
+        String base64 = "{\"data\":[{\"index\":0,\"embedding\":\""
+                + Base64.getEncoder().encodeToString(new byte[4 * Float.BYTES]) + "\"}]}";
+
+        assertThatThrownBy(() -> parse(floats, 1, 3))
+                .isInstanceOf(IllegalStateException.class).hasMessageContaining("3-dimension");
+        assertThatThrownBy(() -> parse(base64, 1, 3))
+                .isInstanceOf(IllegalStateException.class).hasMessageContaining("got 4");
+    }
+
+    private static float[][] parse(String json, int expected, int dims) throws Exception {
+        return EmbeddingResponseParser.parse(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), expected, dims);
+    }
+}
@@ -0,0 +1,120 @@
+package com.rag.backend;
+
+import com.rag.backend.ai.EmbeddingHttpTransport;
+import com.rag.backend.ai.EmbeddingService;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/** Runs EmbeddingService against a local OpenAI-compatible stand-in. */
+class EmbeddingServiceHttpTest {
+
+    private HttpServer server;
+    private final AtomicReference<String> lastRequest = new AtomicReference<>();
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/embeddings", exchange -> {
+            lastRequest.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = ("{\"object\":\"list\",\"data\":["
+                    + "{\"index\":1,\"embedding\":\"" + base64(0.25f, -1f) + "\"},"
+                    + "{\"index\":0,\"embedding\":\"" + base64(1f, 0.5f) + "\"}]}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void embedAll_postsToConfiguredBaseUrl_andDecodesBase64Vectors() throws Exception {
+        EmbeddingHttpTransport transport = transport();
+        EmbeddingService service = new EmbeddingService(transport, "test-key", "test-model", 2, "base64",
+                256, 100_000, 8191, 0, 0, 1, 0, 0);
+        try {
+            List<float[]> vectors = service.embedAll(List.of("first", "second"));
+
+            assertThat(vectors.get(0)).containsExactly(1f, 0.5f);
+            assertThat(vectors.get(1)).containsExactly(0.25f, -1f);
+            assertThat(lastRequest.get())
+                    .contains("\"model\":\"test-model\"")
+                    .contains("\"encoding_format\":\"base64\"")
+                    .doesNotContain("dimensions");
+        } finally {
+            transport.destroy();
+        }
+    }
+
+    @Test
+    void textEmbedding3Models_areAskedForTheConfiguredDimensions_andAnotherLengthFails() {
+        EmbeddingHttpTransport transport = transport();
+        EmbeddingService matching = new EmbeddingService(transport, "test-key", "text-embedding-3-small", 2, "base64",
+                256, 100_000, 8191, 0, 0, 1, 0, 0);
+        EmbeddingService mismatched = new EmbeddingService(transport, "test-key", "text-embedding-3-small", 3, "base64",
+                256, 100_000, 8191, 0, 0, 1, 0, 0);
+        try {
+            assertThat(matching.embedAll(List.of("first", "second"))).hasSize(2);
+            assertThat(lastRequest.get()).contains("\"dimensions\":2");
+
+            // The stand-in ignores the field and answers with 2 floats, as a misconfigured model would
+            assertThatThrownBy(() -> mismatched.embedAll(List.of("first", "second")))
+                    .isInstanceOf(IllegalStateException.class).hasMessageContaining("3-dimension");
+            assertThat(lastRequest.get()).contains("\"dimensions\":3");
+        } finally {
+            transport.destroy();
+        }
+    }
+
+    @Test
+    void embedAll_splitsAnInputOverTheTokenLimit_andAveragesItsPieces() {
+        EmbeddingHttpTransport transport = transport();
+        EmbeddingService service = new EmbeddingService(transport, "test-key", "test-model", 2, "base64",
+                256, 100_000, 2, 0, 0, 1, 0, 0);
+        try {
+            // Four tokens: sent as "one two" and " three four", whose vectors are (1, 0.5) and (0.25, -1)
+            List<float[]> vectors = service.embedAll(List.of("one two three four"));
+
+            assertThat(lastRequest.get()).contains("\"input\":[\"one two\",\" three four\"]");
+            assertThat(vectors).hasSize(1);
+            double norm = Math.hypot(0.625, -0.25);
+            assertThat(vectors.get(0)).containsExactly(new float[]{(float) (0.625 / norm), (float) (-0.25 / norm)},
+                    within(1e-6f));
+        } finally {
+            transport.destroy();
+        }
+    }
+
+    private EmbeddingHttpTransport transport() {
+        return new EmbeddingHttpTransport(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/", HttpClient.Version.HTTP_1_1,
+                Duration.ofSeconds(2), Duration.ofSeconds(5), 2, Duration.ofSeconds(5));
+    }
+
+    private static String base64(float... v) {
+        ByteBuffer buf = ByteBuffer.allocate(v.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float f : v) buf.putFloat(f);
+        return Base64.getEncoder().encodeToString(buf.array());
+    }
+}
@@ -0,0 +1,79 @@
+package com.rag.backend;
+
+import com.rag.backend.indexing.FileWalker;
+import com.rag.backend.indexing.GitIgnore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileWalkerTest {
+
+    @TempDir Path root;
+
+    @Test
+    void gitIgnore_matchesGitSemantics() {
+        GitIgnore rules = GitIgnore.parse(List.of(
+                "# comment",
+                "*.log",
+                "!keep.log",
+                "/build",
+                "docs/**/*.tmp",
+                "cache/"
+        ));
+
+        assertThat(rules.match("app.log", false)).isTrue();
+        assertThat(rules.match("nested/dir/app.log", false)).isTrue();
+        assertThat(rules.match("keep.log", false)).isFalse();
+        assertThat(rules.match("build", true)).isTrue();
+        assertThat(rules.match("src/build", true)).isNull();
+        assertThat(rules.match("docs/a/b/x.tmp", false)).isTrue();
+        assertThat(rules.match("docs/x.tmp", false)).isTrue();
+        assertThat(rules.match("cache", true)).isTrue();
+        assertThat(rules.match("cache", false)).isNull();
+        assertThat(rules.match("src/Main.java", false)).isNull();
+    }
+
+    @Test
+    void walk_prunesIgnoredDirectories_andHonoursNestedGitIgnores() throws Exception {
+        write("src/Main.java");
+        write("node_modules/lib/index.js");
+        write("target/classes/Main.class");
+        write("generated/Out.java");
+        write("app/debug.log");
+        write("app/keep.log");
+        write("app/App.java");
+        Files.writeString(root.resolve(".gitignore"), "generated/\n*.log\n");
+        Files.writeString(root.resolve("app/.gitignore"), "!keep.log\n");
+
+        List<String> files = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        new FileWalker(Set.of("node_modules", "target"), true).walk(root, new FileWalker.Listener() {
+            @Override
+            public void onFile(Path file) {
+                files.add(root.relativize(file).toString().replace('\\', '/'));
+            }
+
+            @Override
+            public void onSkipped(Path file) {
+                skipped.add(root.relativize(file).toString().replace('\\', '/'));
+            }
+        });
+
+        assertThat(files).containsExactlyInAnyOrder(
+                ".gitignore", "src/Main.java", "app/.gitignore", "app/keep.log", "app/App.java");
+        assertThat(skipped).containsExactly("app/debug.log");
+    }
+
+    private void write(String relative) throws Exception {
+        Path p = root.resolve(relative);
+        Files.createDirectories(p.getParent());
+        Files.writeString(p, "x");
+    }
+}
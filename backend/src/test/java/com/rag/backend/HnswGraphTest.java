@@ -0,0 +1,90 @@
+package com.rag.backend;
+
+import com.rag.backend.retrieval.EmbeddingMatrix;
+import com.rag.backend.retrieval.HnswGraph;
+import com.rag.backend.retrieval.VectorIndex;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswGraphTest {
+
+    private static final int DIMS = 32;
+
+    @Test
+    void search_findsNearlyAllExactNeighbours() throws Exception {
+        float[][] vectors = randomVectors(3000, 1);
+        HnswGraph graph = new HnswGraph(DIMS, 16, 100, 42);
+        // The exact engine is the recall baseline
+        try (EmbeddingMatrix exact = EmbeddingMatrix.create(null, DIMS, ForkJoinPool.commonPool())) {
+            for (int i = 0; i < vectors.length; i++) {
+                graph.add(i, i % 3, vectors[i]);
+                exact.add(i, i % 3, vectors[i]);
+            }
+
+            int found = 0;
+            float[][] queries = randomVectors(50, 2);
+            for (float[] q : queries) {
+                Set<Long> expected = exact.search(q, 10, null).stream()
+                        .map(VectorIndex.Neighbor::chunkId).collect(Collectors.toSet());
+                List<VectorIndex.Neighbor> hits = graph.search(q, 10, 64, null);
+                assertThat(hits).hasSize(10);
+                assertThat(hits).isSortedAccordingTo(Comparator.comparingDouble(VectorIndex.Neighbor::distance));
+                found += (int) hits.stream().filter(h -> expected.contains(h.chunkId())).count();
+            }
+            assertThat(found / (double) (queries.length * 10)).isGreaterThan(0.95);
+        }
+    }
+
+    @Test
+    void search_honoursRepositoryFilter_andSkipsRemovedChunks() {
+        float[][] vectors = randomVectors(500, 3);
+        HnswGraph graph = new HnswGraph(DIMS, 8, 50, 7);
+        for (int i = 0; i < vectors.length; i++) graph.add(i, i < 5 ? 99 : 1, vectors[i]);
+        graph.remove(0);
+
+        // Only four chunks are left in repository 99, far fewer than ef would reach by walking the graph
+        List<VectorIndex.Neighbor> hits = graph.search(vectors[0], 10, 16, 99L);
+
+        assertThat(hits).extracting(VectorIndex.Neighbor::chunkId).containsExactlyInAnyOrder(1L, 2L, 3L, 4L);
+        assertThat(graph.search(vectors[0], 1, 16, null).get(0).chunkId()).isNotZero();
+        assertThat(graph.size()).isEqualTo(499);
+        assertThat(graph.compacted().deletedCount()).isZero();
+    }
+
+    @Test
+    void snapshot_roundTripsTheGraph() throws Exception {
+        float[][] vectors = randomVectors(200, 4);
+        HnswGraph graph = new HnswGraph(DIMS, 8, 50, 11);
+        for (int i = 0; i < vectors.length; i++) graph.add(1000 + i, 1, vectors[i]);
+        graph.remove(1005);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        graph.writeTo(bytes);
+        HnswGraph restored = HnswGraph.readFrom(new ByteArrayInputStream(bytes.toByteArray()), 0);
+
+        assertThat(restored.size()).isEqualTo(199);
+        assertThat(restored.deletedCount()).isEqualTo(1);
+        for (float[] q : randomVectors(10, 5)) {
+            assertThat(restored.search(q, 5, 32, null)).isEqualTo(graph.search(q, 5, 32, null));
+        }
+    }
+
+    private static float[][] randomVectors(int count, long seed) {
+        Random random = new Random(seed);
+        float[][] vectors = new float[count][DIMS];
+        for (float[] v : vectors) {
+            for (int i = 0; i < DIMS; i++) v[i] = (float) random.nextGaussian();
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,43 @@
+package com.rag.backend;
+
+import com.rag.backend.repo.ChunkVectorRepo;
+import com.rag.backend.retrieval.LexicalQuery;
+import com.rag.backend.retrieval.RankFusion;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HybridRetrievalTest {
+
+    @Test
+    void lexicalQuery_keepsIdentifiersAndTheirParts_dropsStopWords() {
+        assertThat(LexicalQuery.toTsQuery("How does the HTTPServer use parseJSONBody?"))
+                .isEqualTo("httpserver | http | server | parsejsonbody | parse | json | body");
+        assertThat(LexicalQuery.toTsQuery("rag.retrieval.hnsw ef-search"))
+                .isEqualTo("rag | retrieval | hnsw | ef | search");
+    }
+
+    @Test
+    void lexicalQuery_withNothingSearchable_isNull() {
+        assertThat(LexicalQuery.toTsQuery("what is it?")).isNull();
+        assertThat(LexicalQuery.toTsQuery(null)).isNull();
+    }
+
+    @Test
+    void rankFusion_favoursChunksFoundByBothLegs_andKeepsTheVectorDistance() {
+        List<ChunkVectorRepo.RetrievedChunk> vector = List.of(chunk(1, 0.1), chunk(2, 0.2), chunk(3, 0.3));
+        List<ChunkVectorRepo.RetrievedChunk> lexical = List.of(chunk(3, null), chunk(4, null));
+
+        List<ChunkVectorRepo.RetrievedChunk> fused = RankFusion.fuse(List.of(vector, lexical), RankFusion.DEFAULT_K, 3);
+
+        // 3 is third by vector but first lexically; 2 and 4 tie at rank 2 and the vector leg wins ties
+        assertThat(fused).extracting(ChunkVectorRepo.RetrievedChunk::id).containsExactly(3L, 1L, 2L);
+        assertThat(fused.get(0).distance()).isEqualTo(0.3);
+    }
+
+    private static ChunkVectorRepo.RetrievedChunk chunk(long id, Double distance) {
+        return new ChunkVectorRepo.RetrievedChunk(id, id, "f" + id + ".java", 1, 1, "content " + id, distance);
+    }
+}
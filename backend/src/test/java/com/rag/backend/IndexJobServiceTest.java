@@ -0,0 +1,148 @@
+package com.rag.backend;
+
+import com.rag.backend.indexing.IndexJob;
+import com.rag.backend.indexing.IndexJobService;
+import com.rag.backend.indexing.IndexProgress;
+import com.rag.backend.indexing.IndexingService;
+import com.rag.backend.repo.IndexJobRepo;
+import com.rag.backend.retrieval.ChunkEmbeddingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.function.IntConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IndexJobServiceTest {
+
+    @TempDir Path root;
+
+    private final IndexingService indexingService = mock(IndexingService.class);
+    private final ChunkEmbeddingService chunkEmbeddingService = mock(ChunkEmbeddingService.class);
+    private final IndexJobRepo indexJobRepo = mock(IndexJobRepo.class);
+    private final IndexJobService service = new IndexJobService(
+            indexingService, chunkEmbeddingService, indexJobRepo, 1, Duration.ZERO, true);
+
+    @AfterEach
+    void shutdown() throws Exception {
+        service.shutdown();
+    }
+
+    @Test
+    void job_indexesThenEmbeds_inTheBackground_andRecordsItsCounters() throws Exception {
+        when(indexJobRepo.create("demo", root.toString(), true)).thenReturn(newJob(1));
+        when(indexingService.indexFolder(eq("demo"), eq(root.toString()), eq(true), any())).thenAnswer(inv -> {
+            IndexProgress progress = inv.getArgument(3);
+            progress.fileScanned();
+            progress.filesPersisted(1, 3);
+            return new IndexingService.IndexResult(42, 2, 1, 1, 0, 1, 0, 3, 0, 10,
+                    new IndexingService.StageTimings(1, 2, 3, 4), Map.of());
+        });
+        when(chunkEmbeddingService.backfillMissingEmbeddingsForRepo(eq("demo"), anyInt(), any(), any())).thenAnswer(inv -> {
+            IntConsumer onStored = inv.getArgument(2);
+            onStored.accept(2);
+            return new ChunkEmbeddingService.BackfillResult(2, 1, 0, 5);
+        });
+
+        IndexJob job = service.submit("demo", root.toString(), true);
+        awaitFinished(job);
+
+        assertThat(job.status()).isEqualTo(IndexJob.Status.SUCCEEDED);
+        assertThat(job.phase()).isEqualTo(IndexJob.Phase.DONE);
+        assertThat(job.repositoryId()).isEqualTo(42L);
+        assertThat(job.count(IndexJob.Counter.FILES_SCANNED)).isEqualTo(2);
+        assertThat(job.count(IndexJob.Counter.CHUNKS_CREATED)).isEqualTo(3);
+        assertThat(job.count(IndexJob.Counter.CHUNKS_EMBEDDED)).isEqualTo(2);
+        assertThat(job.count(IndexJob.Counter.CHUNKS_FROM_CACHE)).isEqualTo(1);
+        assertThat(job.stageTimings()).isNotNull();
+        assertThat(job.finishedAt()).isNotNull();
+        // Started, indexed, embedding checkpoint, finished
+        verify(indexJobRepo, timeout(1000).atLeast(3)).save(job);
+        assertThat(service.find(1)).containsSame(job);
+    }
+
+    @Test
+    void aRepository_hasOneUnfinishedJob_andBadPathsAreRejected() throws Exception {
+        when(indexJobRepo.create("demo", root.toString(), true)).thenReturn(newJob(1));
+        when(indexingService.indexFolder(eq("demo"), anyString(), anyBoolean(), any())).thenAnswer(inv -> {
+            IndexProgress progress = inv.getArgument(3);
+            while (!progress.isCancelled()) Thread.sleep(5);
+            throw new CancellationException("cancelled");
+        });
+
+        IndexJob first = service.submit("demo", root.toString(), true);
+        assertThat(service.submit("demo", root.toString(), true)).isSameAs(first);
+        assertThatThrownBy(() -> service.submit("other", root.resolve("missing").toString(), true))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        service.cancel(first.id());
+        awaitFinished(first);
+        assertThat(first.status()).isEqualTo(IndexJob.Status.CANCELLED);
+        verify(chunkEmbeddingService, never()).backfillMissingEmbeddingsForRepo(anyString(), anyInt(), any(), any());
+    }
+
+    @Test
+    void unfinishedJobs_resumeFromTheirPersistedPhase() throws Exception {
+        IndexJob embedding = newJob(7);
+        embedding.setStatus(IndexJob.Status.RUNNING);
+        embedding.setPhase(IndexJob.Phase.EMBEDDING);
+        embedding.setStartedAt(Instant.now());
+        embedding.set(IndexJob.Counter.CHUNKS_EMBEDDED, 100);
+        when(indexJobRepo.findUnfinished()).thenReturn(List.of(embedding));
+        when(indexJobRepo.findById(anyLong())).thenReturn(Optional.empty());
+        when(chunkEmbeddingService.backfillMissingEmbeddingsForRepo(eq("demo"), anyInt(), any(), any())).thenAnswer(inv -> {
+            IntConsumer onStored = inv.getArgument(2);
+            onStored.accept(20);
+            return new ChunkEmbeddingService.BackfillResult(20, 0, 0, 5);
+        });
+
+        service.resumeUnfinishedJobs();
+        awaitFinished(embedding);
+
+        assertThat(embedding.status()).isEqualTo(IndexJob.Status.SUCCEEDED);
+        assertThat(embedding.count(IndexJob.Counter.CHUNKS_EMBEDDED)).isEqualTo(120);
+        verify(indexingService, never()).indexFolder(anyString(), anyString(), anyBoolean(), any());
+    }
+
+    @Test
+    void anInterruptedFullRebuild_continuesIntoTheRepositoryItCreated() throws Exception {
+        IndexJob rebuild = new IndexJob(8, "demo", root.toString(), false, Instant.now());
+        rebuild.setStatus(IndexJob.Status.RUNNING);
+        rebuild.setStartedAt(Instant.now());
+        rebuild.setRepositoryId(42L);
+        when(indexJobRepo.findUnfinished()).thenReturn(List.of(rebuild));
+        when(indexingService.resumeFolder(eq(42L), eq(root.toString()), any())).thenReturn(
+                new IndexingService.IndexResult(42, 5, 2, 0, 3, 2, 0, 4, 0, 10,
+                        new IndexingService.StageTimings(1, 2, 3, 4), Map.of()));
+        when(chunkEmbeddingService.backfillMissingEmbeddingsForRepo(eq("demo"), anyInt(), any(), any()))
+                .thenReturn(new ChunkEmbeddingService.BackfillResult(4, 0, 0, 5));
+
+        service.resumeUnfinishedJobs();
+        awaitFinished(rebuild);
+
+        assertThat(rebuild.status()).isEqualTo(IndexJob.Status.SUCCEEDED);
+        assertThat(rebuild.count(IndexJob.Counter.FILES_UNCHANGED)).isEqualTo(3);
+        verify(indexingService, never()).indexFolder(anyString(), anyString(), anyBoolean(), any());
+    }
+
+    private IndexJob newJob(long id) {
+        return new IndexJob(id, "demo", root.toString(), true, Instant.now());
+    }
+
+    private static void awaitFinished(IndexJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!job.status().finished() && System.nanoTime() < deadline) Thread.sleep(10);
+        assertThat(job.status().finished()).as("job finished").isTrue();
+    }
+}
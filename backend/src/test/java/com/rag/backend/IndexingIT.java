@@ -29,16 +29,21 @@ class IndexingIT {
     @BeforeEach
     void resetDb() {
         // Add other tables here if you have them (tenants, users, etc.)
-        jdbc.execute("TRUNCATE TABLE chunks, documents, repositories RESTART IDENTITY CASCADE");
+        jdbc.execute("TRUNCATE TABLE chunks, documents, repositories, index_jobs RESTART IDENTITY CASCADE");
     }
 
     record IndexRequest(String repoName, String rootPath) {}
     record IndexResponse(
-            long repositoryId,
+            long id,
+            String status,
+            String phase,
+            Long repositoryId,
             int filesScanned,
             int filesIndexed,
             int filesSkipped,
+            int filesUnchanged,
             int documentsUpserted,
+            int documentsDeleted,
             int chunksCreated,
             int chunksEmbedded,
             long elapsedMsTotal,
@@ -67,14 +72,10 @@ class IndexingIT {
         HttpEntity<IndexRequest> req = new HttpEntity<>(body, headers);
 
         // Act
-        ResponseEntity<IndexResponse> resp =
-                rest.postForEntity("/api/index", req, IndexResponse.class);
+        IndexResponse responseBody = indexAndWait(req);
 
-        // Assert: endpoint worked
-        assertThat(resp.getStatusCode()).isEqualTo(HttpStatus.OK);
-
-        IndexResponse responseBody = resp.getBody();
-        assertThat(responseBody).isNotNull();
+        // Assert: job worked
+        assertThat(responseBody.status()).isEqualTo("SUCCEEDED");
         if (responseBody != null) {
             assertThat(responseBody.filesScanned()).isGreaterThanOrEqualTo(2);
             assertThat(responseBody.filesIndexed()).isGreaterThanOrEqualTo(2);
@@ -90,4 +91,53 @@ class IndexingIT {
         assertThat(documentRepo.count()).isGreaterThanOrEqualTo(2);
         assertThat(chunkRepo.count()).isGreaterThan(0);
     }
+
+    @Test
+    void reindex_isIncremental_skipsUnchangedFiles_andDeletesRemovedOnes() throws Exception {
+        Path root = Files.createTempDirectory("incremental-repo");
+        Files.writeString(root.resolve("README.md"), "# Hello\nThis is a test\n");
+        Files.writeString(root.resolve("Keep.java"), "class Keep {}\n");
+        Files.writeString(root.resolve("Gone.java"), "class Gone {}\n");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<IndexRequest> req = new HttpEntity<>(new IndexRequest("incremental-repo", root.toString()), headers);
+
+        IndexResponse firstBody = indexAndWait(req);
+
+        Files.writeString(root.resolve("README.md"), "# Hello\nThis is a changed test\n");
+        Files.delete(root.resolve("Gone.java"));
+
+        IndexResponse secondBody = indexAndWait(req);
+        assertThat(secondBody.id()).isNotEqualTo(firstBody.id());
+        assertThat(secondBody.repositoryId()).isEqualTo(firstBody.repositoryId());
+        assertThat(secondBody.filesUnchanged()).isEqualTo(1);
+        assertThat(secondBody.filesIndexed()).isEqualTo(1);
+        assertThat(secondBody.documentsDeleted()).isEqualTo(1);
+
+        assertThat(repositoryRepo.count()).isEqualTo(1);
+        assertThat(documentRepo.count()).isEqualTo(2);
+    }
+
+    @Test
+    void unknownJob_is404() {
+        assertThat(rest.getForEntity("/api/index/jobs/999999", String.class).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    /** Starts an indexing job and polls it until it finishes. */
+    private IndexResponse indexAndWait(HttpEntity<IndexRequest> req) throws InterruptedException {
+        ResponseEntity<IndexResponse> accepted = rest.postForEntity("/api/index", req, IndexResponse.class);
+        assertThat(accepted.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        assertThat(accepted.getHeaders().getLocation()).isNotNull();
+        long id = accepted.getBody().id();
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            IndexResponse job = rest.getForObject("/api/index/jobs/" + id, IndexResponse.class);
+            if (!job.status().equals("QUEUED") && !job.status().equals("RUNNING")) return job;
+            assertThat(System.currentTimeMillis()).as("job %d finished", id).isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
 }
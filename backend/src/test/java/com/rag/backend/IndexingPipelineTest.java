@@ -0,0 +1,220 @@
+package com.rag.backend;
+
+import com.rag.backend.indexing.Chunker;
+import com.rag.backend.indexing.ChunkingStrategy;
+import com.rag.backend.indexing.Hashing;
+import com.rag.backend.indexing.IndexProgress;
+import com.rag.backend.indexing.IndexingService;
+import com.rag.backend.indexing.SourceText;
+import com.rag.backend.repo.BulkIndexRepo;
+import com.rag.backend.repo.ChunkRepo;
+import com.rag.backend.repo.DocumentRepo;
+import com.rag.backend.repo.RepositoryRepo;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/** The staged pipeline of IndexingService against mocked persistence: it must always terminate. */
+class IndexingPipelineTest {
+
+    private static final long REPO_ID = 7;
+    private static final Duration DEADLINE = Duration.ofSeconds(10);
+
+    @TempDir Path root;
+
+    private final RepositoryRepo repositoryRepo = mock(RepositoryRepo.class);
+    private final DocumentRepo documentRepo = mock(DocumentRepo.class);
+    private final ChunkRepo chunkRepo = mock(ChunkRepo.class);
+    private final BulkIndexRepo bulkIndexRepo = mock(BulkIndexRepo.class);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(repositoryRepo.existsById(REPO_ID)).thenReturn(true);
+        when(documentRepo.findIndexedDocuments(REPO_ID)).thenReturn(List.of());
+        when(bulkIndexRepo.allocateDocumentIds(anyInt())).thenAnswer(inv -> new long[inv.<Integer>getArgument(0)]);
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(root.resolve("file" + i + ".txt"), "line one of " + i + "\nline two\n");
+        }
+    }
+
+    @Test
+    void aCleanRun_terminates_andPersistsEveryFileOnce() throws Exception {
+        Files.write(root.resolve("binary.txt"), new byte[]{'o', 'k', (byte) 0xC3, '(', '\n'});
+        Files.writeString(root.resolve("image.bin"), "not an allowed extension");
+        List<String> persisted = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(inv -> {
+            List<BulkIndexRepo.DocumentRow> rows = inv.getArgument(0);
+            rows.forEach(r -> persisted.add(r.filePath()));
+            return null;
+        }).when(bulkIndexRepo).insertDocuments(anyList());
+
+        IndexingService.IndexResult result = assertTimeoutPreemptively(DEADLINE,
+                () -> service(new Chunker(120, 20)).resumeFolder(REPO_ID, root.toString(), IndexProgress.NONE));
+
+        assertThat(result.filesScanned()).isEqualTo(22);
+        assertThat(result.filesSkipped()).isEqualTo(2);
+        assertThat(result.filesIndexed()).isEqualTo(20);
+        assertThat(result.chunksCreated()).isEqualTo(20);
+        assertThat(persisted).hasSize(20).doesNotHaveDuplicates().doesNotContain("binary.txt", "image.bin");
+        // Batches of 3: six full ones and the remainder flushed once every worker is done
+        verify(bulkIndexRepo, times(7)).insertChunks(anyList());
+        verify(bulkIndexRepo).ensureRepositoryVectorIndex(REPO_ID);
+        verify(bulkIndexRepo).dropSupersededRepositoryVectorIndexes(REPO_ID);
+    }
+
+    @Test
+    void anIncrementalRun_skipsUnchangedFiles_rewritesChangedOnes_andPrunesDeletedOnes() throws Exception {
+        when(documentRepo.findIndexedDocuments(REPO_ID)).thenReturn(List.of(
+                indexed(1, "file0.txt", Hashing.sha256("line one of 0\nline two")),
+                indexed(2, "file1.txt", "stale-hash"),
+                indexed(3, "gone.txt", "whatever")));
+
+        IndexingService.IndexResult result = assertTimeoutPreemptively(DEADLINE,
+                () -> service(new Chunker(120, 20)).resumeFolder(REPO_ID, root.toString(), IndexProgress.NONE));
+
+        assertThat(result.filesUnchanged()).isEqualTo(1);
+        assertThat(result.filesIndexed()).isEqualTo(19);
+        assertThat(result.documentsDeleted()).isEqualTo(1);
+        verify(chunkRepo).retireChunks(List.of(2L));
+        verify(documentRepo).deleteAllByIdInBatch(List.of(3L));
+    }
+
+    @Test
+    void anEmptyFolder_terminates() throws Exception {
+        Path empty = Files.createDirectory(root.resolve("empty"));
+
+        IndexingService.IndexResult result = assertTimeoutPreemptively(DEADLINE,
+                () -> service(new Chunker(120, 20)).resumeFolder(REPO_ID, empty.toString(), IndexProgress.NONE));
+
+        assertThat(result.filesScanned()).isZero();
+        verify(bulkIndexRepo, never()).insertChunks(anyList());
+    }
+
+    @Test
+    void aPersistFailure_failsTheRun_andReleasesWorkersBlockedOnAFullQueue() {
+        // Workers fill the 4-slot queue long before the first batch fails to commit
+        doThrow(new IllegalStateException("disk full")).when(bulkIndexRepo).insertChunks(anyList());
+
+        assertTimeoutPreemptively(DEADLINE, () ->
+                assertThatThrownBy(() -> service(new Chunker(120, 20)).resumeFolder(REPO_ID, root.toString(), IndexProgress.NONE))
+                        .isInstanceOf(IllegalStateException.class)
+                        .hasMessage("disk full"));
+        verify(bulkIndexRepo, times(1)).insertChunks(anyList());
+        verify(bulkIndexRepo, never()).ensureRepositoryVectorIndex(anyLong());
+    }
+
+    @Test
+    void aThrowingChunker_failsTheRun_insteadOfHanging() {
+        ChunkingStrategy broken = failingOn("file13.txt", new IllegalStateException("boom"));
+
+        assertTimeoutPreemptively(DEADLINE, () ->
+                assertThatThrownBy(() -> service(broken).resumeFolder(REPO_ID, root.toString(), IndexProgress.NONE))
+                        .isInstanceOf(IllegalStateException.class)
+                        .hasRootCauseMessage("boom"));
+    }
+
+    @Test
+    void anErrorInAWorker_isRethrownAsIs() {
+        ChunkingStrategy broken = failingOn("file3.txt", new StackOverflowError("deep"));
+
+        assertTimeoutPreemptively(DEADLINE, () ->
+                assertThatThrownBy(() -> service(broken).resumeFolder(REPO_ID, root.toString(), IndexProgress.NONE))
+                        .isInstanceOf(StackOverflowError.class)
+                        .hasMessage("deep"));
+    }
+
+    @Test
+    void cancellation_isHonoured_whileEveryWorkerIsStuck() {
+        CountDownLatch entered = new CountDownLatch(1);
+        ChunkingStrategy stuck = new ChunkingStrategy() {
+            @Override
+            public String name() {
+                return "stuck";
+            }
+
+            @Override
+            public void chunk(String path, SourceText text, Consumer<Chunker.Chunk> sink) {
+                entered.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        IndexProgress cancelledOnceStuck = new IndexProgress() {
+            @Override
+            public boolean isCancelled() {
+                return entered.getCount() == 0;
+            }
+        };
+
+        assertTimeoutPreemptively(DEADLINE, () ->
+                assertThatThrownBy(() -> service(stuck).resumeFolder(REPO_ID, root.toString(), cancelledOnceStuck))
+                        .isInstanceOf(CancellationException.class));
+        verify(bulkIndexRepo, never()).insertChunks(anyList());
+    }
+
+    private IndexingService service(ChunkingStrategy... strategies) {
+        return new IndexingService(repositoryRepo, documentRepo, chunkRepo, bulkIndexRepo,
+                mock(EntityManager.class), mock(PlatformTransactionManager.class),
+                2, 4, 3, true, List.of(strategies));
+    }
+
+    private static DocumentRepo.IndexedDocument indexed(long id, String filePath, String contentHash) {
+        return new DocumentRepo.IndexedDocument() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getFilePath() {
+                return filePath;
+            }
+
+            @Override
+            public String getContentHash() {
+                return contentHash;
+            }
+        };
+    }
+
+    private static ChunkingStrategy failingOn(String fileName, Throwable failure) {
+        Chunker lines = new Chunker(120, 20);
+        return new ChunkingStrategy() {
+            @Override
+            public String name() {
+                return "failing";
+            }
+
+            @Override
+            public void chunk(String path, SourceText text, Consumer<Chunker.Chunk> sink) {
+                if (path.equals(fileName)) {
+                    if (failure instanceof Error error) throw error;
+                    throw (RuntimeException) failure;
+                }
+                lines.chunk(path, text, sink);
+            }
+        };
+    }
+}
@@ -0,0 +1,149 @@
+package com.rag.backend;
+
+import com.rag.backend.repo.ChunkVectorRepo;
+import com.rag.backend.retrieval.ExactVectorIndex;
+import com.rag.backend.retrieval.InMemoryVectorIndex;
+import com.rag.backend.retrieval.LocalVectorIndex;
+import com.rag.backend.retrieval.PgVectorIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** The in-process engines against a fake chunks table: sync must follow vectors changed in place. */
+class LocalVectorIndexSyncTest {
+
+    private static final int DIMS = 8;
+
+    @TempDir Path dir;
+
+    private final ChunkVectorRepo chunkVectorRepo = mock(ChunkVectorRepo.class);
+    // chunk id -> (version, vector), all in repository 1
+    private final Map<Long, Stored> chunks = new TreeMap<>();
+    private final List<long[]> loads = new ArrayList<>();
+    private long nextVersion = 1;
+
+    private record Stored(long version, float[] embedding) {}
+
+    @BeforeEach
+    void setUp() {
+        when(chunkVectorRepo.findEmbeddingVersions()).thenAnswer(inv -> new ChunkVectorRepo.EmbeddingVersions(
+                chunks.keySet().stream().mapToLong(Long::longValue).toArray(),
+                chunks.values().stream().mapToLong(Stored::version).toArray()));
+        when(chunkVectorRepo.findEmbeddings(any())).thenAnswer(inv -> {
+            long[] ids = inv.getArgument(0);
+            loads.add(ids);
+            List<ChunkVectorRepo.StoredEmbedding> out = new ArrayList<>();
+            for (long id : ids) {
+                Stored s = chunks.get(id);
+                if (s != null) out.add(new ChunkVectorRepo.StoredEmbedding(id, 1, s.version(), s.embedding()));
+            }
+            return out;
+        });
+        when(chunkVectorRepo.findRetrievedChunks(any())).thenAnswer(inv -> {
+            List<ChunkVectorRepo.RetrievedChunk> out = new ArrayList<>();
+            for (long id : (long[]) inv.getArgument(0)) {
+                out.add(new ChunkVectorRepo.RetrievedChunk(id, id, "f" + id, 1, 1, "chunk " + id, null));
+            }
+            return out;
+        });
+        for (int i = 0; i < 3; i++) write(i + 1, axis(i));
+    }
+
+    @Test
+    void inMemory_anEmbeddingChangedInPlace_isReloadedBySync() throws Exception {
+        InMemoryVectorIndex index = inMemory("");
+        index.sync();
+        assertThat(nearest(index, towardFiveLeaningToTwo())).isEqualTo(2L);
+
+        // As EmbeddingCacheRepo.applyToAllChunks or any other SQL would: same id, new vector
+        write(1, axis(5));
+        loads.clear();
+        index.sync();
+
+        assertThat(nearest(index, towardFiveLeaningToTwo())).isEqualTo(1L);
+        assertThat(loads).singleElement().satisfies(ids -> assertThat(ids).containsExactly(1L));
+
+        // Nothing changed: nothing is read
+        loads.clear();
+        index.sync();
+        assertThat(loads).isEmpty();
+        index.destroy();
+    }
+
+    @Test
+    void inMemory_aChangeWhileDown_isReloadedAfterTheSnapshotIsRestored() throws Exception {
+        String snapshot = dir.resolve("graph.bin").toString();
+        InMemoryVectorIndex before = inMemory(snapshot);
+        before.sync();
+        before.destroy();
+
+        write(2, axis(6));
+        loads.clear();
+        InMemoryVectorIndex after = inMemory(snapshot);
+        after.start();
+        awaitReady(after);
+
+        assertThat(nearest(after, axis(6))).isEqualTo(2L);
+        // The snapshot covered the others
+        assertThat(loads).singleElement().satisfies(ids -> assertThat(ids).containsExactly(2L));
+        after.destroy();
+    }
+
+    @Test
+    void exact_anEmbeddingChangedInPlace_isReloadedBySync() throws Exception {
+        ExactVectorIndex index = new ExactVectorIndex(chunkVectorRepo, mock(PgVectorIndex.class), DIMS, "", 2, Duration.ofHours(1));
+        index.sync();
+        assertThat(nearest(index, towardFiveLeaningToTwo())).isEqualTo(2L);
+
+        write(1, axis(5));
+        loads.clear();
+        index.sync();
+
+        assertThat(nearest(index, towardFiveLeaningToTwo())).isEqualTo(1L);
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(loads).singleElement().satisfies(ids -> assertThat(ids).containsExactly(1L));
+        index.destroy();
+    }
+
+    private InMemoryVectorIndex inMemory(String snapshotPath) {
+        return new InMemoryVectorIndex(chunkVectorRepo, mock(PgVectorIndex.class), DIMS, 8, 32, snapshotPath, Duration.ofHours(1));
+    }
+
+    private void write(long chunkId, float[] embedding) {
+        chunks.put(chunkId, new Stored(nextVersion++, embedding));
+    }
+
+    private static long nearest(LocalVectorIndex index, float[] query) {
+        return index.searchTopK(query, 1, null, 40).get(0).id();
+    }
+
+    private static void awaitReady(LocalVectorIndex index) throws InterruptedException {
+        for (int i = 0; i < 500 && !index.isReady(); i++) Thread.sleep(10);
+        assertThat(index.isReady()).isTrue();
+    }
+
+    /** Nearest to chunk 2 of the seeded vectors, but to any chunk moved onto axis 5. */
+    private static float[] towardFiveLeaningToTwo() {
+        float[] v = axis(5);
+        v[1] = 0.2f;
+        return v;
+    }
+
+    private static float[] axis(int i) {
+        float[] v = new float[DIMS];
+        v[i] = 1f;
+        return v;
+    }
+}
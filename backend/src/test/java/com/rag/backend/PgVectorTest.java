@@ -0,0 +1,33 @@
+package com.rag.backend;
+
+import com.rag.backend.repo.PgVector;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PgVectorTest {
+
+    @Test
+    void binaryFormat_roundTrips_withoutLosingPrecision() throws Exception {
+        float[] v = {0.1f, -2.5e-8f, Float.MIN_VALUE, 1234.5678f};
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PgVector.write(new DataOutputStream(bytes), v);
+
+        // int16 dims + int16 unused + 4 floats
+        assertThat(bytes.size()).isEqualTo(PgVector.binaryLength(v)).isEqualTo(20);
+        assertThat(bytes.toByteArray()[1]).isEqualTo((byte) 4);
+        assertThat(PgVector.read(bytes.toByteArray())).containsExactly(v);
+    }
+
+    @Test
+    void read_rejectsTruncatedInput() {
+        byte[] truncated = {0, 3, 0, 0, 0, 0, 0, 0};
+
+        assertThatThrownBy(() -> PgVector.read(truncated)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
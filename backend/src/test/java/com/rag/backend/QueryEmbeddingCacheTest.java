@@ -0,0 +1,56 @@
+package com.rag.backend;
+
+import com.rag.backend.ai.EmbeddingService;
+import com.rag.backend.retrieval.QueryEmbeddingCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class QueryEmbeddingCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final EmbeddingService embeddingService = mock(EmbeddingService.class);
+
+    @Test
+    void repeatedQuestion_isEmbeddedOnce_evenWithDifferentWhitespace() {
+        when(embeddingService.getModel()).thenReturn("m");
+        when(embeddingService.embed(anyString())).thenReturn(new float[]{1f, 2f});
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(embeddingService, 10, Duration.ofMinutes(5), now::get);
+
+        float[] first = cache.embed("How do I run tests?");
+        first[0] = 42f; // callers get their own copy
+        float[] second = cache.embed("  How do I\trun   tests? ");
+
+        assertThat(second).containsExactly(1f, 2f);
+        verify(embeddingService, times(1)).embed(anyString());
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void entries_expireAfterTtl_andLeastRecentlyUsedIsEvicted() {
+        when(embeddingService.getModel()).thenReturn("m");
+        when(embeddingService.embed(anyString())).thenReturn(new float[]{1f});
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(embeddingService, 2, Duration.ofSeconds(60), now::get);
+
+        cache.embed("a");
+        cache.embed("b");
+        cache.embed("a");   // hit; "b" is now least recently used
+        cache.embed("c");   // evicts "b"
+        assertThat(cache.size()).isEqualTo(2);
+
+        cache.embed("a");
+        verify(embeddingService, times(1)).embed("a");
+        cache.embed("b");
+        verify(embeddingService, times(2)).embed("b");
+
+        now.addAndGet(Duration.ofSeconds(61).toNanos());
+        cache.embed("a");
+        verify(embeddingService, times(2)).embed("a");
+    }
+}
@@ -3,16 +3,20 @@ package com.rag.backend;
 import com.rag.backend.ai.EmbeddingService;
 import com.rag.backend.ai.OpenAIChatClient;
 import com.rag.backend.dto.RagAnswer;
-import com.rag.backend.entity.ChunkEntity;
-import com.rag.backend.entity.DocumentEntity;
+import com.rag.backend.rag.ContextAssembler;
 import com.rag.backend.rag.RagChatService;
 import com.rag.backend.repo.ChunkRepo;
+import com.rag.backend.repo.ChunkVectorRepo;
+import com.rag.backend.retrieval.ChunkRetriever;
+import com.rag.backend.retrieval.QueryEmbeddingCache;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -21,20 +25,21 @@ class RagChatServiceTest {
     @Test
     void answerQuestion_embeds_retrieves_buildsPrompt_callsLLM_returnsAnswerAndCitations() {
         EmbeddingService embeddingService = mock(EmbeddingService.class);
+        ChunkRetriever chunkRetriever = mock(ChunkRetriever.class);
         ChunkRepo chunkRepo = mock(ChunkRepo.class);
         OpenAIChatClient chatClient = mock(OpenAIChatClient.class);
 
-        RagChatService service = new RagChatService(embeddingService, chunkRepo, chatClient);
+        RagChatService service = new RagChatService(queryCache(embeddingService), chunkRetriever, chunkRepo, chatClient, new ContextAssembler(6000, 0.8, "gpt-4o"), 12000);
 
         // Arrange
         float[] q = new float[1536];
         q[0] = 1.0f;
         when(embeddingService.embed("How do I run tests?")).thenReturn(q);
 
-        ChunkEntity c1 = chunk("backend/src/main/java/X.java", 10, 30, "Snippet one");
-        ChunkEntity c2 = chunk("backend/src/main/java/Y.java", 5, 12, "Snippet two");
+        ChunkVectorRepo.RetrievedChunk c1 = chunk("backend/src/main/java/X.java", 10, 30, "Snippet one");
+        ChunkVectorRepo.RetrievedChunk c2 = chunk("backend/src/main/java/Y.java", 5, 12, "Snippet two");
 
-        when(chunkRepo.searchTopK(anyString(), eq(5))).thenReturn(List.of(c1, c2));
+        when(chunkRetriever.search(anyString(), any(float[].class), eq(5), isNull())).thenReturn(List.of(c1, c2));
 
         when(chatClient.chat(anyString(), anyString()))
                 .thenReturn("Use the Maven wrapper: ./mvnw test");
@@ -68,24 +73,24 @@ class RagChatServiceTest {
         assertThat(user).contains("5-12");
         assertThat(user).contains("Snippet two");
 
-        // Ensure it passed a pgvector literal string (not float[])
-        ArgumentCaptor<String> vecCap = ArgumentCaptor.forClass(String.class);
-        verify(chunkRepo).searchTopK(vecCap.capture(), eq(5));
-        assertThat(vecCap.getValue()).startsWith("[");
-        assertThat(vecCap.getValue()).endsWith("]");
+        // Ensure it searched with the question's embedding
+        ArgumentCaptor<float[]> vecCap = ArgumentCaptor.forClass(float[].class);
+        verify(chunkRetriever).search(eq("How do I run tests?"), vecCap.capture(), eq(5), isNull());
+        assertThat(vecCap.getValue()).isEqualTo(q);
     }
 
     @Test
     void answerQuestion_whenNoChunks_returnsEmptyCitations_stillCallsLLM() {
         EmbeddingService embeddingService = mock(EmbeddingService.class);
+        ChunkRetriever chunkRetriever = mock(ChunkRetriever.class);
         ChunkRepo chunkRepo = mock(ChunkRepo.class);
         OpenAIChatClient chatClient = mock(OpenAIChatClient.class);
 
-        RagChatService service = new RagChatService(embeddingService, chunkRepo, chatClient);
+        RagChatService service = new RagChatService(queryCache(embeddingService), chunkRetriever, chunkRepo, chatClient, new ContextAssembler(6000, 0.8, "gpt-4o"), 12000);
 
         float[] q = new float[1536];
         when(embeddingService.embed("What is pgvector?")).thenReturn(q);
-        when(chunkRepo.searchTopK(anyString(), eq(5))).thenReturn(List.of());
+        when(chunkRetriever.search(anyString(), any(float[].class), eq(5), isNull())).thenReturn(List.of());
 
         when(chatClient.chat(anyString(), anyString()))
                 .thenReturn("I don't have enough context from the repository to answer.");
@@ -97,15 +102,42 @@ class RagChatServiceTest {
         verify(chatClient).chat(anyString(), anyString());
     }
 
-    private static ChunkEntity chunk(String filePath, int startLine, int endLine, String content) {
-        DocumentEntity d = new DocumentEntity();
-        d.setFilePath(filePath);
+    @Test
+    void prompt_isCappedToMaxPromptTokens_andUsageIsReported() {
+        EmbeddingService embeddingService = mock(EmbeddingService.class);
+        ChunkRetriever chunkRetriever = mock(ChunkRetriever.class);
+        OpenAIChatClient chatClient = mock(OpenAIChatClient.class);
+        ContextAssembler assembler = new ContextAssembler(6000, 0.8, "gpt-4o");
+        RagChatService service = new RagChatService(queryCache(embeddingService), chunkRetriever, mock(ChunkRepo.class), chatClient, assembler, 500);
+
+        when(embeddingService.embed(anyString())).thenReturn(new float[]{1f});
+        String big = "int x = compute(y);\n".repeat(200);
+        when(chunkRetriever.search(anyString(), any(float[].class), eq(5), isNull()))
+                .thenReturn(List.of(chunk("A.java", 1, 200, big), chunk("B.java", 1, 200, big.replace('x', 'z'))));
+        when(chatClient.chat(anyString(), anyString())).thenReturn("Four tokens here.");
+
+        RagAnswer answer = service.answerQuestion("What does compute do?");
+
+        ArgumentCaptor<String> sysCap = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> userCap = ArgumentCaptor.forClass(String.class);
+        verify(chatClient).chat(sysCap.capture(), userCap.capture());
+        int sent = assembler.countTokens(sysCap.getValue()) + assembler.countTokens(userCap.getValue());
+        assertThat(answer.usage().promptTokens()).isLessThanOrEqualTo(500).isGreaterThan(sent);
+        assertThat(answer.usage().completionTokens()).isEqualTo(assembler.countTokens("Four tokens here."));
+        assertThat(answer.citations()).extracting(c -> c.filePath()).containsExactly("A.java");
+
+        // A question that leaves no room for context is rejected before it is embedded
+        assertThatThrownBy(() -> service.answerQuestion("why ".repeat(600)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("too long");
+        verify(embeddingService, never()).embed(startsWith("why"));
+    }
+
+    private static QueryEmbeddingCache queryCache(EmbeddingService embeddingService) {
+        return new QueryEmbeddingCache(embeddingService, 100, Duration.ofMinutes(5), System::nanoTime);
+    }
 
-        ChunkEntity c = new ChunkEntity();
-        c.setDocument(d);
-        c.setStartLine(startLine);
-        c.setEndLine(endLine);
-        c.setContent(content);
-        return c;
+    private static ChunkVectorRepo.RetrievedChunk chunk(String filePath, int startLine, int endLine, String content) {
+        return new ChunkVectorRepo.RetrievedChunk(0L, filePath.hashCode(), filePath, startLine, endLine, content, 0.0);
     }
 }
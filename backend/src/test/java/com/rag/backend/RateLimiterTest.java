@@ -0,0 +1,38 @@
+package com.rag.backend;
+
+import com.rag.backend.ai.RateLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void admitsBurstUpToCapacity_thenSpacesRequestsAtTheRefillRate() {
+        RateLimiter limiter = new RateLimiter(60, 0, now::get);
+
+        for (int i = 0; i < 60; i++) {
+            assertThat(limiter.reserve(0)).isZero();
+        }
+        // 60/min refills one request per second
+        assertThat(limiter.reserve(0)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(limiter.reserve(0)).isZero();
+    }
+
+    @Test
+    void tokenBudget_queuesLargeRequestsBehindEachOther() {
+        RateLimiter limiter = new RateLimiter(0, 6_000, now::get);
+
+        assertThat(limiter.reserve(6_000)).isZero();
+        // 6000 tokens/min = 100 tokens/s, so the next 1000 tokens wait 10 s, the ones after 20 s
+        assertThat(limiter.reserve(1_000)).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+        assertThat(limiter.reserve(1_000)).isEqualTo(TimeUnit.SECONDS.toNanos(20));
+    }
+}
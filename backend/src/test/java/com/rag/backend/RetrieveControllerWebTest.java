@@ -1,9 +1,9 @@
 package com.rag.backend;
 
-import com.rag.backend.ai.EmbeddingService;
 import com.rag.backend.controller.ChatController;
-import com.rag.backend.repo.ChunkRepo;
 import com.rag.backend.rag.RagChatService;
+import com.rag.backend.retrieval.ChunkRetriever;
+import com.rag.backend.retrieval.QueryEmbeddingCache;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -22,8 +22,8 @@ class RetrieveControllerWebTest {
 
     @Autowired MockMvc mvc;
 
-    @MockBean EmbeddingService embeddingService;
-    @MockBean ChunkRepo chunkRepo;
+    @MockBean QueryEmbeddingCache queryEmbeddingCache;
+    @MockBean ChunkRetriever chunkRetriever;
     @MockBean RagChatService ragChatService;
 
     @Test
@@ -34,7 +34,7 @@ class RetrieveControllerWebTest {
                         .content("{}"))
                 .andExpect(status().isBadRequest());
 
-        verifyNoInteractions(embeddingService, chunkRepo);
+        verifyNoInteractions(queryEmbeddingCache, chunkRetriever);
     }
 
     @Test
@@ -45,6 +45,6 @@ class RetrieveControllerWebTest {
                         .content("{\"question\":\"   \"}"))
                 .andExpect(status().isBadRequest());
 
-        verifyNoInteractions(embeddingService, chunkRepo);
+        verifyNoInteractions(queryEmbeddingCache, chunkRetriever);
     }
 }
@@ -0,0 +1,95 @@
+package com.rag.backend;
+
+import com.rag.backend.indexing.Chunker;
+import com.rag.backend.indexing.Hashing;
+import com.rag.backend.indexing.SourceText;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SourceTextTest {
+
+    @TempDir Path dir;
+
+    @Test
+    void linesAndHash_matchReadAllLinesJoinedWithNewlines() throws Exception {
+        List<String> samples = List.of(
+                "",
+                "\n",
+                "\r",
+                "\r\n",
+                "one line",
+                "trailing newline\n",
+                "two\n\nblank lines\n\n",
+                "windows\r\nline\r\nendings\r\n",
+                "old mac\rline\rendings\r",
+                "mixed\r\n\r\rend\n\r",
+                "\uFEFFbom, héllo wörld, 日本語, 🙂\n");
+
+        for (String sample : samples) {
+            assertMatchesReadAllLines(write(sample.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    void largeFiles_areMappedAndScannedAcrossBlocks() throws Exception {
+        // Long enough to be mapped and to span blocks, with \r\n and multi-byte characters on their boundaries
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 300_000; i++) {
+            sb.append("line ").append(i).append(i % 7 == 0 ? " ünïcödé 🙂" : "").append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        for (int shift = 0; shift < 4; shift++) {
+            assertMatchesReadAllLines(write(("x".repeat(shift) + sb).getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    void malformedUtf8_isRejected_likeReadAllLines() throws Exception {
+        Path invalid = write(new byte[]{'o', 'k', '\n', (byte) 0xC3, '(', '\n'});
+        Path truncated = write(new byte[]{'o', 'k', (byte) 0xE6, (byte) 0x97});
+
+        assertThatThrownBy(() -> Files.readAllLines(invalid)).isInstanceOf(MalformedInputException.class);
+        assertThatThrownBy(() -> SourceText.read(invalid)).isInstanceOf(MalformedInputException.class);
+        assertThatThrownBy(() -> SourceText.read(truncated)).isInstanceOf(MalformedInputException.class);
+    }
+
+    @Test
+    void chunker_emitsOverlappingWindowsOfLines() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 25; i++) sb.append("line ").append(i).append("\r\n");
+        SourceText text = SourceText.read(write(sb.toString().getBytes(StandardCharsets.UTF_8)));
+
+        List<Chunker.Chunk> chunks = new ArrayList<>();
+        new Chunker(10, 3).chunk("lines.txt", text, chunks::add);
+
+        assertThat(chunks).extracting(Chunker.Chunk::startLine).containsExactly(1, 8, 15, 22);
+        assertThat(chunks).extracting(Chunker.Chunk::endLine).containsExactly(10, 17, 24, 25);
+        assertThat(chunks.get(3).content()).isEqualTo("line 22\nline 23\nline 24\nline 25");
+    }
+
+    private Path write(byte[] content) throws Exception {
+        return Files.write(Files.createTempFile(dir, "sample", ".txt"), content);
+    }
+
+    private static void assertMatchesReadAllLines(Path file) throws Exception {
+        List<String> lines = Files.readAllLines(file);
+        SourceText text = SourceText.read(file);
+
+        assertThat(text.lineCount()).as(file.toString()).isEqualTo(lines.size());
+        assertThat(text.contentHash()).isEqualTo(Hashing.sha256(String.join("\n", lines)));
+        assertThat(text.lines(0, lines.size())).isEqualTo(String.join("\n", lines));
+        for (int from = 0; from < lines.size(); from += Math.max(1, lines.size() / 5)) {
+            int to = Math.min(lines.size(), from + 120);
+            assertThat(text.lines(from, to)).isEqualTo(String.join("\n", lines.subList(from, to)));
+        }
+    }
+}
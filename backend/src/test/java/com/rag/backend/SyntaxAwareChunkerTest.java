@@ -0,0 +1,105 @@
+package com.rag.backend;
+
+import com.rag.backend.ai.TokenCounter;
+import com.rag.backend.indexing.Chunker;
+import com.rag.backend.indexing.SourceText;
+import com.rag.backend.indexing.SyntaxAwareChunker;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyntaxAwareChunkerTest {
+
+    private final TokenCounter tokens = TokenCounter.forModel("text-embedding-3-small");
+    private final SyntaxAwareChunker chunker = new SyntaxAwareChunker(tokens, 200);
+
+    @Test
+    void supports_theStructuredLanguages_only() {
+        assertThat(chunker.supports("src/Main.java")).isTrue();
+        assertThat(chunker.supports("web/app/page.tsx")).isTrue();
+        assertThat(chunker.supports("docs/README.md")).isTrue();
+        assertThat(chunker.supports("config/application.yml")).isFalse();
+        assertThat(chunker.supports("Makefile")).isFalse();
+        assertThat(chunker.supports("dir.java/Makefile")).isFalse();
+    }
+
+    @Test
+    void code_isCutBetweenMembers_andNeverMixesTopLevelTypes() throws Exception {
+        StringBuilder sb = new StringBuilder("import { Repo } from './repo';\nimport { Job } from './job';\n");
+        for (String type : List.of("Indexer", "Retriever")) {
+            sb.append("\n/** The ").append(type).append(". */\nexport class ").append(type).append(" {\n");
+            for (int m = 0; m < 8; m++) {
+                sb.append("\n  // \"}\" in a comment and '{' in a string do not count\n");
+                sb.append("  method").append(m).append("(repo: Repo): number {\n");
+                sb.append("    const label = '{';\n");
+                for (int l = 0; l < 4; l++) sb.append("    repo.update(").append(l).append(", label);\n");
+                sb.append("\n    return repo.size() + ").append(m).append(";\n  }\n");
+            }
+            sb.append("}\n");
+        }
+        String source = sb.toString();
+        List<Chunker.Chunk> chunks = chunk("src/index.ts", source);
+        List<String> lines = source.lines().toList();
+
+        assertTiles(chunks, lines.size());
+        for (Chunker.Chunk c : chunks) {
+            String first = lines.get(c.startLine() - 1).trim();
+            // Every cut is before a member, its comment, or a top-level declaration, never mid-body
+            assertThat(first).matches("(import|/\\*\\*|export|//|method|}).*");
+            assertThat(c.content().contains("class Indexer") && c.content().contains("class Retriever")).isFalse();
+            assertThat(tokens.count(c.content())).isLessThanOrEqualTo(2 * 200);
+        }
+        assertThat(chunks).anySatisfy(c -> assertThat(c.content()).startsWith("/** The Retriever. */"));
+        assertThat(chunks.size()).isGreaterThan(2);
+    }
+
+    @Test
+    void markdown_isCutAtSectionHeadings_butNotInsideCodeFences() throws Exception {
+        StringBuilder sb = new StringBuilder("# Guide\n\nIntro.\n");
+        for (int s = 0; s < 4; s++) {
+            sb.append("\n## Section ").append(s).append("\n\n");
+            sb.append("Some words about section ").append(s).append(". ".repeat(5)).append("\n\n");
+            sb.append("```bash\n# not a heading\necho ").append(s).append("\n```\n");
+            sb.append("Paragraph text that goes on for a while. ".repeat(12)).append("\n");
+        }
+        List<Chunker.Chunk> chunks = chunk("docs/guide.md", sb.toString());
+
+        assertTiles(chunks, (int) sb.toString().lines().count());
+        assertThat(chunks).allSatisfy(c -> assertThat(c.content()).doesNotStartWith("# not a heading"));
+        assertThat(chunks.stream().filter(c -> c.content().startsWith("## Section")).count()).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    void aPieceFarOverTheTarget_isSplitByLines() throws Exception {
+        StringBuilder sb = new StringBuilder("class Big {\n  void huge() {\n");
+        for (int i = 0; i < 300; i++) {
+            sb.append("    total += compute(").append(i).append(", \"value-").append(i).append("\");\n");
+            if (i % 25 == 24) sb.append("\n");
+        }
+        sb.append("  }\n}\n");
+        List<Chunker.Chunk> chunks = chunk("Big.java", sb.toString());
+
+        assertTiles(chunks, (int) sb.toString().lines().count());
+        assertThat(chunks.size()).isGreaterThan(5);
+        assertThat(chunks).allSatisfy(c -> assertThat(tokens.count(c.content())).isLessThanOrEqualTo(200 + 20));
+    }
+
+    private List<Chunker.Chunk> chunk(String path, String source) throws Exception {
+        List<Chunker.Chunk> chunks = new ArrayList<>();
+        chunker.chunk(path, SourceText.of(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8))), chunks::add);
+        return chunks;
+    }
+
+    private static void assertTiles(List<Chunker.Chunk> chunks, int lines) {
+        for (int i = 0; i < chunks.size(); i++) {
+            assertThat(chunks.get(i).chunkIndex()).isEqualTo(i);
+            assertThat(chunks.get(i).startLine()).isEqualTo(i == 0 ? 1 : chunks.get(i - 1).endLine() + 1);
+        }
+        assertThat(chunks.get(chunks.size() - 1).endLine()).isEqualTo(lines);
+    }
+}
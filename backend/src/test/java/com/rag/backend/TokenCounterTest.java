@@ -0,0 +1,57 @@
+package com.rag.backend;
+
+import com.rag.backend.ai.TokenCounter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenCounterTest {
+
+    private final TokenCounter counter = TokenCounter.forModel("gpt-4o");
+
+    @Test
+    void modelsMapToTheirEncodings_andCountersAreShared() {
+        assertThat(TokenCounter.forModel("gpt-4o").encodingName()).isEqualTo("o200k_base");
+        assertThat(TokenCounter.forModel("gpt-4.1-mini").encodingName()).isEqualTo("o200k_base");
+        assertThat(TokenCounter.forModel("text-embedding-3-small").encodingName()).isEqualTo("cl100k_base");
+        assertThat(TokenCounter.forModel("some-local-model").encodingName()).isEqualTo("o200k_base");
+        assertThat(TokenCounter.forModel("gpt-4o")).isSameAs(counter);
+    }
+
+    @Test
+    void countsBpeTokens_andSpecialTokensAsText() {
+        assertThat(counter.count("hello world")).isEqualTo(2);
+        assertThat(counter.count("")).isZero();
+        assertThat(counter.count(null)).isZero();
+        assertThat(counter.count("<|endoftext|>")).isGreaterThan(1);
+    }
+
+    @Test
+    void truncate_keepsTheLongestPrefixWithinTheLimit() {
+        assertThat(counter.truncate("one two three four", 2)).isEqualTo("one two");
+        assertThat(counter.truncate("one two", 5)).isEqualTo("one two");
+        assertThat(counter.truncate("one two", 0)).isEmpty();
+        // Never cuts inside a surrogate pair
+        String cut = counter.truncate("😀😀😀😀", 3);
+        assertThat(cut.length() % 2).isZero();
+        assertThat(counter.count(cut)).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    void split_coversTheText_inPiecesWithinTheLimit_preferringLineEnds() {
+        String text = IntStream.rangeClosed(1, 200)
+                .mapToObj(i -> "    int line" + i + " = compute(" + i + ");")
+                .collect(Collectors.joining("\n"));
+
+        List<String> pieces = counter.split(text, 100);
+
+        assertThat(String.join("", pieces)).isEqualTo(text);
+        assertThat(pieces).hasSizeGreaterThan(1);
+        assertThat(pieces).allSatisfy(p -> assertThat(counter.count(p)).isLessThanOrEqualTo(100));
+        assertThat(pieces.subList(0, pieces.size() - 1)).allSatisfy(p -> assertThat(p).endsWith("\n"));
+    }
+}
@@ -1,7 +1,10 @@
 package com.rag.backend;
 
-import com.rag.backend.entity.ChunkEntity;
-import com.rag.backend.repo.ChunkRepo;
+import com.rag.backend.repo.BulkIndexRepo;
+import com.rag.backend.repo.ChunkVectorRepo;
+import com.rag.backend.repo.PgVector;
+import com.rag.backend.retrieval.ChunkRetriever;
+import com.rag.backend.retrieval.LexicalQuery;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.postgresql.util.PGobject;
@@ -15,6 +18,8 @@ import java.util.List;
 import java.util.Objects;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -22,7 +27,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 class VectorSearchIT {
 
     @Autowired JdbcTemplate jdbc;
-    @Autowired ChunkRepo chunkRepo;
+    @Autowired ChunkVectorRepo chunkVectorRepo;
+    @Autowired ChunkRetriever chunkRetriever;
 
     private long repoId;
     private long docId;
@@ -58,12 +64,161 @@ class VectorSearchIT {
         // chunk C: far => distance larger
         insertChunk("C far", scaledUnitVector(0, -1.0f));
 
-        List<ChunkEntity> results = chunkRepo.searchTopK(vectorLiteral(q), 3);
+        List<ChunkVectorRepo.RetrievedChunk> results = chunkVectorRepo.searchTopK(q, 3);
 
         assertThat(results).hasSize(3);
-        assertThat(results.get(0).getContent()).isEqualTo("A best");
-        assertThat(results.get(1).getContent()).isEqualTo("B close");
-        assertThat(results.get(2).getContent()).isEqualTo("C far");
+        assertThat(results.get(0).content()).isEqualTo("A best");
+        assertThat(results.get(1).content()).isEqualTo("B close");
+        assertThat(results.get(2).content()).isEqualTo("C far");
+        // file path and distance come back with the hit, no entity loading needed
+        assertThat(results.get(0).filePath()).isEqualTo("file.txt");
+        assertThat(results.get(0).distance()).isZero();
+        assertThat(results.get(2).distance()).isEqualTo(2.0);
+    }
+
+    @Test
+    void retriever_setsEfSearchForTheQuery_andUsesTheHnswIndex() throws Exception {
+        insertChunk("A best", unitVector(0));
+        insertChunk("B close", scaledUnitVector(0, 0.8f));
+
+        List<ChunkVectorRepo.RetrievedChunk> results = chunkRetriever.search(unitVector(0), 2, null, 100);
+
+        assertThat(results).extracting(ChunkVectorRepo.RetrievedChunk::content).containsExactly("A best", "B close");
+        // set_config(..., true) is transaction-local; this test runs inside one transaction
+        assertThat(jdbc.queryForObject("SHOW hnsw.ef_search", String.class)).isEqualTo("100");
+
+        Integer indexes = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM pg_indexes WHERE tablename = 'chunks' AND indexdef LIKE '%hnsw%vector_l2_ops%'",
+                Integer.class);
+        assertThat(indexes).isEqualTo(1);
+    }
+
+    @Test
+    void repositoryScopedSearch_returnsKRowsFromThatRepo_evenWhenOtherReposAreCloser() throws Exception {
+        // Plenty of near-perfect matches in test-repo ...
+        for (int i = 0; i < 20; i++) {
+            insertChunk("near " + i, scaledUnitVector(0, 1.0f - i * 0.001f));
+        }
+        // ... and two far ones in another repository
+        Long otherRepo = jdbc.queryForObject(
+                "INSERT INTO repositories(name, root_path) VALUES ('other-repo','/tmp/other') RETURNING id", Long.class);
+        createRepositoryIndex(otherRepo);
+        docId = Objects.requireNonNull(jdbc.queryForObject(
+                "INSERT INTO documents(repository_id, file_path, content_hash) VALUES (?, 'other.txt', 'h') RETURNING id",
+                Long.class, otherRepo));
+        insertChunk("other far", scaledUnitVector(0, -1.0f));
+        insertChunk("other farther", scaledUnitVector(0, -2.0f));
+
+        List<ChunkVectorRepo.RetrievedChunk> results = chunkRetriever.search(unitVector(0), 2, "other-repo");
+
+        assertThat(results).extracting(ChunkVectorRepo.RetrievedChunk::content).containsExactly("other far", "other farther");
+        // the trigger filled repository_id for rows inserted without it
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM chunks WHERE repository_id = ?", Integer.class, otherRepo))
+                .isEqualTo(2);
+    }
+
+    @Test
+    void repositoryScopedQuery_isPlannedOnTheRepositorysPartialIndex() throws Exception {
+        createRepositoryIndex(repoId);
+        for (int i = 0; i < 20; i++) {
+            insertChunk("near " + i, scaledUnitVector(0, 1.0f - i * 0.01f));
+        }
+        jdbc.execute("ANALYZE chunks");
+        // A table this small is cheaper to scan; rule that out so the choice between indexes is tested
+        jdbc.execute("SET LOCAL enable_seqscan = off");
+
+        // The inner query of ChunkVectorRepo's repository search, with repository_id planned as a constant
+        List<String> plan = jdbc.queryForList("""
+                EXPLAIN SELECT id FROM chunks
+                WHERE repository_id = %d AND embedding IS NOT NULL
+                ORDER BY embedding <-> '%s'::vector
+                LIMIT 2
+                """.formatted(repoId, vectorLiteral(unitVector(0))), String.class);
+
+        assertThat(String.join("\n", plan)).contains("Index Scan using " + BulkIndexRepo.repositoryVectorIndexName(repoId));
+    }
+
+    @Test
+    void repositoryScopedSearch_unknownRepo_isRejected() {
+        assertThatThrownBy(() -> chunkRetriever.search(unitVector(0), 2, "no-such-repo"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void writeEmbeddings_copiesBinaryVectorsOntoChunks_andIntoTheCache() {
+        Long chunkId = jdbc.queryForObject("""
+                INSERT INTO chunks(document_id, chunk_index, start_line, end_line, content, content_hash)
+                VALUES (?, 0, 1, 1, 'no vector yet', 'hash-1') RETURNING id
+                """, Long.class, docId);
+        float[] v = scaledUnitVector(3, 0.125f);
+        v[7] = -1.5e-7f;
+
+        int updated = chunkVectorRepo.writeEmbeddings(
+                List.of(new ChunkVectorRepo.EmbeddingRow(chunkId, "hash-1", v)), "test-model", 1536);
+
+        assertThat(updated).isEqualTo(1);
+        byte[] stored = jdbc.queryForObject("SELECT vector_send(embedding) FROM chunks WHERE id = ?", byte[].class, chunkId);
+        assertThat(PgVector.read(stored)).containsExactly(v);
+        Integer cached = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM embedding_cache WHERE content_hash = 'hash-1' AND model = 'test-model'", Integer.class);
+        assertThat(cached).isEqualTo(1);
+    }
+
+    @Test
+    void lexicalSearch_matchesIdentifiersAndTheirCamelCaseParts() throws Exception {
+        insertChunk("public class ChunkRetriever { }", scaledUnitVector(0, -1.0f));
+        insertChunk("rag.retrieval.hnsw.ef-search=40", scaledUnitVector(0, -2.0f));
+        insertChunk("unrelated text", unitVector(0));
+
+        // Whole identifier, camelCase part and dotted property segment all match
+        assertThat(chunkVectorRepo.searchLexical(LexicalQuery.toTsQuery("What does ChunkRetriever do?"), unitVector(0), 5))
+                .extracting(ChunkVectorRepo.RetrievedChunk::content).containsExactly("public class ChunkRetriever { }");
+        assertThat(chunkVectorRepo.searchLexical(LexicalQuery.toTsQuery("retriever"), unitVector(0), 5))
+                .extracting(ChunkVectorRepo.RetrievedChunk::content).containsExactly("public class ChunkRetriever { }");
+        List<ChunkVectorRepo.RetrievedChunk> hnsw = chunkVectorRepo.searchLexicalInRepository(
+                repoId, LexicalQuery.toTsQuery("hnsw setting"), unitVector(0), 5);
+        assertThat(hnsw).extracting(ChunkVectorRepo.RetrievedChunk::content).containsExactly("rag.retrieval.hnsw.ef-search=40");
+        // The vector distance comes back with lexical hits too
+        assertThat(hnsw.get(0).distance()).isEqualTo(3.0);
+    }
+
+    @Test
+    void inMemoryIndexReads_loadVectorsAndHydrateHits() throws Exception {
+        insertChunk("A", scaledUnitVector(0, 0.5f));
+        insertChunk("B", scaledUnitVector(1, -0.25f));
+        ChunkVectorRepo.EmbeddingVersions versions = chunkVectorRepo.findEmbeddingVersions();
+        long[] ids = versions.chunkIds();
+
+        assertThat(ids).hasSize(2).isSorted();
+        assertThat(versions.versions()).doesNotContain(0L);
+        List<ChunkVectorRepo.StoredEmbedding> stored = chunkVectorRepo.findEmbeddings(ids);
+        assertThat(stored).extracting(ChunkVectorRepo.StoredEmbedding::repositoryId).containsOnly(repoId);
+        assertThat(stored).extracting(ChunkVectorRepo.StoredEmbedding::embedding)
+                .containsExactlyInAnyOrder(scaledUnitVector(0, 0.5f), scaledUnitVector(1, -0.25f));
+        assertThat(chunkVectorRepo.findRetrievedChunks(new long[]{ids[1], -1}))
+                .extracting(ChunkVectorRepo.RetrievedChunk::content, ChunkVectorRepo.RetrievedChunk::documentId,
+                        ChunkVectorRepo.RetrievedChunk::filePath)
+                .containsExactly(tuple("B", docId, "file.txt"));
+    }
+
+    // The index BulkIndexRepo builds; CREATE INDEX CONCURRENTLY cannot run in the test's transaction
+    private void createRepositoryIndex(long repositoryId) {
+        jdbc.execute("CREATE INDEX IF NOT EXISTS " + BulkIndexRepo.repositoryVectorIndexName(repositoryId)
+                + " ON chunks USING hnsw (embedding vector_l2_ops) WHERE repository_id = " + repositoryId);
+    }
+
+    @Test
+    void anEmbeddingChangedBySql_getsANewVersion_andAnUnchangedOneKeepsIt() throws Exception {
+        insertChunk("A", scaledUnitVector(0, 0.5f));
+        insertChunk("B", scaledUnitVector(1, 0.5f));
+        long[] before = chunkVectorRepo.findEmbeddingVersions().versions();
+
+        jdbc.update("UPDATE chunks SET embedding = embedding WHERE content = 'B'");
+        jdbc.update("UPDATE chunks SET embedding = '[" + "0,".repeat(1535) + "1]' WHERE content = 'A'");
+        long[] after = chunkVectorRepo.findEmbeddingVersions().versions();
+
+        assertThat(after[0]).isGreaterThan(before[0]);
+        assertThat(after[1]).isEqualTo(before[1]);
     }
 
     private void insertChunk(String content, float[] embedding) throws Exception {
@@ -1,8 +1,8 @@
 'use client'
 
 import { useState, useEffect } from 'react'
-import { postChat, postReindex, postIndex, getStatus } from '@/lib/api'
-import type { ChatMode, Citation, RagAnswer, IndexResponse, StatusResponse } from '@/lib/types'
+import { postChatStream, postReindex, indexRepository, cancelIndexJob, getStatus } from '@/lib/api'
+import type { ChatMode, Citation, IndexResponse, StatusResponse } from '@/lib/types'
 
 interface Message {
   role: 'user' | 'assistant'
@@ -23,6 +23,7 @@ export default function Home() {
   const [rootPath, setRootPath] = useState('')
   const [indexLoading, setIndexLoading] = useState(false)
   const [indexResult, setIndexResult] = useState<IndexResponse | null>(null)
+  const [indexProgress, setIndexProgress] = useState<IndexResponse | null>(null)
   const [indexError, setIndexError] = useState<string | null>(null)
   
   // Status state
@@ -38,21 +39,23 @@ export default function Home() {
     setInput('')
     setLoading(true)
 
+    // The assistant message is appended up front and filled in as the answer streams
+    setMessages((prev: Message[]) => [...prev, { role: 'assistant', content: '' }])
+    const updateAssistant = (update: (m: Message) => Message) =>
+      setMessages((prev: Message[]) => [...prev.slice(0, -1), update(prev[prev.length - 1])])
+
     try {
-      const data: RagAnswer = await postChat(mode, messageText)
-      const assistantMessage: Message = {
-        role: 'assistant',
-        content: data.answer,
-        citations: data.citations,
-      }
-      setMessages((prev: Message[]) => [...prev, assistantMessage])
+      await postChatStream(mode, messageText, {
+        onCitations: (citations) => updateAssistant((m) => ({ ...m, citations })),
+        onDelta: (text) => updateAssistant((m) => ({ ...m, content: m.content + text })),
+      })
     } catch (error) {
       console.error('Error sending message:', error)
       const errorMessage: Message = {
         role: 'assistant',
         content: `Error: ${error instanceof Error ? error.message : 'Failed to get response from server'}`,
       }
-      setMessages((prev: Message[]) => [...prev, errorMessage])
+      setMessages((prev: Message[]) => [...prev.slice(0, -1), errorMessage])
     } finally {
       setLoading(false)
     }
@@ -79,10 +82,11 @@ export default function Home() {
 
     setIndexLoading(true)
     setIndexResult(null)
+    setIndexProgress(null)
     setIndexError(null)
 
     try {
-      const result = await postIndex(repoName.trim(), rootPath.trim() || undefined)
+      const result = await indexRepository(repoName.trim(), rootPath.trim() || undefined, setIndexProgress)
       setIndexResult(result)
       // Reload status after indexing
       await loadStatus()
@@ -91,6 +95,16 @@ export default function Home() {
       setIndexError(error instanceof Error ? error.message : 'Failed to index repository')
     } finally {
       setIndexLoading(false)
+      setIndexProgress(null)
+    }
+  }
+
+  const handleCancelIndex = async () => {
+    if (!indexProgress) return
+    try {
+      await cancelIndexJob(indexProgress.id)
+    } catch (error) {
+      console.error('Error cancelling index job:', error)
     }
   }
 
@@ -315,6 +329,43 @@ export default function Home() {
             </button>
           </div>
 
+          {indexProgress && (
+            <div
+              style={{
+                display: 'flex',
+                alignItems: 'center',
+                gap: '12px',
+                padding: '12px',
+                borderRadius: '4px',
+                backgroundColor: '#e3f2fd',
+                color: '#0d47a1',
+                fontSize: '14px',
+              }}
+            >
+              <span style={{ flex: 1 }}>
+                {indexProgress.status === 'QUEUED'
+                  ? 'Queued...'
+                  : indexProgress.phase === 'INDEXING'
+                    ? `Indexing: ${indexProgress.filesIndexed + indexProgress.filesUnchanged} files (${indexProgress.filesPerSecond.toFixed(1)}/s), ${indexProgress.chunksCreated} chunks`
+                    : `Embedding: ${indexProgress.chunksEmbedded} chunks (${indexProgress.chunksEmbeddedPerSecond.toFixed(1)}/s), ${indexProgress.chunksFromCache} from cache`}
+              </span>
+              <button
+                onClick={handleCancelIndex}
+                style={{
+                  padding: '4px 12px',
+                  backgroundColor: 'white',
+                  color: '#0d47a1',
+                  border: '1px solid #0d47a1',
+                  borderRadius: '4px',
+                  cursor: 'pointer',
+                  fontSize: '13px',
+                }}
+              >
+                Cancel
+              </button>
+            </div>
+          )}
+
           {indexError && (
             <div
               style={{
@@ -1,4 +1,4 @@
-import type { RagAnswer, ChatMode, IndexResponse, StatusResponse } from './types'
+import type { RagAnswer, ChatMode, Citation, IndexResponse, StatusResponse, TokenUsage } from './types'
 
 export function getBaseUrl(): string {
   return process.env.NEXT_PUBLIC_API_BASE_URL || 'http://localhost:8080'
@@ -6,7 +6,8 @@ export function getBaseUrl(): string {
 
 export async function postChat(
   mode: ChatMode,
-  message: string
+  message: string,
+  repoName?: string
 ): Promise<RagAnswer> {
   const baseUrl = getBaseUrl()
   let endpoint = '/api/chat'
@@ -22,7 +23,8 @@ export async function postChat(
     headers: {
       'Content-Type': 'application/json',
     },
-    body: JSON.stringify({ message }),
+    // Without repoName the whole corpus is searched
+    body: JSON.stringify(repoName && repoName.trim() ? { message, repoName: repoName.trim() } : { message }),
   })
 
   if (!response.ok) {
@@ -33,6 +35,81 @@ export async function postChat(
   return await response.json()
 }
 
+export type ChatStreamHandlers = {
+  onCitations?: (citations: Citation[]) => void
+  onDelta: (text: string) => void
+  onUsage?: (usage: TokenUsage) => void
+}
+
+/**
+ * Streaming variant of postChat over Server-Sent Events: citations arrive as soon as retrieval
+ * finishes, then the answer as text deltas. Resolves when the server sends "done", which carries
+ * the request's token usage when the answer came from the model.
+ */
+export async function postChatStream(
+  mode: ChatMode,
+  message: string,
+  handlers: ChatStreamHandlers,
+  repoName?: string
+): Promise<void> {
+  const baseUrl = getBaseUrl()
+  let endpoint = '/api/chat/stream'
+
+  if (mode === 'architecture') {
+    endpoint = '/api/chat/explain-architecture/stream'
+  } else if (mode === 'codeReview') {
+    endpoint = '/api/chat/code-review/stream'
+  }
+
+  const response = await fetch(`${baseUrl}${endpoint}`, {
+    method: 'POST',
+    headers: {
+      'Content-Type': 'application/json',
+      Accept: 'text/event-stream',
+    },
+    body: JSON.stringify(repoName && repoName.trim() ? { message, repoName: repoName.trim() } : { message }),
+  })
+
+  if (!response.ok || !response.body) {
+    const errorText = await response.text()
+    throw new Error(`Failed to send message: ${response.status} ${errorText}`)
+  }
+
+  const reader = response.body.getReader()
+  const decoder = new TextDecoder()
+  let buffer = ''
+
+  for (;;) {
+    const { done, value } = await reader.read()
+    if (done) break
+    buffer += decoder.decode(value, { stream: true })
+
+    // Events are separated by a blank line
+    let boundary: number
+    while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+      const raw = buffer.slice(0, boundary)
+      buffer = buffer.slice(boundary + 2)
+
+      let event = 'message'
+      const data: string[] = []
+      for (const line of raw.split('\n')) {
+        if (line.startsWith('event:')) event = line.slice(6).trim()
+        else if (line.startsWith('data:')) data.push(line.slice(5))
+      }
+      const payload = data.length ? JSON.parse(data.join('\n')) : null
+
+      if (event === 'citations') handlers.onCitations?.(payload as Citation[])
+      else if (event === 'delta') handlers.onDelta(payload.content as string)
+      else if (event === 'error') throw new Error(payload?.error || 'Streaming failed')
+      else if (event === 'done') {
+        if (payload?.usage) handlers.onUsage?.(payload.usage as TokenUsage)
+        return
+      }
+    }
+  }
+}
+
+/** Starts an indexing job; the response comes back at once with the job still queued or running. */
 export async function postIndex(
   repoName: string,
   rootPath?: string
@@ -59,6 +136,63 @@ export async function postIndex(
   return await response.json()
 }
 
+export async function getIndexJob(id: number): Promise<IndexResponse> {
+  const baseUrl = getBaseUrl()
+  const response = await fetch(`${baseUrl}/api/index/jobs/${id}`, {
+    method: 'GET',
+    headers: {
+      'Content-Type': 'application/json',
+    },
+  })
+
+  if (!response.ok) {
+    const errorText = await response.text()
+    throw new Error(`Failed to get index job: ${response.status} ${errorText}`)
+  }
+
+  return await response.json()
+}
+
+export async function cancelIndexJob(id: number): Promise<IndexResponse> {
+  const baseUrl = getBaseUrl()
+  const response = await fetch(`${baseUrl}/api/index/jobs/${id}/cancel`, {
+    method: 'POST',
+    headers: {
+      'Content-Type': 'application/json',
+    },
+  })
+
+  if (!response.ok) {
+    const errorText = await response.text()
+    throw new Error(`Failed to cancel index job: ${response.status} ${errorText}`)
+  }
+
+  return await response.json()
+}
+
+/**
+ * Starts an indexing job and polls it until it finishes, passing every snapshot to onProgress.
+ * Resolves with the succeeded job; rejects if it failed or was cancelled.
+ */
+export async function indexRepository(
+  repoName: string,
+  rootPath?: string,
+  onProgress?: (job: IndexResponse) => void,
+  pollIntervalMs = 1000
+): Promise<IndexResponse> {
+  let job = await postIndex(repoName, rootPath)
+  onProgress?.(job)
+  while (job.status === 'QUEUED' || job.status === 'RUNNING') {
+    await new Promise((resolve) => setTimeout(resolve, pollIntervalMs))
+    job = await getIndexJob(job.id)
+    onProgress?.(job)
+  }
+
+  if (job.status === 'FAILED') throw new Error(job.error || 'Indexing failed')
+  if (job.status === 'CANCELLED') throw new Error('Indexing was cancelled')
+  return job
+}
+
 export async function getStatus(): Promise<StatusResponse> {
   const baseUrl = getBaseUrl()
   const response = await fetch(`${baseUrl}/api/index/status`, {
@@ -5,23 +5,60 @@ export type Citation = {
   snippet: string
 }
 
+export type TokenUsage = {
+  promptTokens: number
+  completionTokens: number
+}
+
 export type RagAnswer = {
   answer: string
   citations: Citation[]
+  usage?: TokenUsage | null
 }
 
 export type ChatMode = 'chat' | 'architecture' | 'codeReview'
 
+export type IndexJobStatus = 'QUEUED' | 'RUNNING' | 'SUCCEEDED' | 'FAILED' | 'CANCELLED'
+
+/** An indexing job (POST /api/index, GET /api/index/jobs/{id}); counters are live while it runs. */
 export type IndexResponse = {
-  repositoryId: number
+  id: number
+  repoName: string
+  status: IndexJobStatus
+  phase: 'INDEXING' | 'EMBEDDING' | 'DONE'
+  repositoryId: number | null
   filesScanned: number
   filesIndexed: number
   filesSkipped: number
+  filesUnchanged: number
   documentsUpserted: number
+  documentsDeleted: number
   chunksCreated: number
+  chunksReused: number
   chunksEmbedded: number
+  chunksFromCache: number
+  filesPerSecond: number
+  chunksEmbeddedPerSecond: number
   elapsedMsTotal: number
+  error?: string | null
   embeddingError?: string | null
+  stageTimings?: StageTimings | null
+  // Keyed by chunking strategy name ("syntax-aware", "lines", ...)
+  chunking?: Record<string, ChunkingStats> | null
+}
+
+export type StageTimings = {
+  walkMs: number
+  readMs: number
+  chunkMs: number
+  persistMs: number
+}
+
+export type ChunkingStats = {
+  files: number
+  chunks: number
+  lines: number
+  chars: number
 }
 
 export type StatusResponse = {